@@ -3,11 +3,13 @@ package life.qbic;
 import ch.ethz.sis.openbis.generic.OpenBIS;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import life.qbic.io.PropertyReader;
 import life.qbic.io.commandline.CommandLineOptions;
 import life.qbic.model.Configuration;
 import life.qbic.model.download.AuthenticationException;
 import life.qbic.model.download.ConnectionException;
+import life.qbic.model.download.OpenbisSessionCache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import picocli.CommandLine;
@@ -57,7 +59,7 @@ public class App {
 
     OpenBIS authentication = new OpenBIS(url);
 
-    return tryLogin(authentication, user, password);
+    return reuseSessionOrLogin(authentication, user, password, url);
   }
 
   /**
@@ -73,7 +75,37 @@ public class App {
 
     OpenBIS authentication = new OpenBIS(url, dssUrl, generousTimeOut);
 
-    return tryLogin(authentication, user, password);
+    return reuseSessionOrLogin(authentication, user, password, url);
+  }
+
+  /**
+   * Reuses a session token stored by a previous run, if a session cache is configured and the
+   * session is still active. Otherwise logs in and stores the new session token.
+   */
+  private static OpenBIS reuseSessionOrLogin(OpenBIS authentication, String user, char[] password,
+      String url) {
+    Optional<OpenbisSessionCache> sessionCache = OpenbisSessionCache.fromConfig();
+    if (sessionCache.isEmpty()) {
+      return tryLogin(authentication, user, password);
+    }
+    OpenbisSessionCache cache = sessionCache.get();
+    Optional<String> storedToken = cache.read(url, user);
+    if (storedToken.isPresent()) {
+      try {
+        authentication.setSessionToken(storedToken.get());
+        if (authentication.isSessionActive()) {
+          LOG.info("✅ Reusing openBIS session of: " + user);
+          return authentication;
+        }
+        LOG.info("Stored openBIS session has expired, logging in again.");
+      } catch (RuntimeException e) {
+        LOG.warn("Could not validate stored openBIS session: " + e.getMessage());
+      }
+      cache.remove(url, user);
+    }
+    tryLogin(authentication, user, password);
+    cache.write(url, user, authentication.getSessionToken());
+    return authentication;
   }
 
   private static OpenBIS tryLogin(OpenBIS authentication, String user, char[] password) {
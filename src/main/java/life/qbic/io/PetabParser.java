@@ -1,112 +1,266 @@
 package life.qbic.io;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
+import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.petab.MetaInformation;
 import life.qbic.model.petab.PetabMetadata;
 
+/**
+ * Reads and edits the metaInformation yaml of a PEtab folder. The yaml is read as a stream of
+ * tokens, so only the values of interest are kept in memory. Edits replace single values at the
+ * position of their tokens, the rest of the file, including comments and formatting, is copied
+ * unchanged.
+ */
 public class PetabParser {
 
-  private final String META_INFO_YAML_NAME = "metaInformation";
+  private static final String META_INFO_YAML_NAME = "metaInformation";
+  private static final String SOURCE_IDS_KEY = "openBISSourceIds";
+  private static final String ID_KEY = "openBISId";
+  private static final String DATE_KEY = "dateOfExperiment";
+  private static final String UNITS_KEY = "units";
 
-  public PetabMetadata parse(String dataPath) {
+  private final YAMLFactory yamlFactory = new YAMLFactory();
+  private final ObjectMapper mapper = new ObjectMapper(yamlFactory)
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+      .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
 
-    File directory = new File(dataPath);
+  /**
+   * Collects the dataset codes listed under 'openBISSourceIds', wherever the key is found in the
+   * metaInformation yaml. Values that are not dataset codes are reported and skipped.
+   * @param dataPath the PEtab folder
+   */
+  public PetabMetadata parse(String dataPath) {
     List<String> sourcePetabReferences = new ArrayList<>();
-
-    File yaml = findYaml(directory);
-    if (yaml != null) {
-      BufferedReader reader = null;
-      try {
-        reader = new BufferedReader(new FileReader(yaml));
-        boolean inIDBlock = false;
-        while (true) {
-          String line = reader.readLine();
-          if (line == null) {
-            break;
-          }
-          // the id block ends, when a new key with colon is found
-          if (inIDBlock && line.contains(":")) {
-            inIDBlock = false;
-          }
-          // if we are in the id block, we collect one dataset code per line
-          if (inIDBlock) {
-            parseDatasetCode(line).ifPresent(sourcePetabReferences::add);
-          }
-          if (line.contains("openBISSourceIds:")) {
-            inIDBlock = true;
+    Optional<Path> yaml = findYaml(Paths.get(dataPath));
+    if (yaml.isEmpty()) {
+      return new PetabMetadata(sourcePetabReferences);
+    }
+    try (JsonParser parser = yamlFactory.createParser(yaml.get().toFile())) {
+      JsonToken token;
+      while ((token = parser.nextToken()) != null) {
+        if (token != JsonToken.FIELD_NAME || !SOURCE_IDS_KEY.equals(parser.currentName())) {
+          continue;
+        }
+        token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+          while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token.isScalarValue()) {
+              parseDatasetCode(parser.getText()).ifPresent(sourcePetabReferences::add);
+            } else {
+              parser.skipChildren();
+            }
           }
+        } else if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+          parseDatasetCode(parser.getText()).ifPresent(sourcePetabReferences::add);
+        } else {
+          parser.skipChildren();
         }
-        reader.close();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
       }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read " + yaml.get(), e);
     }
     return new PetabMetadata(sourcePetabReferences);
   }
 
-  private Optional<String> parseDatasetCode(String line) {
-    // expected input: "    - 20240702093837370-684137"
-    String[] tokens = line.split("-");
-    if(tokens.length == 3) {
-      return Optional.of(tokens[1].strip()+"-"+tokens[2].strip());
-    } else {
-      System.out.println("Could not extract dataset code from the following line:");
-      System.out.println(line);
+  /**
+   * Reads the whole metaInformation yaml of a PEtab folder into the MetaInformation model.
+   * Properties that are not part of the model are ignored.
+   * @param dataPath the PEtab folder
+   * @return the meta information, empty if the folder does not contain a metaInformation yaml
+   */
+  public Optional<MetaInformation> readMetaInformation(String dataPath) {
+    Optional<Path> yaml = findYaml(Paths.get(dataPath));
+    if (yaml.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(mapper.readValue(yaml.get().toFile(), MetaInformation.class));
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read " + yaml.get(), e);
+    }
+  }
+
+  private Optional<String> parseDatasetCode(String value) {
+    // expected input: "20240702093837370-684137"
+    String code = value.strip();
+    if (OpenbisConnector.datasetCodePattern.matcher(code).matches()) {
+      return Optional.of(code);
     }
+    System.out.println("Could not extract dataset code from the following value:");
+    System.out.println(value);
     return Optional.empty();
   }
 
+  /**
+   * Sets 'openBISId' to the dataset code. Existing values are replaced. If there is no such key,
+   * it is added above 'dateOfExperiment' or, if that is missing, as first entry of 'units'.
+   * @param outputPath the PEtab folder
+   */
   public void addDatasetId(String outputPath, String datasetCode) throws IOException {
-
-    Path path = Paths.get(Objects.requireNonNull(findYaml(new File(outputPath))).getPath());
-    Charset charset = StandardCharsets.UTF_8;
-
-    final String idKeyWord = "openBISId";
-
-    final String endOfLine = ":(.*)?(\\r\\n|[\\r\\n])";
-    final String idInLine = idKeyWord+endOfLine;
-
-    String content = Files.readString(path, charset);
-    // existing property found, fill/replace with relevant dataset code
-    if(content.contains(idKeyWord)) {
-      content = content.replaceAll(idInLine, idKeyWord+": "+datasetCode+"\n");
-      // no existing property found, create it above the dateOfExperiment property
-    } else {
-      String dateKeyword = "dateOfExperiment";
-      String dateLine = dateKeyword+endOfLine;
-      String newLines = idKeyWord+": "+datasetCode+"\n  "+dateKeyword+":\n";
-      content = content.replaceAll(dateLine, newLines);
+    Path yaml = findYaml(Paths.get(outputPath)).orElseThrow(() -> new IOException(
+        META_INFO_YAML_NAME + " yaml not found in " + outputPath));
+    List<Edit> edits = new ArrayList<>();
+    long dateKeyStart = -1;
+    int dateKeyColumn = 0;
+    long firstUnitStart = -1;
+    int firstUnitColumn = 0;
+    try (JsonParser parser = yamlFactory.createParser(yaml.toFile())) {
+      JsonToken token;
+      boolean unitsStarted = false;
+      while ((token = parser.nextToken()) != null) {
+        if (unitsStarted && token == JsonToken.FIELD_NAME && firstUnitStart < 0) {
+          firstUnitStart = parser.currentTokenLocation().getCharOffset();
+          firstUnitColumn = parser.currentTokenLocation().getColumnNr();
+        }
+        unitsStarted = false;
+        if (token != JsonToken.FIELD_NAME) {
+          continue;
+        }
+        String key = parser.currentName();
+        if (DATE_KEY.equals(key) && dateKeyStart < 0) {
+          dateKeyStart = parser.currentTokenLocation().getCharOffset();
+          dateKeyColumn = parser.currentTokenLocation().getColumnNr();
+        }
+        if (UNITS_KEY.equals(key)) {
+          unitsStarted = parser.nextToken() == JsonToken.START_OBJECT;
+        } else if (ID_KEY.equals(key)) {
+          token = parser.nextToken();
+          long start = parser.currentTokenLocation().getCharOffset();
+          long end = parser.currentLocation().getCharOffset();
+          if (token == JsonToken.VALUE_NULL && start == end) {
+            // empty value, the position is right after the colon
+            edits.add(new Edit(start, end, " " + datasetCode));
+          } else if (token.isScalarValue()) {
+            edits.add(new Edit(start, end, datasetCode));
+          } else {
+            System.out.printf("%s in %s is not a single value and was not changed.%n", ID_KEY,
+                yaml);
+            parser.skipChildren();
+          }
+        }
+      }
     }
-    Files.write(path, content.getBytes(charset));
+    if (edits.isEmpty()) {
+      long keyStart = dateKeyStart >= 0 ? dateKeyStart : firstUnitStart;
+      int column = dateKeyStart >= 0 ? dateKeyColumn : firstUnitColumn;
+      if (keyStart < 0) {
+        System.out.printf("Neither %s nor %s found in %s, %s was not added.%n", DATE_KEY,
+            UNITS_KEY, yaml, ID_KEY);
+        return;
+      }
+      // a new line with the same indentation, directly above the found key
+      String indentation = " ".repeat(column - 1);
+      long lineStart = keyStart - (column - 1);
+      edits.add(new Edit(lineStart, lineStart, indentation + ID_KEY + ": " + datasetCode + "\n"));
+    }
+    applyEdits(yaml, edits);
   }
 
-  private File findYaml(File directory) {
-    for (File file : Objects.requireNonNull(directory.listFiles())) {
-      String fileName = file.getName();
-      if (file.isFile() && fileName.contains(META_INFO_YAML_NAME) && fileName.endsWith(".yaml")) {
-        return file;
+  /**
+   * Copies the file, replacing the ranges of the edits, and replaces the original file with the
+   * copy. Offsets count code points, like the token locations of the yaml parser.
+   */
+  private void applyEdits(Path file, List<Edit> edits) throws IOException {
+    edits.sort(Comparator.comparingLong(edit -> edit.start));
+    Path copy = file.resolveSibling(file.getFileName() + ".part");
+    try (Reader reader = new BufferedReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(Files.newBufferedWriter(copy, StandardCharsets.UTF_8))) {
+      long offset = 0;
+      int next = 0;
+      int c = reader.read();
+      while (c != -1 || next < edits.size()) {
+        if (next < edits.size() && edits.get(next).start == offset) {
+          Edit edit = edits.get(next++);
+          writer.write(edit.replacement);
+          // skip the replaced code points
+          while (offset < edit.end && c != -1) {
+            if (Character.isHighSurrogate((char) c)) {
+              reader.read();
+            }
+            c = reader.read();
+            offset++;
+          }
+          continue;
+        }
+        if (c == -1) {
+          throw new IOException("Could not edit " + file + ", it changed while it was edited.");
+        }
+        writer.write(c);
+        if (Character.isHighSurrogate((char) c)) {
+          writer.write(reader.read());
+        }
+        c = reader.read();
+        offset++;
       }
-      if (file.isDirectory()) {
-        return findYaml(file);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(copy);
+      throw e;
+    }
+    Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Finds the metaInformation yaml anywhere below the folder. The folder tree is walked in
+   * parallel. If there are several matching files, the one closest to the folder is used, ties are
+   * broken by path, so the result does not depend on the order of the walk.
+   */
+  private Optional<Path> findYaml(Path directory) {
+    try (Stream<Path> files = Files.walk(directory)) {
+      Optional<Path> yaml = files.parallel()
+          .filter(file -> {
+            String fileName = file.getFileName().toString();
+            return fileName.contains(META_INFO_YAML_NAME) && fileName.endsWith(".yaml");
+          })
+          .filter(Files::isRegularFile)
+          .min(Comparator.comparingInt(Path::getNameCount).thenComparing(Path::toString));
+      if (yaml.isEmpty()) {
+        System.out.println(META_INFO_YAML_NAME + " yaml not found.");
       }
+      return yaml;
+    } catch (IOException | UncheckedIOException e) {
+      throw new RuntimeException("Could not search " + directory + " for the "
+          + META_INFO_YAML_NAME + " yaml.", e);
     }
-    System.out.println(META_INFO_YAML_NAME + " yaml not found.");
-    return null;
   }
 
   public void addPatientIDs(String outputPath, Set<String> patientIDs) {
     System.err.println("found patient ids: "+patientIDs);
   }
+
+  /**
+   * Replaces the code points from start (inclusive) to end (exclusive) with the replacement.
+   */
+  private static class Edit {
+
+    private final long start;
+    private final long end;
+    private final String replacement;
+
+    Edit(long start, long end, String replacement) {
+      this.start = start;
+      this.end = end;
+      this.replacement = replacement;
+    }
+  }
 }
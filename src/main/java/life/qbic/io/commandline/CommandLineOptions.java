@@ -11,7 +11,8 @@ import picocli.CommandLine.Option;
     subcommands = {SampleHierarchyCommand.class, TransferSampleTypesToSeekCommand.class,
         DownloadPetabCommand.class, UploadPetabResultCommand.class, UploadDatasetCommand.class,
         SpaceStatisticsCommand.class, TransferDataToSeekCommand.class, FindDatasetsCommand.class,
-        CreateROCrate.class},
+        CreateROCrate.class, UploadBatchCommand.class,
+        MirrorCommand.class, DownloadArchiveCommand.class, IndexCommand.class},
     description = "A client software for querying openBIS.",
     mixinStandardHelpOptions = true, versionProvider = ManifestVersionProvider.class)
 public class CommandLineOptions {
@@ -1,33 +1,27 @@
 package life.qbic.io.commandline;
 
 import ch.ethz.sis.openbis.generic.OpenBIS;
-import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.xml.parsers.ParserConfigurationException;
 import life.qbic.App;
-import life.qbic.model.DatasetWithProperties;
 import life.qbic.model.OpenbisExperimentWithDescendants;
 import life.qbic.model.OpenbisSeekTranslator;
 import life.qbic.model.download.OpenbisConnector;
-import life.qbic.model.isa.GenericSeekAsset;
-import life.qbic.model.isa.ISAAssay;
-import life.qbic.model.isa.ISASample;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
 import life.qbic.model.isa.NodeType;
 import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.rocrate.ROCrateBuilder;
+import life.qbic.model.rocrate.ROCrateZipWriter;
 import org.xml.sax.SAXException;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
@@ -40,14 +34,23 @@ import picocli.CommandLine.Parameters;
             + "based on assays, samples and one of several data types in SEEK). The data itself can "
             + "be put into the crate using the '-d' flag. To completely exclude some dataset "
             + "information from being transferred, a file ('--blacklist') containing dataset codes "
-            + "can be specified. The crate is not zipped at the moment.")
+            + "can be specified. The crate can be written as a single zip file using '--zip'.")
 public class CreateROCrate implements Runnable {
 
   @Parameters(arity = "1", paramLabel = "openbis id", description = "The identifier of the "
       + "experiment, sample or dataset to transfer.")
   private String objectID;
-  @Parameters(arity = "1", paramLabel = "ro-path", description = "Path to the output folder")
+  @Parameters(arity = "0..1", paramLabel = "ro-path", description = "Path to the output folder. "
+      + "Not needed if '--zip' is used.")
   private String roPath;
+  @Option(names = "--zip", paramLabel = "<file>", description = "Writes the crate into a single "
+      + "zip file instead of a folder. Metadata and data are streamed into the archive, no other "
+      + "files are written.")
+  private String zipFile;
+  @Option(names = "--incremental", description = "Updates a crate created earlier in the same "
+      + "folder: only changed json files are written, only new or changed data files are "
+      + "downloaded and files that are no longer part of the crate are removed.")
+  private boolean incremental;
   @Option(names = "--blacklist", description = "Path to file specifying by "
       + "dataset code which openBIS datasets not to transfer to SEEK. The file must contain one code "
       + "per line.")
@@ -60,6 +63,16 @@ public class CreateROCrate implements Runnable {
       "Transfers the data itself to SEEK along with the metadata. "
           + "Otherwise only the link(s) to the openBIS object will be created in SEEK.")
   private boolean transferData;
+  @Option(names = "--resume", description = "Resumes an interrupted download into the same "
+      + "folder. Files that were already downloaded and verified are not downloaded again.")
+  private boolean resume;
+  @Option(names = "--threads", description = "Number of threads writing the json files of the "
+      + "crate. Defaults to the number of available processors.")
+  private int threads = Runtime.getRuntime().availableProcessors();
+  @Option(names = "--parallel-downloads", description = "Number of datasets downloaded at the "
+      + "same time if '-d' is used. Each download uses 'download_threads' streams itself. "
+      + "Default: ${DEFAULT-VALUE}")
+  private int parallelDownloads = 2;
   @Mixin
   OpenbisAuthenticationOptions openbisAuth = new OpenbisAuthenticationOptions();
   OpenbisConnector openbis;
@@ -68,6 +81,14 @@ public class CreateROCrate implements Runnable {
   @Override
   public void run() {
     App.readConfig();
+    if ((roPath == null) == (zipFile == null)) {
+      System.out.println("Please provide either an output folder (ro-path) or a zip file (--zip).");
+      return;
+    }
+    if (incremental && zipFile != null) {
+      System.out.println("--incremental can only be used with an output folder (ro-path).");
+      return;
+    }
     System.out.printf("Transfer openBIS -> RO-crate started.%n");
     System.out.printf("Provided openBIS object: %s%n", objectID);
     System.out.printf("Pack datasets into crate? %s%n", transferData);
@@ -79,6 +100,8 @@ public class CreateROCrate implements Runnable {
         openbisAuth.getOpenbisUser(), openbisAuth.getOpenbisAS(), openbisAuth.getOpenbisDSS());
 
     this.openbis = new OpenbisConnector(authentication);
+    OpenbisTypeRegistryCache.fromConfig(openbisAuth.getOpenbisAS())
+        .ifPresent(openbis::setTypeRegistryCache);
 
     System.out.println("Searching for specified object in openBIS...");
 
@@ -107,6 +130,7 @@ public class CreateROCrate implements Runnable {
     } catch (IOException | ParserConfigurationException | SAXException e) {
       throw new RuntimeException(e);
     }
+    translator.validateTypeMappings(openbis.getTypeRegistry()).forEach(System.out::println);
     OpenbisExperimentWithDescendants structure;
     System.out.println("Collecting information from openBIS...");
     switch (nodeType) {
@@ -133,58 +157,12 @@ public class CreateROCrate implements Runnable {
               sampleBlacklist,
               transferData,
               true);
-      String experimentID = nodeWithChildren.getAssayWithOpenBISReference().getRight();
-      ISAAssay assay = nodeWithChildren.getAssayWithOpenBISReference().getLeft();
-      String assayFileName = openbisIDToFileName(experimentID);
-
-      String assayPath = Path.of(roPath, assayFileName).toString();
-      new File(assayPath).mkdirs();
-
-      System.out.printf("Writing assay json for %s.%n", experimentID);
-      writeFile(Path.of(assayPath, assayFileName)+".json", assay.toJson());
-
-      for(ISASample sample : nodeWithChildren.getSamplesWithOpenBISReference().keySet()) {
-        String sampleID = nodeWithChildren.getSamplesWithOpenBISReference().get(sample);
-        String sampleFileName = openbisIDToFileName(sampleID);
-        String samplePath = Path.of(assayPath, sampleFileName).toString();
-        new File(samplePath).mkdirs();
-
-        System.out.printf("Writing sample json for %s.%n", sampleID);
-        writeFile(Path.of(samplePath, sampleFileName)+".json", sample.toJson());
-      }
-
-      Map<String, String> datasetIDToDataFolder = new HashMap<>();
-
-      for(DatasetWithProperties dwp : structure.getDatasets()) {
-        String sourceID = dwp.getClosestSourceID();
-        String code = dwp.getCode();
-        if(sourceID.equals(experimentID)) {
-          Path folderPath = Path.of(assayPath, code);
-          File dataFolder = new File(folderPath.toString());
-          datasetIDToDataFolder.put(dwp.getCode(), dataFolder.getAbsolutePath());
-        } else {
-          Path samplePath = Path.of(assayPath, openbisIDToFileName(sourceID), code);
-          File dataFolder = new File(samplePath.toString());
-          datasetIDToDataFolder.put(dwp.getCode(), dataFolder.getAbsolutePath());
-        }
-      }
-
-      for(GenericSeekAsset asset : nodeWithChildren.getISAFileToDatasetFiles().keySet()) {
-        DataSetFile file = nodeWithChildren.getISAFileToDatasetFiles().get(asset);
-        String datasetID = file.getDataSetPermId().getPermId();
-        String dataFolderPath = datasetIDToDataFolder.get(datasetID);
-        String assetJson = asset.toJson();
-        String assetWithoutOriginFolder = asset.getFileName().replace("original","");
-        File assetFolder = Path.of(dataFolderPath, assetWithoutOriginFolder).getParent().toFile();
-        assetFolder.mkdirs();
-
-        String assetPath = Path.of(dataFolderPath, assetWithoutOriginFolder+".json").toString();
-        System.out.printf("Writing asset json for file in dataset %s.%n", datasetID);
-        writeFile(assetPath, assetJson);
-        if(transferData) {
-          System.out.printf("Downloading dataset file to asset folder.%n");
-          openbis.downloadDataset(dataFolderPath, datasetID, asset.getFileName());
-        }
+      if (zipFile != null) {
+        new ROCrateZipWriter(openbis).write(Path.of(zipFile), nodeWithChildren,
+            structure.getDatasets(), transferData);
+      } else {
+        new ROCrateBuilder(openbis, threads, parallelDownloads, resume, incremental)
+            .build(Path.of(roPath), nodeWithChildren, structure.getDatasets(), transferData);
       }
     } catch (URISyntaxException | IOException e) {
       throw new RuntimeException(e);
@@ -199,21 +177,6 @@ public class CreateROCrate implements Runnable {
     }
   }
 
-  private String openbisIDToFileName(String id) {
-    id = id.replace("/","_");
-    if(id.startsWith("_")) {
-      return id.substring(1);
-    } else {
-      return id;
-    }
-  }
-
-  private void writeFile(String path, String content) throws IOException {
-    FileWriter file = new FileWriter(path);
-    file.write(content);
-    file.close();
-  }
-
   private Set<String> parseBlackList(String blacklistFile, boolean sample) {
     if(blacklistFile == null) {
       return new HashSet<>();
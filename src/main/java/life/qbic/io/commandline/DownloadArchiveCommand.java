@@ -0,0 +1,77 @@
+package life.qbic.io.commandline;
+
+import ch.ethz.sis.openbis.generic.OpenBIS;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import life.qbic.App;
+import life.qbic.model.download.DatasetArchiveWriter.Format;
+import life.qbic.model.download.OpenbisConnector;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * The Download Archive command can be used to download a whole dataset, or a folder of a dataset,
+ * as a single zip or tar file.
+ * The archive is created while the files are downloaded, no temporary files are written and memory
+ * use does not depend on the size of the dataset. The checksum of every file is verified while it
+ * is added to the archive. If the archive can not be written completely, e.g. because a checksum
+ * does not match, the incomplete archive is deleted.
+ */
+@Command(name = "download-archive",
+    description = "Downloads a dataset or a folder of a dataset as a single zip or tar file")
+public class DownloadArchiveCommand implements Runnable {
+
+  @Parameters(arity = "1", paramLabel = "dataset id", description = "The code of the dataset to "
+      + "download. Can be found via list-data.")
+  private String datasetCode;
+  @Parameters(arity = "1", paramLabel = "archive path", description = "The local path of the "
+      + "archive file to create")
+  private String outputPath;
+  @Option(arity = "1", paramLabel = "<path>", description = "Path of a folder or file in the "
+      + "dataset, e.g. original/results. The whole dataset is archived by default.",
+      names = {"-p", "--path"})
+  private String filePath = "";
+  @Option(arity = "1", paramLabel = "<format>", description = "Archive format, ZIP or TAR. "
+      + "Default: ZIP", names = {"-f", "--format"})
+  private Format format = Format.ZIP;
+  @Mixin
+  OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
+
+  @Override
+  public void run() {
+    App.readConfig();
+    OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(),
+        auth.getOpenbisAS(), auth.getOpenbisDSS());
+    OpenbisConnector openbis = new OpenbisConnector(authentication);
+
+    if (!openbis.datasetExists(datasetCode)) {
+      System.out.println("Dataset " + datasetCode + " not found");
+      return;
+    }
+    System.out.printf("Writing dataset %s to %s archive %s...%n", datasetCode, format,
+        outputPath);
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputPath))) {
+      int files = openbis.writeDatasetArchive(datasetCode, filePath, format, out);
+      System.out.printf("Archived %s files.%n", files);
+    } catch (IOException | RuntimeException e) {
+      // an incomplete archive would look like a finished one
+      deleteArchive();
+      throw new RuntimeException("Could not write archive " + outputPath, e);
+    }
+    System.out.println("Done");
+  }
+
+  private void deleteArchive() {
+    try {
+      Files.deleteIfExists(Path.of(outputPath));
+    } catch (IOException e) {
+      System.out.printf("Could not delete incomplete archive %s%n", outputPath);
+    }
+  }
+}
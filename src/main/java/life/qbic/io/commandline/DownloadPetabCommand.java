@@ -2,6 +2,7 @@ package life.qbic.io.commandline;
 
 import ch.ethz.sis.openbis.generic.OpenBIS;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSet;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.id.ExperimentIdentifier;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
@@ -12,6 +13,7 @@ import life.qbic.model.DatasetWithProperties;
 import life.qbic.model.download.OpenbisConnector;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 /**
@@ -34,6 +36,9 @@ public class DownloadPetabCommand implements Runnable {
   @Parameters(arity = "1", paramLabel = "download path", description = "The local path where to "
       + "store the downloaded data")
   private String outputPath;
+  @Option(names = "--resume", description = "Resumes an interrupted download into the same "
+      + "folder. Files that were already downloaded and verified are not downloaded again.")
+  private boolean resume;
   @Mixin
   OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
 
@@ -52,7 +57,7 @@ public class DownloadPetabCommand implements Runnable {
       }
       DatasetWithProperties result = new DatasetWithProperties(datasets.get(0));
       Set<String> patientIDs = openbis.findPropertiesInSampleHierarchy("PATIENT_DKFZ_ID",
-          result.getExperiment().getIdentifier());
+          new ExperimentIdentifier(result.getExperimentID()));
       if(!patientIDs.isEmpty()) {
         result.addProperty("patientIDs", String.join(",", patientIDs));
       }
@@ -60,7 +65,7 @@ public class DownloadPetabCommand implements Runnable {
       System.out.println("Found dataset, downloading.");
       System.out.println();
 
-      openbis.downloadDataset(outputPath, datasetCode, "");
+      openbis.downloadDataset(outputPath, datasetCode, "", resume);
 
       PetabParser parser = new PetabParser();
       try {
@@ -3,7 +3,7 @@ package life.qbic.io.commandline;
 import ch.ethz.sis.openbis.generic.OpenBIS;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSet;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.person.Person;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.id.ExperimentIdentifier;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
 
 import java.text.SimpleDateFormat;
@@ -16,10 +16,12 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import life.qbic.App;
 import life.qbic.model.Configuration;
@@ -27,6 +29,9 @@ import life.qbic.model.download.FileSystemWriter;
 import life.qbic.model.download.SummaryWriter;
 import life.qbic.model.DatasetWithProperties;
 import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.SampleHierarchyPropertyCache;
+import life.qbic.model.index.MetadataIndex;
+import life.qbic.model.index.MetadataIndex.IndexedDataset;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
@@ -53,9 +58,18 @@ public class FindDatasetsCommand implements Runnable {
   @Option(arity = "1", paramLabel = "<space>", description = "Optional openBIS spaces to filter "
       + "found datasets by.", names = {"-s", "--space"})
   private String space;
+  @Option(arity = "0", description = "Prints additional information, e.g. how often metadata "
+      + "from the sample hierarchy could be reused.", names = {"-v", "--verbose"})
+  private boolean verbose;
+  @Option(arity = "0", description = "Uses the local metadata index instead of querying openBIS. "
+      + "The index is created using the index command.", names = {"--offline"})
+  private boolean offline;
   @Mixin
   OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
 
+  private final SampleHierarchyPropertyCache hierarchyCache = new SampleHierarchyPropertyCache();
+  private final Map<String, Set<String>> patientIDsByExperiment = new HashMap<>();
+
   @Override
     public void run() {
       App.readConfig();
@@ -66,27 +80,63 @@ public class FindDatasetsCommand implements Runnable {
       } else {
         System.out.println("Querying experiment in all available spaces...");
       }
-      
+
+      if (spaces.isEmpty() && objectCode == null) {
+        System.out.println("No space or object code provided."); //TODO
+        return;
+      }
+
+      if (offline) {
+        List<String> summary = listDatasetsFromIndex(MetadataIndex.load(), spaces);
+        for (String s : summary) {
+          System.out.println(s);
+        }
+        saveSummary(summary);
+        return;
+      }
+
       OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(),
           auth.getOpenbisAS());
       OpenbisConnector openbis = new OpenbisConnector(authentication);
 
       List<DataSet> datasets = new ArrayList<>();
 
-      if (spaces.isEmpty() && objectCode == null) {
-        System.out.println("No space or object code provided."); //TODO
-        return;
+      // in space mode, all datasets are fetched with one paged query and grouped by object code.
+      // The query runs while the experiments and samples of the spaces are searched.
+      Map<String, List<DataSet>> datasetsByExperimentCode = new HashMap<>();
+      Map<String, List<DataSet>> datasetsBySampleCode = new HashMap<>();
+      boolean spaceMode = !spaces.isEmpty() && objectCode == null;
+      CompletableFuture<Void> datasetQuery = CompletableFuture.completedFuture(null);
+      if (spaceMode) {
+        datasetQuery = openbis.queryAsync(() -> {
+          openbis.streamDatasetsOfSpaces(spaces, page -> {
+            for (DataSet dataSet : page) {
+              datasetsByExperimentCode.computeIfAbsent(dataSet.getExperiment().getCode(),
+                  k -> new ArrayList<>()).add(dataSet);
+              if (dataSet.getSample() != null) {
+                datasetsBySampleCode.computeIfAbsent(dataSet.getSample().getCode(),
+                    k -> new ArrayList<>()).add(dataSet);
+              }
+            }
+          });
+          return null;
+        });
       }
 
       List<String> objectCodes = new ArrayList<>();
-      if (!spaces.isEmpty() && objectCode == null) {
-        Map<String, List<Experiment>> listExperimentsbySpace = openbis.getExperimentsBySpace(spaces);
+      if (spaceMode) {
+        CompletableFuture<Map<String, List<Experiment>>> experimentQuery =
+            openbis.getExperimentsBySpaceAsync(spaces);
+        CompletableFuture<Map<String, List<Sample>>> sampleQuery =
+            openbis.getSamplesBySpaceAsync(spaces);
+        Map<String, List<Experiment>> listExperimentsbySpace = OpenbisConnector.await(
+            experimentQuery);
         listExperimentsbySpace.forEach((space, experiments) -> {
           experiments.forEach(experiment -> {
             objectCodes.add(experiment.getIdentifier().toString());
           });
         });
-        Map<String, List<Sample>> listSamplesbySpace = openbis.getSamplesBySpace(spaces);
+        Map<String, List<Sample>> listSamplesbySpace = OpenbisConnector.await(sampleQuery);
         listSamplesbySpace.forEach((space, samples) -> {
           samples.forEach(sample -> {
             objectCodes.add(sample.getIdentifier().toString());
@@ -107,10 +157,15 @@ public class FindDatasetsCommand implements Runnable {
         objectCodesShortened.add(code);
       }
 
+      OpenbisConnector.await(datasetQuery);
+
       List<String> summary = new ArrayList<>();
 
       for (String code : objectCodesShortened) {
-        List<DataSet> datasetsOfExp = openbis.listDatasetsOfExperiment(spaces, code).stream()
+        List<DataSet> foundForExp = spaceMode
+            ? datasetsByExperimentCode.getOrDefault(code, new ArrayList<>())
+            : openbis.listDatasetsOfExperiment(spaces, code);
+        List<DataSet> datasetsOfExp = foundForExp.stream()
         .sorted(Comparator.comparing(
             (DataSet d) -> d.getExperiment().getProject().getSpace().getCode()))
         .collect(Collectors.toList());
@@ -121,7 +176,10 @@ public class FindDatasetsCommand implements Runnable {
           summary = getDetailsOfDataset(datasetsOfExp, openbis, summary);
         }
 
-        List<DataSet> datasetsOfSample = openbis.listDatasetsOfSample(spaces, code).stream()
+        List<DataSet> foundForSample = spaceMode
+            ? datasetsBySampleCode.getOrDefault(code, new ArrayList<>())
+            : openbis.listDatasetsOfSample(spaces, code);
+        List<DataSet> datasetsOfSample = foundForSample.stream()
         .sorted(Comparator.comparing(
             (DataSet d) -> d.getExperiment().getProject().getSpace().getCode()))
         .collect(Collectors.toList());
@@ -135,6 +193,9 @@ public class FindDatasetsCommand implements Runnable {
       for(String s : summary) {
         System.out.println(s);
       }
+      if (verbose) {
+        System.out.println("Sample hierarchy cache: " + hierarchyCache);
+      }
       saveSummary(summary);      
   }
 
@@ -145,8 +206,10 @@ public class FindDatasetsCommand implements Runnable {
   private List<String> getDetailsOfDataset(List<DataSet> datasets, OpenbisConnector openbis, List<String> summary) {
     Map<String, String> properties = new HashMap<>();
       if (!datasets.isEmpty()) {
-        Set<String> patientIDs = openbis.findPropertiesInSampleHierarchy("PATIENT_DKFZ_ID",
-        datasets.get(0).getExperiment().getIdentifier());
+        ExperimentIdentifier experimentId = datasets.get(0).getExperiment().getIdentifier();
+        Set<String> patientIDs = patientIDsByExperiment.computeIfAbsent(
+            experimentId.getIdentifier(), id -> openbis.findPropertiesInSampleHierarchy(
+                "PATIENT_DKFZ_ID", experimentId, hierarchyCache));
         if (!patientIDs.isEmpty()) {
           properties.put("patientIDs", String.join(",", patientIDs));
         }
@@ -163,22 +226,86 @@ public class FindDatasetsCommand implements Runnable {
       int datasetIndex = 0;
       for (DatasetWithProperties dataSet : datasetWithProperties) {
         datasetIndex++;
-        summary.add("[" + datasetIndex + "]");
-        for (String key : dataSet.getProperties().keySet()) {
-          summary.add(key + ": " + properties.get(key));
-        }
-        summary.add(String.format("ID: %s (%s)", dataSet.getCode(), dataSet.getExperiment().getIdentifier()));
-        summary.add("Type: " + dataSet.getType().getCode());
-        Person person = dataSet.getRegistrator();
-        String simpleTime = new SimpleDateFormat("MM-dd-yy HH:mm:ss").format(dataSet.getRegistrationDate());
-        String name = person.getFirstName() + " " + person.getLastName();
-        String uploadedBy = "Uploaded by " + name + " (" + simpleTime + ")";
-        summary.add(uploadedBy);
-        summary.add("");
+        addDatasetDetails(summary, datasetIndex, dataSet.getProperties(), dataSet.getCode(),
+            dataSet.getExperimentID(), dataSet.getTypeCode(), dataSet.getRegistrator(),
+            dataSet.getRegistrationDate());
       }
       return summary;
   }
 
+  private void addDatasetDetails(List<String> summary, int datasetIndex,
+      Map<String, String> properties, String code, String experimentID, String type,
+      String registrator, Date registrationDate) {
+    summary.add("[" + datasetIndex + "]");
+    for (String key : properties.keySet()) {
+      summary.add(key + ": " + properties.get(key));
+    }
+    summary.add(String.format("ID: %s (%s)", code, experimentID));
+    summary.add("Type: " + type);
+    String simpleTime = new SimpleDateFormat("MM-dd-yy HH:mm:ss").format(registrationDate);
+    summary.add("Uploaded by " + registrator + " (" + simpleTime + ")");
+    summary.add("");
+  }
+
+  /**
+   * Lists the datasets of the requested object, or of all objects in the requested spaces, using
+   * the local metadata index.
+   */
+  private List<String> listDatasetsFromIndex(MetadataIndex index, List<String> spaces) {
+    List<String> objectCodes = new ArrayList<>();
+    if (objectCode == null) {
+      index.getExperimentsBySpace(spaces).values()
+          .forEach(experiments -> experiments.forEach(e -> objectCodes.add(e.getCode())));
+      index.getSamplesBySpace(spaces).values()
+          .forEach(samples -> samples.forEach(s -> objectCodes.add(s.getCode())));
+    } else if (objectCode.contains("/")) {
+      String code = objectCode.substring(objectCode.lastIndexOf('/') + 1);
+      System.out.println("Query is not an object code, querying for: " + code + " instead.");
+      objectCodes.add(code);
+    } else {
+      objectCodes.add(objectCode);
+    }
+    Comparator<IndexedDataset> bySpace = Comparator.comparing(IndexedDataset::getSpace);
+    List<String> summary = new ArrayList<>();
+    for (String code : objectCodes) {
+      List<IndexedDataset> datasetsOfExp = index.findDatasetsOfExperiment(spaces, code);
+      if (!datasetsOfExp.isEmpty()) {
+        datasetsOfExp.sort(bySpace);
+        summary.add(String.format("Found %s datasets for experiment %s:", datasetsOfExp.size(),
+            code));
+        addDetailsFromIndex(index, datasetsOfExp, summary);
+      }
+      List<IndexedDataset> datasetsOfSample = index.findDatasetsOfSample(spaces, code);
+      if (!datasetsOfSample.isEmpty()) {
+        datasetsOfSample.sort(bySpace);
+        summary.add(String.format("Found %s datasets of sample %s:", datasetsOfSample.size(),
+            code));
+        addDetailsFromIndex(index, datasetsOfSample, summary);
+      }
+    }
+    return summary;
+  }
+
+  private void addDetailsFromIndex(MetadataIndex index, List<IndexedDataset> datasets,
+      List<String> summary) {
+    Map<String, String> properties = new HashMap<>();
+    String experimentID = datasets.get(0).getExperiment();
+    if (experimentID != null) {
+      Set<String> patientIDs = patientIDsByExperiment.computeIfAbsent(experimentID,
+          id -> index.findPropertiesInSampleHierarchy("PATIENT_DKFZ_ID", id));
+      if (!patientIDs.isEmpty()) {
+        properties.put("patientIDs", String.join(",", patientIDs));
+      }
+    }
+    int datasetIndex = 0;
+    for (IndexedDataset dataSet : datasets) {
+      datasetIndex++;
+      addDatasetDetails(summary, datasetIndex, properties, dataSet.getCode(),
+          dataSet.getExperiment(), dataSet.getType(), dataSet.getRegistrator(),
+          new Date(dataSet.getRegistered()));
+    }
+  }
+
   /**
   * Saves the Summary to File
   * Saves the summary in the log-Folder as txt-file.
@@ -0,0 +1,98 @@
+package life.qbic.io.commandline;
+
+import ch.ethz.sis.openbis.generic.OpenBIS;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import life.qbic.App;
+import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
+import life.qbic.model.index.MetadataIndex;
+import life.qbic.model.index.MetadataIndexBuilder;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+/**
+ * The Index command creates a local index of the metadata of an openBIS instance: spaces,
+ * projects, experiments, samples with their parents and children, datasets and the files of
+ * datasets. The statistics, sample-types and list-data commands can use this index instead of
+ * querying openBIS if the --offline flag is used.
+ * The location of the index can be set via the config file as 'metadata_index'.
+ * By default, all spaces but the openBIS settings and material spaces are indexed.
+ * With --refresh, only objects registered or modified since the index was created or last
+ * refreshed are queried. This is cheap enough to be run every few minutes.
+ */
+@Command(name = "index",
+    description = "creates a local index of the metadata of an openBIS instance, used by commands "
+        + "running with --offline")
+public class IndexCommand implements Runnable {
+
+  @Option(arity = "1", paramLabel = "<space>", description = "openBIS space to index. Can be "
+      + "used multiple times. All spaces are indexed by default.", names = {"-s", "--space"})
+  private List<String> spaces = new ArrayList<>();
+  @Option(arity = "1", paramLabel = "<threads>", description = "Number of requests sent to "
+      + "openBIS at the same time. Default: 4", names = {"--threads"})
+  private int threads = 4;
+  @Option(names = "--skip-files", description = "Does not index the files of datasets. Much "
+      + "faster for instances with many datasets.")
+  private boolean skipFiles;
+  @Option(names = "--refresh", description = "Updates an existing index with the objects "
+      + "registered or modified since it was created or last refreshed. Spaces and the "
+      + "--skip-files setting of the existing index are kept.")
+  private boolean refresh;
+  @Mixin
+  OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
+
+  @Override
+  public void run() {
+    App.readConfig();
+    OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(),
+        auth.getOpenbisAS());
+    OpenbisConnector openbis = new OpenbisConnector(authentication);
+    OpenbisTypeRegistryCache.fromConfig(auth.getOpenbisAS())
+        .ifPresent(openbis::setTypeRegistryCache);
+
+    Path location = MetadataIndex.location();
+    MetadataIndexBuilder builder = new MetadataIndexBuilder(openbis, threads);
+    MetadataIndex index;
+    if (refresh && Files.isRegularFile(location)) {
+      try {
+        index = MetadataIndex.read(location);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not read metadata index " + location, e);
+      }
+      if (!auth.getOpenbisAS().equals(index.getAsURL())) {
+        throw new RuntimeException("The metadata index at " + location + " was created for "
+            + index.getAsURL() + ", not " + auth.getOpenbisAS());
+      }
+      System.out.printf("Searching objects changed since %s...%n",
+          new Date(index.getWatermark()));
+      int changed = builder.refresh(index);
+      System.out.printf("Updated %s experiments, samples and datasets.%n", changed);
+    } else {
+      if (refresh) {
+        System.out.println("No metadata index found, creating a new one...");
+      }
+      List<String> indexedSpaces = new ArrayList<>(spaces);
+      if (indexedSpaces.isEmpty()) {
+        indexedSpaces = openbis.getSpaces();
+        indexedSpaces.removeAll(Arrays.asList("ELN_SETTINGS", "MATERIAL.GLOBAL"));
+      }
+      System.out.printf("Indexing %s spaces...%n", indexedSpaces.size());
+      index = builder.build(auth.getOpenbisAS(), indexedSpaces, !skipFiles);
+    }
+
+    try {
+      index.write(location);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write metadata index " + location, e);
+    }
+    System.out.printf("Metadata index written to %s%n", location);
+    System.out.println("Done");
+  }
+}
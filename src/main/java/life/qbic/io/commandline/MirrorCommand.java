@@ -0,0 +1,262 @@
+package life.qbic.io.commandline;
+
+import ch.ethz.sis.openbis.generic.OpenBIS;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import life.qbic.App;
+import life.qbic.model.download.MirrorIndex;
+import life.qbic.model.download.MirrorIndex.MirroredDataset;
+import life.qbic.model.download.OpenbisConnector;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * The Mirror command keeps a local copy of the datasets of one or more openBIS experiments up to
+ * date. Every dataset is stored in a folder named after its code below the mirror path.
+ * The mirror folder contains an index of the mirrored datasets with the paths, sizes and checksums
+ * of their files and the latest modification date seen in openBIS. On every sync only datasets
+ * registered or modified since then are queried, and only new datasets or datasets whose files
+ * changed are downloaded, several at a time.
+ * Datasets that were mirrored but are no longer part of the experiments in openBIS are reported.
+ * Their local copies are only removed if the --prune option is used.
+ */
+@Command(name = "mirror",
+    description = "downloads new or changed datasets of openBIS experiments to a local mirror "
+        + "folder")
+public class MirrorCommand implements Runnable {
+
+  @Parameters(index = "0", paramLabel = "mirror path", description = "The local folder "
+      + "containing the mirror. Created if it does not exist.")
+  private String mirrorPath;
+  @Parameters(index = "1..*", arity = "1..*", paramLabel = "experiment ID", description = "The "
+      + "full identifiers of the experiments to mirror, e.g. /space/project/experiment")
+  private List<String> experimentIDs = new ArrayList<>();
+  @Option(arity = "1", paramLabel = "<threads>", description = "Number of datasets downloaded "
+      + "at the same time. Default: 2", names = {"--threads"})
+  private int threads = 2;
+  @Option(names = "--prune", description = "Deletes local copies of datasets that were removed "
+      + "from the mirrored experiments in openBIS.")
+  private boolean prune;
+  @Mixin
+  OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
+
+  private OpenbisConnector openbis;
+
+  @Override
+  public void run() {
+    App.readConfig();
+    OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(),
+        auth.getOpenbisAS(), auth.getOpenbisDSS());
+    openbis = new OpenbisConnector(authentication);
+
+    Path mirror = Paths.get(mirrorPath);
+    MirrorIndex index;
+    try {
+      index = MirrorIndex.read(mirror);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read mirror index in " + mirrorPath, e);
+    }
+    Date since = index.getLastModification() > 0 ? new Date(index.getLastModification()) : null;
+    if (since == null) {
+      System.out.println("No mirror index found, mirroring all datasets...");
+    } else {
+      System.out.printf("Searching datasets registered or modified since %s...%n", since);
+    }
+
+    List<DataSet> toCheck = new ArrayList<>();
+    Map<String, MirroredDataset> mirrored = index.getDatasets();
+    // the requested experiment every dataset currently belongs to
+    Map<String, String> experimentByCode = new HashMap<>();
+    long latestModification = index.getLastModification();
+    for (String experimentID : experimentIDs) {
+      Set<String> currentCodes = openbis.listDatasetCodesOfExperiment(experimentID);
+      currentCodes.forEach(code -> experimentByCode.put(code, experimentID));
+      List<DataSet> modified = openbis.findDatasetsOfExperimentModifiedSince(experimentID, since);
+      toCheck.addAll(modified);
+      // datasets that are older than the last sync, but were never mirrored successfully
+      Set<String> modifiedCodes = modified.stream().map(DataSet::getCode)
+          .collect(Collectors.toSet());
+      List<String> missing = currentCodes.stream()
+          .filter(code -> !mirrored.containsKey(code) && !modifiedCodes.contains(code))
+          .collect(Collectors.toList());
+      toCheck.addAll(openbis.findDataSetsInBatches(missing));
+      for (DataSet dataset : modified) {
+        if (dataset.getModificationDate() != null) {
+          latestModification = Math.max(latestModification,
+              dataset.getModificationDate().getTime());
+        }
+      }
+    }
+
+    // datasets are only removed if they are part of none of the requested experiments, datasets
+    // that moved between them are kept and assigned to their new experiment
+    List<String> removed = new ArrayList<>();
+    for (MirroredDataset dataset : mirrored.values()) {
+      if (!experimentIDs.contains(dataset.getExperiment())) {
+        continue;
+      }
+      String experiment = experimentByCode.get(dataset.getCode());
+      if (experiment == null) {
+        removed.add(dataset.getCode());
+      } else if (!experiment.equals(dataset.getExperiment())) {
+        index.put(new MirroredDataset(dataset.getCode(), experiment, dataset.getType(),
+            dataset.getFiles()));
+      }
+    }
+
+    List<DatasetToDownload> toDownload = new ArrayList<>();
+    int unchanged = 0;
+    for (DataSet dataset : toCheck) {
+      MirroredDataset current = MirroredDataset.of(dataset.getCode(),
+          experimentOf(dataset), dataset.getType().getCode(), openbis.getDatasetFiles(dataset));
+      MirroredDataset known = mirrored.get(dataset.getCode());
+      if (current.hasSameFiles(known) && mirror.resolve(dataset.getCode()).toFile().exists()) {
+        index.put(current);
+        unchanged++;
+      } else {
+        toDownload.add(new DatasetToDownload(current, known != null));
+      }
+    }
+    System.out.printf("%s new or changed datasets to download, %s datasets unchanged.%n",
+        toDownload.size(), unchanged);
+
+    int failed = download(mirror, index, toDownload);
+    reportRemoved(mirror, index, removed);
+
+    if (failed == 0) {
+      index.updateLastModification(latestModification);
+    } else {
+      System.out.printf("%s datasets could not be downloaded, they will be retried with the next "
+          + "sync.%n", failed);
+    }
+    writeIndex(mirror, index);
+    System.out.println("Done");
+  }
+
+  /**
+   * Downloads the datasets with a bounded number of concurrent downloads. The index is stored
+   * after every finished dataset, so an interrupted sync keeps its progress.
+   * @return the number of datasets that could not be downloaded
+   */
+  private int download(Path mirror, MirrorIndex index, List<DatasetToDownload> toDownload) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    int failed = 0;
+    try {
+      List<Future<Boolean>> downloads = new ArrayList<>();
+      for (DatasetToDownload dataset : toDownload) {
+        downloads.add(executor.submit(() -> downloadDataset(mirror, index, dataset)));
+      }
+      for (Future<Boolean> download : downloads) {
+        if (!download.get()) {
+          failed++;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Mirroring was interrupted.");
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return failed;
+  }
+
+  private boolean downloadDataset(Path mirror, MirrorIndex index, DatasetToDownload download) {
+    MirroredDataset dataset = download.dataset;
+    String code = dataset.getCode();
+    try {
+      if (download.update) {
+        // the files of the dataset changed, so the old local copy is replaced completely
+        deleteRecursively(mirror.resolve(code));
+      }
+      openbis.downloadDataset(mirror.resolve(code).toString(), code, "", true);
+      index.put(dataset);
+      writeIndex(mirror, index);
+      System.out.printf("%s dataset %s%n", download.update ? "Updated" : "Mirrored", code);
+      return true;
+    } catch (RuntimeException e) {
+      System.out.printf("Could not mirror dataset %s: %s%n", code, e.getMessage());
+      return false;
+    }
+  }
+
+  private void reportRemoved(Path mirror, MirrorIndex index, List<String> removed) {
+    if (removed.isEmpty()) {
+      return;
+    }
+    System.out.printf("%s mirrored datasets were removed from openBIS:%n", removed.size());
+    for (String code : removed) {
+      if (prune) {
+        deleteRecursively(mirror.resolve(code));
+        index.remove(code);
+        System.out.printf("%s (local copy deleted)%n", code);
+      } else {
+        System.out.printf("%s (local copy kept, use --prune to delete it)%n", code);
+      }
+    }
+  }
+
+  private void deleteRecursively(Path folder) {
+    if (!folder.toFile().exists()) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(folder)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not delete " + folder, e);
+    }
+  }
+
+  private void writeIndex(Path mirror, MirrorIndex index) {
+    try {
+      index.write(mirror);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write mirror index in " + mirror, e);
+    }
+  }
+
+  /**
+   * Finds the requested experiment identifier the dataset belongs to, so index entries can be
+   * matched against the command line parameters of later syncs.
+   */
+  private String experimentOf(DataSet dataset) {
+    String identifier = dataset.getExperiment().getIdentifier().getIdentifier();
+    for (String experimentID : experimentIDs) {
+      if (experimentID.equalsIgnoreCase(identifier)) {
+        return experimentID;
+      }
+    }
+    return identifier;
+  }
+
+  private static class DatasetToDownload {
+
+    private final MirroredDataset dataset;
+    private final boolean update;
+
+    DatasetToDownload(MirroredDataset dataset, boolean update) {
+      this.dataset = dataset;
+      this.update = update;
+    }
+  }
+}
@@ -18,6 +18,7 @@ import life.qbic.model.SampleTypeConnection;
 import life.qbic.model.download.FileSystemWriter;
 import life.qbic.model.download.SummaryWriter;
 import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.index.MetadataIndex;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
@@ -39,6 +40,9 @@ public class SampleHierarchyCommand implements Runnable {
   @Option(arity = "1", paramLabel = "<output file path>", description = "optional output path",
       names = {"-o", "--out"})
   private String outpath;
+  @Option(arity = "0", description = "uses the local metadata index instead of querying openBIS. "
+      + "The index is created using the index command.", names = {"--offline"})
+  private boolean offline;
   @Mixin
   OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
 
@@ -53,10 +57,15 @@ public class SampleHierarchyCommand implements Runnable {
         } else {
           summary.add("Querying samples in all available spaces...");
         }
-        OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(),
-            auth.getOpenbisUser(), auth.getOpenbisAS());
-        OpenbisConnector openbis = new OpenbisConnector(authentication);
-        Map<SampleTypeConnection, Integer> hierarchy = openbis.queryFullSampleHierarchy(spaces);
+        Map<SampleTypeConnection, Integer> hierarchy;
+        if (offline) {
+          hierarchy = MetadataIndex.load().countSampleTypeConnections(spaces);
+        } else {
+          OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(),
+              auth.getOpenbisUser(), auth.getOpenbisAS());
+          OpenbisConnector openbis = new OpenbisConnector(authentication);
+          hierarchy = openbis.queryFullSampleHierarchy(spaces);
+        }
 
         hierarchy.entrySet().stream()
             .sorted(Entry.comparingByValue())
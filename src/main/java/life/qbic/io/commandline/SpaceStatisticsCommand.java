@@ -13,13 +13,19 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import life.qbic.App;
 import life.qbic.model.Configuration;
 import life.qbic.model.download.FileSystemWriter;
 import life.qbic.model.download.SummaryWriter;
 import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.OpenbisTypeRegistry;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
+import life.qbic.model.index.MetadataIndex;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
@@ -47,6 +53,12 @@ public class SpaceStatisticsCommand implements Runnable {
       + "Ignored if a specific space is selected.",
       names = {"--show-settings"})
   private boolean allSpaces;
+  @Option(arity = "0", description = "also lists experiment, sample and dataset types of the "
+      + "openBIS instance that have no entries in a space.", names = {"--show-empty-types"})
+  private boolean showEmptyTypes;
+  @Option(arity = "0", description = "uses the local metadata index instead of querying openBIS. "
+      + "The index is created using the index command.", names = {"--offline"})
+  private boolean offline;
   @Mixin
   OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
 
@@ -62,64 +74,62 @@ public class SpaceStatisticsCommand implements Runnable {
       } else {
         summary.add("Querying samples in all available spaces...");
       }
-      OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(), auth.getOpenbisAS());
-      OpenbisConnector openbis = new OpenbisConnector(authentication);
+      Map<String, Map<String, Integer>> experiments;
+      Map<String, Map<String, Integer>> samples;
+      Map<String, Map<String, Integer>> datasets;
+      OpenbisTypeRegistry types;
+      if (offline) {
+        MetadataIndex index = MetadataIndex.load();
+        if (spaces.isEmpty()) {
+          spaces = index.getSpaces();
+          if (!allSpaces) {
+            spaces.removeAll(blackList);
+          }
+        }
+        experiments = index.countExperimentsByTypeAndSpace(spaces);
+        samples = index.countSamplesByTypeAndSpace(spaces);
+        datasets = index.countDatasetsByTypeAndSpace(spaces);
+        types = index.getTypes();
+      } else {
+        OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(),
+            auth.getOpenbisUser(), auth.getOpenbisAS());
+        OpenbisConnector openbis = new OpenbisConnector(authentication);
+        OpenbisTypeRegistryCache.fromConfig(auth.getOpenbisAS())
+            .ifPresent(openbis::setTypeRegistryCache);
+        CompletableFuture<OpenbisTypeRegistry> typeQuery = showEmptyTypes
+            ? openbis.queryAsync(openbis::getTypeRegistry)
+            : CompletableFuture.completedFuture(null);
 
-      if (spaces.isEmpty()) {
-        spaces = openbis.getSpaces();
-        if(!allSpaces) {
-          spaces.removeAll(blackList);
+        if (spaces.isEmpty()) {
+          spaces = openbis.getSpaces();
+          if (!allSpaces) {
+            spaces.removeAll(blackList);
+          }
         }
-      }
 
-      Map<String, Map<String, List<Experiment>>> experiments = openbis.getExperimentsByTypeAndSpace(spaces);
-      Map<String, Map<String, List<Sample>>> samples = openbis.getSamplesByTypeAndSpace(spaces);
-      Map<String, Map<String, List<DataSet>>> datasets = openbis.getDatasetsByTypeAndSpace(spaces);
+        // the three searches are independent, so they run at the same time
+        CompletableFuture<Map<String, Map<String, List<Experiment>>>> experimentQuery =
+            openbis.getExperimentsByTypeAndSpaceAsync(spaces);
+        CompletableFuture<Map<String, Map<String, List<Sample>>>> sampleQuery =
+            openbis.getSamplesByTypeAndSpaceAsync(spaces);
+        CompletableFuture<Map<String, Map<String, List<DataSet>>>> datasetQuery =
+            openbis.getDatasetsByTypeAndSpaceAsync(spaces);
+        experiments = countByType(OpenbisConnector.await(experimentQuery));
+        samples = countByType(OpenbisConnector.await(sampleQuery));
+        datasets = countByType(OpenbisConnector.await(datasetQuery));
+        types = OpenbisConnector.await(typeQuery);
+      }
 
       for(String space : spaces) {
         summary.add("-----");
         summary.add("Summary for "+space);
         summary.add("-----");
-        int numExps = 0;
-        if (experiments.containsKey(space)) {
-          numExps = experiments.get(space).values().stream().mapToInt(List::size).sum();
-        }
-        summary.add("Experiments ("+numExps+"):");
-        summary.add("");
-        if(!experiments.isEmpty()) {
-          Map<String, List<Experiment>> exps = experiments.get(space);
-          for (String type : exps.keySet()) {
-            summary.add(type + ": " + exps.get(type).size());
-          }
-        }
-        summary.add("");
-        int numSamples = 0;
-        if (samples.containsKey(space)) {
-          numSamples = samples.get(space).values().stream().mapToInt(List::size).sum();
-        }
-        summary.add("Samples ("+numSamples+"):");
-        summary.add("");
-        if(!samples.isEmpty()) {
-          Map<String, List<Sample>> samps = samples.get(space);
-          for (String type : samps.keySet()) {
-            summary.add(type + ": " + samps.get(type).size());
-          }
-        }
-        summary.add("");
-        int numData = 0;
-        if (datasets.containsKey(space)) {
-          numData = datasets.get(space).values().stream().mapToInt(List::size).sum();
-        }
-        summary.add("Attached datasets (" + numData + "):");
-        summary.add("");
-        if (datasets.get(space) != null) {
-          Map<String, List<DataSet>> dsets = datasets.get(space);
-          for (String dataType : dsets.keySet()) {
-            summary.add(dataType + ": " + dsets.get(dataType).size());
-          }
-        }
-
-        summary.add("");
+        addCounts(summary, "Experiments", experiments.get(space),
+            showEmptyTypes ? types.getExperimentTypes() : null);
+        addCounts(summary, "Samples", samples.get(space),
+            showEmptyTypes ? types.getSampleTypes() : null);
+        addCounts(summary, "Attached datasets", datasets.get(space),
+            showEmptyTypes ? types.getDatasetTypes() : null);
       }
 
       for(String line : summary) {
@@ -139,6 +149,35 @@ public class SpaceStatisticsCommand implements Runnable {
       }
     }
 
+    private void addCounts(List<String> summary, String label, Map<String, Integer> countsByType,
+        Set<String> knownTypes) {
+      int total = countsByType == null ? 0
+          : countsByType.values().stream().mapToInt(Integer::intValue).sum();
+      summary.add(label + " (" + total + "):");
+      summary.add("");
+      if (countsByType != null) {
+        for (String type : countsByType.keySet()) {
+          summary.add(type + ": " + countsByType.get(type));
+        }
+      }
+      if (knownTypes != null) {
+        for (String type : knownTypes) {
+          if (countsByType == null || !countsByType.containsKey(type)) {
+            summary.add(type + ": 0");
+          }
+        }
+      }
+      summary.add("");
+    }
+
+    private static <T> Map<String, Map<String, Integer>> countByType(
+        Map<String, Map<String, List<T>>> entitiesBySpace) {
+      Map<String, Map<String, Integer>> counts = new HashMap<>();
+      entitiesBySpace.forEach((space, byType) -> byType.forEach((type, entities) ->
+          counts.computeIfAbsent(space, k -> new HashMap<>()).put(type, entities.size())));
+      return counts;
+    }
+
     private String getTimeStamp() {
       final String PATTERN_FORMAT = "YYYY-MM-dd_HHmmss";
       DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PATTERN_FORMAT);
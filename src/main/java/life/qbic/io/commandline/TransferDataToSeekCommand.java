@@ -14,18 +14,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.xml.parsers.ParserConfigurationException;
 import life.qbic.App;
+import life.qbic.model.OpenbisExperimentStream;
 import life.qbic.model.OpenbisExperimentWithDescendants;
 import life.qbic.model.OpenbisSeekTranslator;
 import life.qbic.model.download.SEEKConnector.SeekStructurePostRegistrationInformation;
 import life.qbic.model.isa.NodeType;
 import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.isa.SeekStructureStream;
+import life.qbic.model.projection.ExperimentProjection;
 import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
 import life.qbic.model.download.SEEKConnector;
 import life.qbic.model.download.SEEKConnector.AssetToUpload;
+import life.qbic.model.download.SEEKConnector.PostRegistrationHandler;
 import org.apache.commons.codec.binary.Base64;
 import org.xml.sax.SAXException;
 import picocli.CommandLine.Command;
@@ -71,15 +77,28 @@ public class TransferDataToSeekCommand implements Runnable {
       "Transfers the data itself to SEEK along with the metadata. "
           + "Otherwise only the link(s) to the openBIS object will be created in SEEK.")
   private boolean transferData;
+  @Option(names = "--resume", description = "Resumes an interrupted transfer. Files that were "
+      + "already downloaded to the tmp folder and verified are not downloaded again, partially "
+      + "downloaded files are continued.")
+  private boolean resume;
+  @Option(names = "--stream", description = "Transfers an experiment while its samples and files "
+      + "are requested from openBIS. Objects are created in SEEK and linked in openBIS in windows "
+      + "of 'seek_transfer_window' objects (config file, default: 500). Use for experiments with "
+      + "very many files, memory use does not depend on the size of the experiment.")
+  private boolean stream;
   @Mixin
   SeekAuthenticationOptions seekAuth = new SeekAuthenticationOptions();
   @Mixin
   OpenbisAuthenticationOptions openbisAuth = new OpenbisAuthenticationOptions();
   OpenbisConnector openbis;
   SEEKConnector seek;
+  private boolean updatedExistingNodes = false;
   OpenbisSeekTranslator translator;
   //500 MB - user will be informed that the transfer will take a while, for each file larger than this
   private final long FILE_WARNING_SIZE = 500*1024*1024;
+  private static final int DEFAULT_TRANSFER_WINDOW = 500;
+  private static final String TMP_FOLDER_PATH = "tmp/";
+  private final Set<String> downloadedDatasets = ConcurrentHashMap.newKeySet();
 
   @Override
   public void run() {
@@ -103,6 +122,8 @@ public class TransferDataToSeekCommand implements Runnable {
         openbisAuth.getOpenbisUser(), openbisAuth.getOpenbisAS(), openbisAuth.getOpenbisDSS());
 
     this.openbis = new OpenbisConnector(authentication);
+    OpenbisTypeRegistryCache.fromConfig(openbisAuth.getOpenbisAS())
+        .ifPresent(openbis::setTypeRegistryCache);
 
     System.out.println("Searching for specified object in openBIS...");
 
@@ -142,6 +163,21 @@ public class TransferDataToSeekCommand implements Runnable {
              ParserConfigurationException | SAXException e) {
       throw new RuntimeException(e);
     }
+    translator.validateTypeMappings(openbis.getTypeRegistry()).forEach(System.out::println);
+    if (stream) {
+      if (nodeType.equals(NodeType.ASSAY)) {
+        try {
+          transferExperimentIncrementally();
+        } catch (URISyntaxException | IOException | InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        cleanupDownloads();
+        System.out.println("Done");
+        return;
+      }
+      System.out.println("--stream is only supported for experiments, " + objectID
+          + " is transferred in one piece.");
+    }
     SeekStructurePostRegistrationInformation postRegInfo;
     OpenbisExperimentWithDescendants structure;
     try {
@@ -165,7 +201,12 @@ public class TransferDataToSeekCommand implements Runnable {
     }
 
     System.out.println("Creating links to new SEEK objects in openBIS...");
-    openbis.createSeekLinks(postRegInfo);
+    if (updatedExistingNodes) {
+      openbis.updateSeekLinks(postRegInfo);
+    } else {
+      openbis.createSeekLinks(postRegInfo);
+    }
+    cleanupDownloads();
 
     System.out.println("Done");
   }
@@ -207,6 +248,58 @@ public class TransferDataToSeekCommand implements Runnable {
     return createNewAssayStructure(nodeWithChildren);
   }
 
+  /**
+   * Transfers an experiment without loading all its samples and files first: they are requested
+   * from openBIS, translated and created in SEEK one window at a time. Data of the new assets is
+   * transferred and links are created in openBIS after every window.
+   */
+  private void transferExperimentIncrementally()
+      throws URISyntaxException, IOException, InterruptedException {
+    Set<String> blacklist = parseBlackList(blacklistFile, false);
+    Set<String> sampleBlacklist = parseBlackList(sampleBlacklistFile, true);
+    System.out.println("Translating openBIS property codes to SEEK names...");
+    Map<String, String> sampleTypesToIds = seek.getSampleTypeNamesToIDs();
+    OpenbisExperimentStream experiment = openbis.streamExperimentWithDescendants(objectID);
+    SeekStructureStream nodeWithChildren = translator.translateIncrementally(experiment,
+        sampleTypesToIds, blacklist, sampleBlacklist, transferData);
+
+    Optional<String> assayID = Optional.empty();
+    if (!noUpdate) {
+      System.out.println("Trying to find existing corresponding assay in SEEK...");
+      assayID = getAssayIDForOpenBISExperiment(experiment.getExperiment());
+      assayID.ifPresent(x -> System.out.println("Found assay with id " + x));
+    }
+    updatedExistingNodes = assayID.isPresent();
+    int windowSize = transferWindowSize();
+    PostRegistrationHandler handler = postRegInfo -> {
+      if (transferData) {
+        handleDataTransfer(postRegInfo.getAssetsToUpload());
+      }
+      if (updatedExistingNodes) {
+        openbis.updateSeekLinks(postRegInfo);
+      } else {
+        openbis.createSeekLinks(postRegInfo);
+      }
+    };
+    if (assayID.isPresent()) {
+      System.out.println("Updating nodes...");
+      seek.updateAssayNodeIncrementally(nodeWithChildren, assayID.get(), windowSize, handler);
+      System.out.printf("Assay %s was successfully updated.%n", assayID.get());
+    } else {
+      System.out.println("Creating new node(s)...");
+      seek.createNodeIncrementally(nodeWithChildren, windowSize, handler);
+      System.out.printf("Assay was successfully created.%n");
+    }
+  }
+
+  private int transferWindowSize() {
+    String configured = App.configProperties.get("seek_transfer_window");
+    if (configured == null || configured.isBlank()) {
+      return DEFAULT_TRANSFER_WINDOW;
+    }
+    return Math.max(1, Integer.parseInt(configured.trim()));
+  }
+
   /*
   private SeekStructurePostRegistrationInformation handleSampleTransfer()
       throws URISyntaxException, IOException, InterruptedException {
@@ -322,6 +415,7 @@ public class TransferDataToSeekCommand implements Runnable {
       IOException, InterruptedException {
     SeekStructurePostRegistrationInformation postRegInfo = seek.updateAssayNode(nodeWithChildren,
         assayID);
+    updatedExistingNodes = true;
     List<AssetToUpload> assetsToUpload = postRegInfo.getAssetsToUpload();
     if (transferData) {
       handleDataTransfer(assetsToUpload);
@@ -346,9 +440,13 @@ public class TransferDataToSeekCommand implements Runnable {
     return postRegInfo;
   }
 
+  /**
+   * Uploads the data of the assets to SEEK. Large files are downloaded to the tmp folder first.
+   * They are kept there, together with their download state, until the whole transfer succeeded,
+   * so that an interrupted transfer can be resumed without downloading them again.
+   */
   private void handleDataTransfer(List<AssetToUpload> assets)
       throws URISyntaxException, IOException, InterruptedException {
-    final String tmpFolderPath = "tmp/";
     for(AssetToUpload asset : assets) {
       String filePath = asset.getFilePath();
       String dsCode = asset.getDataSetCode();
@@ -360,7 +458,9 @@ public class TransferDataToSeekCommand implements Runnable {
             asset.getFileSizeInBytes() / (1024 * 1024));
         System.out.printf("Downloading file %s from openBIS to tmp folder due to size...%n",
             filePath);
-        File tmpFile = openbis.downloadDataset(tmpFolderPath, dsCode, filePath);
+        File tmpFile = openbis.downloadDatasetKeepingState(TMP_FOLDER_PATH, dsCode, filePath,
+            resume);
+        downloadedDatasets.add(dsCode);
 
         System.out.printf("Uploading file to SEEK...%n");
         String fileURL = seek.uploadFileContent(asset.getBlobEndpoint(), tmpFile.getAbsolutePath());
@@ -373,11 +473,23 @@ public class TransferDataToSeekCommand implements Runnable {
         System.out.printf("File stored here: %s%n", fileURL);
 
       }
-      System.out.printf("Cleaning up temp folder%n");
-      cleanupTemp(new File(tmpFolderPath));
     }
   }
 
+  /**
+   * Removes the files downloaded to the tmp folder and their download states once the transfer
+   * succeeded.
+   */
+  private void cleanupDownloads() {
+    if (downloadedDatasets.isEmpty()) {
+      return;
+    }
+    System.out.printf("Cleaning up temp folder%n");
+    cleanupTemp(new File(TMP_FOLDER_PATH));
+    downloadedDatasets.forEach(code -> openbis.removeDownloadState(TMP_FOLDER_PATH, code));
+    downloadedDatasets.clear();
+  }
+
   private boolean sampleExists(String objectID) {
     return openbis.sampleExists(objectID);
   }
@@ -390,13 +502,13 @@ public class TransferDataToSeekCommand implements Runnable {
     return openbis.experimentExists(experimentID);
   }
 
-  private Optional<String> getAssayIDForOpenBISExperiment(Experiment experiment)
+  private Optional<String> getAssayIDForOpenBISExperiment(ExperimentProjection experiment)
       throws URISyntaxException, IOException, InterruptedException {
     // the perm id is unique and afaik not used by scientists. it is highly unlikely that it would
     // "accidentally" be part of another title or description. however, care should be taken here,
     // because if a perm id is found in the wrong SEEK node, meta-information in SEEK could be
     // overwritten or samples/data added to the wrong assay.
-    String permID = experiment.getPermId().getPermId();
+    String permID = experiment.getPermId();
     List<String> assayIDs = seek.searchAssaysInStudyContainingKeyword(permID);
     if(assayIDs.isEmpty()) {
       return Optional.empty();
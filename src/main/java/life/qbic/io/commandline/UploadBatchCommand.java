@@ -0,0 +1,250 @@
+package life.qbic.io.commandline;
+
+import ch.ethz.sis.openbis.generic.OpenBIS;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSet;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.id.DataSetPermId;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import life.qbic.App;
+import life.qbic.model.BatchUploadEntry;
+import life.qbic.model.BatchUploadEntry.Status;
+import life.qbic.model.Configuration;
+import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.OpenbisTypeRegistry;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
+import org.apache.commons.lang3.tuple.Pair;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * The Upload Batch command can be used to upload many files or folders to openBIS in one run.
+ * The datasets to upload are listed in a tab-separated manifest file, one dataset per line, with
+ * the columns: path, object ID (experiment or sample), dataset type (optional, UNKNOWN if empty)
+ * and a comma-separated list of parent dataset codes (optional). Empty lines and lines starting
+ * with '#' are ignored.
+ * All objects, parent datasets and dataset types are validated with a few batched queries before
+ * anything is uploaded. If any line is invalid, including lines without path or object ID, nothing
+ * is uploaded. Valid datasets are uploaded concurrently and each one is registered as soon as its
+ * upload has finished.
+ * The outcome of every line, including the permId of the new dataset and upload and registration
+ * times, is written to a results file.
+ */
+@Command(name = "upload-batch",
+    description = "uploads the datasets listed in a manifest file and attaches them to experiments "
+        + "or samples and (optionally) other datasets")
+public class UploadBatchCommand implements Runnable {
+
+  @Parameters(arity = "1", paramLabel = "manifest", description = "Tab-separated file listing the "
+      + "datasets to upload: path, object ID, dataset type (optional) and comma-separated parent "
+      + "dataset codes (optional)")
+  private String manifestPath;
+  @Option(arity = "1", paramLabel = "<threads>", description = "Number of concurrent uploads. "
+      + "Default: 4", names = {"--threads"})
+  private int threads = 4;
+  @Option(arity = "1", paramLabel = "<results file>", description = "Path of the results file. "
+      + "By default it is stored in the logs folder.", names = {"-o", "--results"})
+  private String resultsPath;
+  @Mixin
+  OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
+
+  private OpenbisConnector openbis;
+
+  @Override
+  public void run() {
+    App.readConfig();
+    List<BatchUploadEntry> entries = readManifest(manifestPath);
+    if (entries.isEmpty()) {
+      System.out.printf("No datasets found in manifest %s%n", manifestPath);
+      return;
+    }
+    System.out.printf("Found %s datasets in manifest.%n", entries.size());
+
+    OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(),
+        auth.getOpenbisAS(), auth.getOpenbisDSS());
+    openbis = new OpenbisConnector(authentication);
+    OpenbisTypeRegistryCache.fromConfig(auth.getOpenbisAS())
+        .ifPresent(openbis::setTypeRegistryCache);
+
+    System.out.println("Validating objects, parent datasets and dataset types...");
+    validate(entries);
+    List<BatchUploadEntry> invalid = entries.stream()
+        .filter(entry -> entry.getStatus() == Status.INVALID).collect(Collectors.toList());
+    if (!invalid.isEmpty()) {
+      System.out.printf("%s lines of the manifest are invalid, nothing was uploaded:%n",
+          invalid.size());
+      invalid.forEach(entry -> System.out.printf("Line %s (%s): %s%n", entry.getLine(),
+          entry.getPath(), entry.getMessage()));
+      writeResults(entries);
+      return;
+    }
+    System.out.println();
+    System.out.println("Parameters verified, uploading datasets...");
+    System.out.println();
+    uploadAndRegister(entries);
+    writeResults(entries);
+    long registered = entries.stream().filter(entry -> entry.getStatus() == Status.REGISTERED)
+        .count();
+    System.out.printf("%s of %s datasets were successfully registered.%n", registered,
+        entries.size());
+  }
+
+  private List<BatchUploadEntry> readManifest(String manifestPath) {
+    try {
+      List<BatchUploadEntry> entries = new ArrayList<>();
+      List<String> lines = Files.readAllLines(Paths.get(manifestPath));
+      for (int i = 0; i < lines.size(); i++) {
+        String line = lines.get(i);
+        if (line.isBlank() || line.startsWith("#") || line.startsWith("path\t")) {
+          continue;
+        }
+        entries.add(BatchUploadEntry.fromManifestLine(line, i + 1));
+      }
+      return entries;
+    } catch (IOException e) {
+      throw new RuntimeException(manifestPath + " could not be found or read.");
+    }
+  }
+
+  /**
+   * Validates all entries with one query for experiments, one for samples and one for parent
+   * datasets (split into batches for very large manifests). Entries that could not be parsed are
+   * already invalid and are not checked further.
+   */
+  private void validate(List<BatchUploadEntry> entries) {
+    OpenbisTypeRegistry types = openbis.getTypeRegistry();
+    List<BatchUploadEntry> parsed = entries.stream()
+        .filter(entry -> entry.getStatus() != Status.INVALID).collect(Collectors.toList());
+    Set<String> objectIDs = new HashSet<>();
+    Set<String> parentCodes = new HashSet<>();
+    for (BatchUploadEntry entry : parsed) {
+      objectIDs.add(entry.getObjectID());
+      parentCodes.addAll(entry.getParents());
+    }
+    // experiment identifiers (/space/project/experiment) have three parts, sample identifiers
+    // two or three. Splitting at '/' yields an empty first element, hence four elements.
+    Set<String> experimentCandidates = objectIDs.stream()
+        .filter(id -> id.split("/").length == 4).collect(Collectors.toSet());
+    Set<String> experiments = openbis.findExistingExperiments(experimentCandidates);
+    Set<String> sampleCandidates = objectIDs.stream()
+        .filter(id -> !experiments.contains(id)).collect(Collectors.toSet());
+    Set<String> samples = openbis.findExistingSamples(sampleCandidates);
+    Set<String> parents = openbis.findDataSetsInBatches(parentCodes).stream()
+        .map(DataSet::getCode).collect(Collectors.toSet());
+
+    for (BatchUploadEntry entry : parsed) {
+      if (!new File(entry.getPath()).exists()) {
+        entry.setInvalid("Path could not be found");
+      }
+      if (!types.hasDatasetType(entry.getDatasetType())) {
+        entry.setInvalid("Dataset type " + entry.getDatasetType()
+            + " is not supported by this instance of openBIS");
+      }
+      if (samples.contains(entry.getObjectID())) {
+        entry.setAttachToSample(true);
+      } else if (!experiments.contains(entry.getObjectID())) {
+        entry.setInvalid(entry.getObjectID() + " could not be found in openBIS");
+      }
+      List<String> missingParents = entry.getParents().stream()
+          .filter(parent -> !parents.contains(parent)).collect(Collectors.toList());
+      if (!missingParents.isEmpty()) {
+        entry.setInvalid("Datasets " + missingParents + " could not be found");
+      }
+    }
+  }
+
+  /**
+   * Uploads the entries to the data store workspace using a bounded pool of threads. Each upload
+   * is registered as a dataset as soon as it has completed.
+   */
+  private void uploadAndRegister(List<BatchUploadEntry> entries) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    CompletionService<Pair<BatchUploadEntry, String>> uploads =
+        new ExecutorCompletionService<>(executor);
+    try {
+      for (BatchUploadEntry entry : entries) {
+        uploads.submit(() -> upload(entry));
+      }
+      for (int i = 0; i < entries.size(); i++) {
+        Pair<BatchUploadEntry, String> upload = uploads.take().get();
+        BatchUploadEntry entry = upload.getLeft();
+        if (upload.getRight() != null) {
+          register(entry, upload.getRight());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Batch upload was interrupted.");
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Pair<BatchUploadEntry, String> upload(BatchUploadEntry entry) {
+    long start = System.currentTimeMillis();
+    try {
+      String uploadId = openbis.uploadToWorkspace(Path.of(entry.getPath()));
+      entry.setUploaded(System.currentTimeMillis() - start);
+      return Pair.of(entry, uploadId);
+    } catch (RuntimeException e) {
+      entry.setFailed("Upload failed: " + e.getMessage());
+      System.out.printf("Upload of %s failed: %s%n", entry.getPath(), e.getMessage());
+      return Pair.of(entry, null);
+    }
+  }
+
+  private void register(BatchUploadEntry entry, String uploadId) {
+    long start = System.currentTimeMillis();
+    try {
+      DataSetPermId permId = openbis.registerUploadedDataset(uploadId, entry.getObjectID(),
+          entry.isAttachToSample(), entry.getDatasetType(), entry.getParents());
+      entry.setRegistered(permId.getPermId(), System.currentTimeMillis() - start);
+      System.out.printf("Dataset %s was successfully attached to %s%n", permId.getPermId(),
+          entry.getObjectID());
+    } catch (RuntimeException e) {
+      entry.setFailed("Registration failed: " + e.getMessage());
+      System.out.printf("Registration of %s failed: %s%n", entry.getPath(), e.getMessage());
+    }
+  }
+
+  private void writeResults(List<BatchUploadEntry> entries) {
+    Path outputPath = resultsPath != null ? Paths.get(resultsPath)
+        : Paths.get(Configuration.LOG_PATH.toString(),
+            "upload_batch_results" + getTimeStamp() + ".tsv");
+    List<String> lines = new ArrayList<>();
+    lines.add(BatchUploadEntry.getResultsHeader());
+    entries.forEach(entry -> lines.add(entry.toResultsLine()));
+    try {
+      Files.write(outputPath, lines);
+      System.out.printf("Results were written to %s%n", outputPath);
+    } catch (IOException e) {
+      throw new RuntimeException("Could not write results file.");
+    }
+  }
+
+  private String getTimeStamp() {
+    final String PATTERN_FORMAT = "yyyy-MM-dd_HHmmss";
+    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PATTERN_FORMAT);
+    return LocalDateTime.ofInstant(Instant.now(), ZoneOffset.UTC).format(formatter);
+  }
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 import life.qbic.App;
 import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
@@ -52,11 +53,18 @@ public class UploadDatasetCommand implements Runnable {
 
       OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(), auth.getOpenbisAS(), auth.getOpenbisDSS());
       openbis = new OpenbisConnector(authentication);
+      OpenbisTypeRegistryCache.fromConfig(auth.getOpenbisAS())
+          .ifPresent(openbis::setTypeRegistryCache);
 
       if(!pathValid(dataPath)) {
         System.out.printf("Path %s could not be found%n", dataPath);
         return;
       }
+      if(!openbis.getTypeRegistry().hasDatasetType(datasetType)) {
+        System.out.printf("Dataset type %s is not supported by this instance of openBIS.%n",
+            datasetType);
+        return;
+      }
       boolean attachToSample = false;
       boolean attachToExperiment = openbis.experimentExists(objectID);
       if(openbis.sampleExists(objectID)) {
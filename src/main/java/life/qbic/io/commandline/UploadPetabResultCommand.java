@@ -3,11 +3,15 @@ package life.qbic.io.commandline;
 import ch.ethz.sis.openbis.generic.OpenBIS;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.id.DataSetPermId;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import life.qbic.App;
 import life.qbic.io.PetabParser;
+import life.qbic.io.petab.PetabTableValidator;
+import life.qbic.model.petab.MetaInformation;
 import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.download.OpenbisTypeRegistryCache;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Option;
@@ -29,6 +33,10 @@ import picocli.CommandLine.Parameters;
  *     - 20220702100912333-189138
  * If one or more dataset identifiers are not found, the script will stop without uploading the data
  * and inform the user.
+ * Before the upload, the condition, observable and measurement tables of the PEtab are validated
+ * and statistics of their columns are printed. If errors are found, nothing is uploaded. The
+ * validation can be skipped using the --skip-validation flag. A metaInformation yaml that cannot
+ * be read does not stop the upload, the tables are then validated without it.
  */
 @Command(name = "upload-petab",
     description = "uploads a PETab folder and attaches it to a provided experiment and any datasets "
@@ -45,6 +53,12 @@ public class UploadPetabResultCommand implements Runnable {
   @Option(arity = "1", paramLabel = "dataset type", description = "The openBIS dataset type code the "
       + "data should be stored as. UNKNOWN if no type is chosen.", names = {"-t", "--type"})
   private String datasetType = "UNKNOWN";
+  @Option(names = "--skip-validation", description = "Upload the PEtab without validating its "
+      + "tables first.")
+  private boolean skipValidation;
+  @Option(names = "--threads", description = "Number of threads validating a measurement table. "
+      + "Default: number of processors")
+  private int threads = Runtime.getRuntime().availableProcessors();
   @Mixin
   OpenbisAuthenticationOptions auth = new OpenbisAuthenticationOptions();
 
@@ -58,6 +72,8 @@ public class UploadPetabResultCommand implements Runnable {
       OpenBIS authentication = App.loginToOpenBIS(auth.getOpenbisPassword(), auth.getOpenbisUser(),
           auth.getOpenbisAS(), auth.getOpenbisDSS());
       openbis = new OpenbisConnector(authentication);
+      OpenbisTypeRegistryCache.fromConfig(auth.getOpenbisAS())
+          .ifPresent(openbis::setTypeRegistryCache);
 
       if(!pathValid(dataPath)) {
         System.out.printf("Path %s could not be found%n", dataPath);
@@ -67,6 +83,16 @@ public class UploadPetabResultCommand implements Runnable {
         System.out.printf("%s is not a directory. Please specify the PETab directory root%n", dataPath);
         return;
       }
+      if(!skipValidation && !tablesValid()) {
+        System.out.println("Errors were found in the PEtab tables, the dataset was not uploaded. "
+            + "Use --skip-validation to upload it anyway.");
+        return;
+      }
+      if(!openbis.getTypeRegistry().hasDatasetType(datasetType)) {
+        System.out.printf("Dataset type %s is not supported by this instance of openBIS.%n",
+            datasetType);
+        return;
+      }
       boolean attachToSample = false;
       boolean attachToExperiment = openbis.experimentExists(objectID);
       if(openbis.sampleExists(objectID)) {
@@ -102,6 +128,30 @@ public class UploadPetabResultCommand implements Runnable {
       }
     }
 
+  private boolean tablesValid() {
+    System.out.println("Validating PEtab tables...");
+    try {
+      return new PetabTableValidator(threads).validate(Path.of(dataPath), readMetaInformation());
+    } catch (IOException e) {
+      throw new RuntimeException("Could not validate the PEtab tables in " + dataPath, e);
+    }
+  }
+
+  /**
+   * The metaInformation yaml is only used to check ids and conditions of the tables against it. If
+   * it cannot be read, the tables are validated without it instead of aborting the upload.
+   */
+  private MetaInformation readMetaInformation() {
+    try {
+      return petabParser.readMetaInformation(dataPath).orElse(null);
+    } catch (RuntimeException e) {
+      String cause = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+      System.out.printf("WARNING: %s, the tables are validated without it: %s%n", e.getMessage(),
+          cause);
+      return null;
+    }
+  }
+
   private boolean datasetsExist(List<String> datasetCodes) {
       return openbis.findDataSets(datasetCodes).size() == datasetCodes.size();
   }
@@ -0,0 +1,214 @@
+package life.qbic.io.petab;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for cells of a scanned table. A cell is given by the buffer the table is mapped to and
+ * the start (inclusive) and end (exclusive) position of its bytes. None of the methods but
+ * toString create objects, so they can be used for every cell of large tables.
+ */
+final class Cells {
+
+  private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+      1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private Cells() {
+  }
+
+  static boolean isBlank(ByteBuffer buffer, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (buffer.get(i) != ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compares the cell to an ASCII value, ignoring case.
+   */
+  static boolean equalsIgnoreCase(ByteBuffer buffer, int start, int end, String value) {
+    if (end - start != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.toLowerCase((char) buffer.get(start + i))
+          != Character.toLowerCase(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * FNV-1a hash of the bytes of the cell.
+   */
+  static long hash(ByteBuffer buffer, int start, int end) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = start; i < end; i++) {
+      hash ^= buffer.get(i) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  static String toString(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      bytes[i - start] = buffer.get(i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Parses decimal numbers like 1, -0.5, 1.5e-3, as well as inf and nan, directly from the bytes
+   * of a cell. Numbers with more than 18 significant digits lose precision, which is fine for
+   * validation and statistics.
+   */
+  static final class NumberParser {
+
+    private double value;
+
+    /**
+     * The value of the last successfully parsed cell.
+     */
+    double value() {
+      return value;
+    }
+
+    /**
+     * @return true if the cell, without surrounding spaces, is a number
+     */
+    boolean parse(ByteBuffer buffer, int start, int end) {
+      while (start < end && buffer.get(start) == ' ') {
+        start++;
+      }
+      while (end > start && buffer.get(end - 1) == ' ') {
+        end--;
+      }
+      if (start == end) {
+        return false;
+      }
+      boolean negative = false;
+      int i = start;
+      byte first = buffer.get(i);
+      if (first == '-' || first == '+') {
+        negative = first == '-';
+        i++;
+      }
+      if (equalsIgnoreCase(buffer, i, end, "inf") || equalsIgnoreCase(buffer, i, end,
+          "infinity")) {
+        value = negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        return true;
+      }
+      if (equalsIgnoreCase(buffer, i, end, "nan")) {
+        value = Double.NaN;
+        return true;
+      }
+      long mantissa = 0;
+      int digits = 0;
+      int exponent = 0;
+      boolean anyDigit = false;
+      boolean fraction = false;
+      for (; i < end; i++) {
+        byte b = buffer.get(i);
+        if (b >= '0' && b <= '9') {
+          anyDigit = true;
+          if (digits < 18) {
+            mantissa = mantissa * 10 + (b - '0');
+            if (mantissa > 0) {
+              digits++;
+            }
+            if (fraction) {
+              exponent--;
+            }
+          } else if (!fraction) {
+            exponent++;
+          }
+        } else if (b == '.' && !fraction) {
+          fraction = true;
+        } else {
+          break;
+        }
+      }
+      if (!anyDigit) {
+        return false;
+      }
+      if (i < end) {
+        byte b = buffer.get(i);
+        if (b != 'e' && b != 'E') {
+          return false;
+        }
+        i++;
+        boolean negativeExponent = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+          negativeExponent = buffer.get(i) == '-';
+          i++;
+        }
+        if (i == end) {
+          return false;
+        }
+        int explicitExponent = 0;
+        for (; i < end; i++) {
+          b = buffer.get(i);
+          if (b < '0' || b > '9') {
+            return false;
+          }
+          explicitExponent = Math.min(explicitExponent * 10 + (b - '0'), 10000);
+        }
+        exponent += negativeExponent ? -explicitExponent : explicitExponent;
+      }
+      double result = mantissa;
+      if (exponent != 0 && mantissa != 0) {
+        if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+          result *= POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+          result /= POWERS_OF_TEN[-exponent];
+        } else {
+          result *= Math.pow(10, exponent);
+        }
+      }
+      value = negative ? -result : result;
+      return true;
+    }
+  }
+
+  /**
+   * A reusable view of a cell as character sequence, e.g. to match ids against a regular
+   * expression without creating a String. Bytes are read as ASCII characters.
+   */
+  static final class AsciiView implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+
+    AsciiView of(ByteBuffer buffer, int start, int end) {
+      this.buffer = buffer;
+      this.start = start;
+      this.end = end;
+      return this;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (buffer.get(start + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+      return Cells.toString(buffer, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+      return Cells.toString(buffer, start, end);
+    }
+  }
+}
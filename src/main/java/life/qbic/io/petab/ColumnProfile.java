@@ -0,0 +1,139 @@
+package life.qbic.io.petab;
+
+import java.nio.ByteBuffer;
+import life.qbic.io.petab.Cells.NumberParser;
+
+/**
+ * Statistics of one column of a table: filled and empty cells, numeric cells with their minimum,
+ * maximum and mean, and the number of distinct values up to a limit. Every scanned range of a table
+ * has its own profiles, which are merged once the range is done.
+ */
+final class ColumnProfile {
+
+  static final int DISTINCT_LIMIT = 10_000;
+
+  private final String name;
+  private long filled;
+  private long empty;
+  private long numeric;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private double sum;
+  private long finite;
+  // hashes of distinct values, 0 marks an empty slot
+  private long[] distinct = new long[256];
+  private int distinctCount;
+  private boolean distinctLimitReached;
+
+  ColumnProfile(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Adds a cell. If the numbers parser is not null, it is used to parse the cell.
+   * @return true if the cell was parsed as a number
+   */
+  boolean add(ByteBuffer buffer, int start, int end, NumberParser numbers) {
+    if (Cells.isBlank(buffer, start, end)) {
+      empty++;
+      return false;
+    }
+    filled++;
+    addDistinct(Cells.hash(buffer, start, end));
+    if (numbers != null && numbers.parse(buffer, start, end)) {
+      numeric++;
+      double value = numbers.value();
+      if (!Double.isNaN(value)) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+      if (Double.isFinite(value)) {
+        sum += value;
+        finite++;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  void merge(ColumnProfile other) {
+    filled += other.filled;
+    empty += other.empty;
+    numeric += other.numeric;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    sum += other.sum;
+    finite += other.finite;
+    distinctLimitReached |= other.distinctLimitReached;
+    for (long hash : other.distinct) {
+      if (hash != 0) {
+        addDistinct(hash);
+      }
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  long getFilled() {
+    return filled;
+  }
+
+  long getNumeric() {
+    return numeric;
+  }
+
+  /**
+   * A row of the statistics table printed by the validator.
+   */
+  String format() {
+    String distinctValues = distinctLimitReached ? ">" + DISTINCT_LIMIT
+        : Integer.toString(distinctCount);
+    if (numeric == 0) {
+      return String.format("  %-28s %12d %10d %10d %12s %12s %12s %10s", name, filled, empty,
+          numeric, "", "", "", distinctValues);
+    }
+    return String.format("  %-28s %12d %10d %10d %12.4g %12.4g %12.4g %10s", name, filled, empty,
+        numeric, min, max, finite > 0 ? sum / finite : Double.NaN, distinctValues);
+  }
+
+  static String formatHeader() {
+    return String.format("  %-28s %12s %10s %10s %12s %12s %12s %10s", "column", "filled", "empty",
+        "numeric", "min", "max", "mean", "distinct");
+  }
+
+  private void addDistinct(long hash) {
+    if (distinctLimitReached) {
+      return;
+    }
+    if (hash == 0) {
+      hash = 1;
+    }
+    int mask = distinct.length - 1;
+    int slot = (int) (hash ^ (hash >>> 32)) & mask;
+    while (distinct[slot] != 0) {
+      if (distinct[slot] == hash) {
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (distinctCount == DISTINCT_LIMIT) {
+      distinctLimitReached = true;
+      distinct = new long[0];
+      return;
+    }
+    distinct[slot] = hash;
+    distinctCount++;
+    if (distinctCount * 2 > distinct.length) {
+      long[] old = distinct;
+      distinct = new long[old.length * 2];
+      distinctCount = 0;
+      for (long value : old) {
+        if (value != 0) {
+          addDistinct(value);
+        }
+      }
+    }
+  }
+}
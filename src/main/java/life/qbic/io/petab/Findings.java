@@ -0,0 +1,115 @@
+package life.qbic.io.petab;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Errors and warnings found in a table. Findings with the same message are counted together,
+ * keeping the first line they were found in and a few example values, so that a table with
+ * millions of faulty rows does not produce millions of messages.
+ */
+final class Findings {
+
+  private static final int MAX_EXAMPLES = 5;
+
+  private final Map<String, Finding> errors = new LinkedHashMap<>();
+  private final Map<String, Finding> warnings = new LinkedHashMap<>();
+
+  void error(String message, long line) {
+    errors.computeIfAbsent(message, Finding::new).add(line);
+  }
+
+  /**
+   * Adds an error with the cell as example value.
+   */
+  void error(String message, long line, ByteBuffer buffer, int start, int end) {
+    errors.computeIfAbsent(message, Finding::new).add(line, buffer, start, end);
+  }
+
+  void warning(String message, long line) {
+    warnings.computeIfAbsent(message, Finding::new).add(line);
+  }
+
+  void warning(String message, long line, ByteBuffer buffer, int start, int end) {
+    warnings.computeIfAbsent(message, Finding::new).add(line, buffer, start, end);
+  }
+
+  boolean hasErrors() {
+    return !errors.isEmpty();
+  }
+
+  int errorCount() {
+    return errors.size();
+  }
+
+  /**
+   * Adds the findings of another range of the same table.
+   * @param firstLine the line number of the first line of the other range
+   */
+  void merge(Findings other, long firstLine) {
+    other.errors.values().forEach(finding -> errors.computeIfAbsent(finding.message, Finding::new)
+        .merge(finding, firstLine));
+    other.warnings.values().forEach(finding -> warnings.computeIfAbsent(finding.message,
+        Finding::new).merge(finding, firstLine));
+  }
+
+  void print(String table) {
+    errors.values().forEach(finding -> System.out.printf("  ERROR in %s: %s%n", table, finding));
+    warnings.values().forEach(finding -> System.out.printf("  WARNING in %s: %s%n", table,
+        finding));
+  }
+
+  private static final class Finding {
+
+    private final String message;
+    private long count;
+    private long firstLine = -1;
+    private final List<String> examples = new ArrayList<>();
+
+    Finding(String message) {
+      this.message = message;
+    }
+
+    void add(long line) {
+      count++;
+      if (firstLine < 0) {
+        firstLine = line;
+      }
+    }
+
+    void add(long line, ByteBuffer buffer, int start, int end) {
+      add(line);
+      if (examples.size() < MAX_EXAMPLES) {
+        String example = Cells.toString(buffer, start, end);
+        if (!examples.contains(example)) {
+          examples.add(example);
+        }
+      }
+    }
+
+    void merge(Finding other, long lineOffset) {
+      if (firstLine < 0 && other.firstLine >= 0) {
+        firstLine = other.firstLine + lineOffset;
+      }
+      count += other.count;
+      for (String example : other.examples) {
+        if (examples.size() < MAX_EXAMPLES && !examples.contains(example)) {
+          examples.add(example);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      String location = String.format("%s (%s rows, first in line %s)", message, count,
+          firstLine);
+      if (examples.isEmpty()) {
+        return location;
+      }
+      return location + ", e.g. '" + String.join("', '", examples) + "'";
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package life.qbic.io.petab;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Set of identifiers stored as bytes, e.g. the condition or observable ids of a PEtab problem.
+ * Cells of a scanned table can be looked up without creating a String for them. Once all ids are
+ * added, the set can be read by several threads.
+ */
+final class IdSet {
+
+  private byte[][] keys = new byte[64][];
+  private long[] hashes = new long[64];
+  private int size;
+
+  /**
+   * @return false if the id is already part of the set
+   */
+  boolean add(ByteBuffer buffer, int start, int end) {
+    long hash = Cells.hash(buffer, start, end);
+    int slot = find(buffer, start, end, hash);
+    if (keys[slot] != null) {
+      return false;
+    }
+    byte[] key = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      key[i - start] = buffer.get(i);
+    }
+    keys[slot] = key;
+    hashes[slot] = hash;
+    size++;
+    if (size * 2 > keys.length) {
+      grow();
+    }
+    return true;
+  }
+
+  boolean contains(ByteBuffer buffer, int start, int end) {
+    return keys[find(buffer, start, end, Cells.hash(buffer, start, end))] != null;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return the slot of the id, or the empty slot it would be stored in
+   */
+  private int find(ByteBuffer buffer, int start, int end, long hash) {
+    int mask = keys.length - 1;
+    int slot = (int) (hash ^ (hash >>> 32)) & mask;
+    while (keys[slot] != null && !(hashes[slot] == hash && matches(keys[slot], buffer, start,
+        end))) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+    if (key.length != end - start) {
+      return false;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] != buffer.get(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void grow() {
+    byte[][] oldKeys = keys;
+    long[] oldHashes = hashes;
+    keys = new byte[oldKeys.length * 2][];
+    hashes = new long[oldKeys.length * 2];
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = (int) (oldHashes[i] ^ (oldHashes[i] >>> 32)) & mask;
+        while (keys[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        hashes[slot] = oldHashes[i];
+      }
+    }
+  }
+}
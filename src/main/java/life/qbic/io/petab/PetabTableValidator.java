@@ -0,0 +1,381 @@
+package life.qbic.io.petab;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import life.qbic.io.petab.Cells.AsciiView;
+import life.qbic.io.petab.Cells.NumberParser;
+import life.qbic.io.petab.TsvScanner.Range;
+import life.qbic.io.petab.TsvScanner.RowHandler;
+import life.qbic.model.petab.ConditionWithUnit;
+import life.qbic.model.petab.IdWithPattern;
+import life.qbic.model.petab.MetaInformation;
+
+/**
+ * Validates and profiles the tables of a PEtab folder, e.g. before it is uploaded. Tables are
+ * recognized by their columns: condition tables contain 'conditionId', observable tables
+ * 'observableFormula' and measurement tables 'observableId' and 'measurement'.
+ * Errors are missing required columns, lines with the wrong number of cells, empty or duplicate
+ * ids, invalid transformations and noise distributions, measurements or times that are not numbers
+ * and measurements that reference observables or conditions not defined in the other tables.
+ * Ids that do not match the patterns of the metaInformation yaml and condition columns missing
+ * from the condition tables are reported as warnings.
+ * Statistics are printed for every column. Measurement tables, which can be very large, are scanned
+ * by several threads, see TsvScanner.
+ */
+public class PetabTableValidator {
+
+  private static final Set<String> TABLE_EXTENSIONS = Set.of(".tsv", ".tab");
+  private static final Set<String> TRANSFORMATIONS = Set.of("lin", "log", "log10");
+  private static final Set<String> NOISE_DISTRIBUTIONS = Set.of("normal", "laplace");
+
+  private final int threads;
+
+  /**
+   * @param threads number of threads scanning a measurement table
+   */
+  public PetabTableValidator(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Checks all PEtab tables found in the folder and prints statistics and findings.
+   * @param petabFolder the PEtab folder
+   * @param metaInformation the content of the metaInformation yaml, null if there is none
+   * @return true if no errors were found
+   */
+  public boolean validate(Path petabFolder, MetaInformation metaInformation) throws IOException {
+    long start = System.nanoTime();
+    List<Path> conditionTables = new ArrayList<>();
+    List<Path> observableTables = new ArrayList<>();
+    List<Path> measurementTables = new ArrayList<>();
+    for (Path table : findTables(petabFolder)) {
+      List<String> header = TsvScanner.readHeader(table);
+      if (header.contains("observableFormula")) {
+        observableTables.add(table);
+      } else if (header.contains("observableId") && header.contains("measurement")) {
+        measurementTables.add(table);
+      } else if (header.contains("conditionId")) {
+        conditionTables.add(table);
+      }
+    }
+    if (conditionTables.isEmpty() && observableTables.isEmpty() && measurementTables.isEmpty()) {
+      System.out.printf("No PEtab tables found in %s.%n", petabFolder);
+      return true;
+    }
+
+    boolean valid = true;
+    IdSet conditionIds = new IdSet();
+    for (Path table : conditionTables) {
+      valid &= checkConditions(table, conditionIds, metaInformation);
+    }
+    IdSet observableIds = new IdSet();
+    for (Path table : observableTables) {
+      valid &= checkObservables(table, observableIds);
+    }
+    for (Path table : measurementTables) {
+      valid &= checkMeasurements(table, conditionTables.isEmpty() ? null : conditionIds,
+          observableTables.isEmpty() ? null : observableIds, metaInformation);
+    }
+    System.out.printf("Checked %s PEtab tables in %.1f s, %s.%n",
+        conditionTables.size() + observableTables.size() + measurementTables.size(),
+        (System.nanoTime() - start) / 1e9, valid ? "no errors found" : "errors found");
+    return valid;
+  }
+
+  private boolean checkConditions(Path table, IdSet conditionIds,
+      MetaInformation metaInformation) throws IOException {
+    List<String> header = TsvScanner.readHeader(table);
+    Findings tableFindings = new Findings();
+    if (metaInformation != null && metaInformation.getExperimentalCondition() != null
+        && metaInformation.getExperimentalCondition().getConditions() != null) {
+      for (ConditionWithUnit condition :
+          metaInformation.getExperimentalCondition().getConditions()) {
+        if (condition.getName() != null && !header.contains(condition.getName())) {
+          tableFindings.warning("condition '" + condition.getName() + "' of the "
+              + "metaInformation yaml is not a column", 1);
+        }
+      }
+    }
+    Pattern idPattern = metaInformation == null
+        || metaInformation.getExperimentalCondition() == null ? null
+        : compile(metaInformation.getExperimentalCondition().getConditionId(), "conditionId",
+            tableFindings);
+    int idColumn = header.indexOf("conditionId");
+    // ids are collected into a single set, so condition tables are scanned by one thread
+    return scanTable(table, "condition table", header, tableFindings, new TsvScanner(1),
+        () -> new TableHandler(header) {
+          private final Matcher idMatcher = idPattern == null ? null : idPattern.matcher("");
+
+          @Override
+          void check(ByteBuffer buffer, int[] starts, int[] ends, long line) {
+            checkId(buffer, starts[idColumn], ends[idColumn], line, "conditionId", conditionIds,
+                idMatcher);
+          }
+        });
+  }
+
+  private boolean checkObservables(Path table, IdSet observableIds) throws IOException {
+    List<String> header = TsvScanner.readHeader(table);
+    Findings tableFindings = new Findings();
+    int idColumn = requireColumn(header, "observableId", tableFindings);
+    int formulaColumn = requireColumn(header, "observableFormula", tableFindings);
+    int noiseColumn = requireColumn(header, "noiseFormula", tableFindings);
+    int transformationColumn = header.indexOf("observableTransformation");
+    int distributionColumn = header.indexOf("noiseDistribution");
+    return scanTable(table, "observable table", header, tableFindings, new TsvScanner(1),
+        () -> new TableHandler(header) {
+          @Override
+          void check(ByteBuffer buffer, int[] starts, int[] ends, long line) {
+            if (idColumn >= 0) {
+              checkId(buffer, starts[idColumn], ends[idColumn], line, "observableId",
+                  observableIds, null);
+            }
+            requireValue(buffer, starts, ends, formulaColumn, line, "observableFormula");
+            requireValue(buffer, starts, ends, noiseColumn, line, "noiseFormula");
+            checkValue(buffer, starts, ends, transformationColumn, line,
+                "observableTransformation", TRANSFORMATIONS);
+            checkValue(buffer, starts, ends, distributionColumn, line, "noiseDistribution",
+                NOISE_DISTRIBUTIONS);
+          }
+        });
+  }
+
+  /**
+   * @param conditionIds the ids of all conditions, null if there is no condition table
+   * @param observableIds the ids of all observables, null if there is no observable table
+   */
+  private boolean checkMeasurements(Path table, IdSet conditionIds, IdSet observableIds,
+      MetaInformation metaInformation) throws IOException {
+    List<String> header = TsvScanner.readHeader(table);
+    Findings tableFindings = new Findings();
+    int observableColumn = requireColumn(header, "observableId", tableFindings);
+    int simulationColumn = requireColumn(header, "simulationConditionId", tableFindings);
+    int measurementColumn = requireColumn(header, "measurement", tableFindings);
+    int timeColumn = requireColumn(header, "time", tableFindings);
+    int preequilibrationColumn = header.indexOf("preequilibrationConditionId");
+    int replicateColumn = header.indexOf("replicateId");
+    Pattern replicatePattern = metaInformation == null
+        || metaInformation.getMeasurementData() == null || replicateColumn < 0 ? null
+        : compile(metaInformation.getMeasurementData().getReplicateId(), "replicateId",
+            tableFindings);
+    return scanTable(table, "measurement table", header, tableFindings, new TsvScanner(threads),
+        () -> new TableHandler(header) {
+          private final Matcher replicateMatcher = replicatePattern == null ? null
+              : replicatePattern.matcher("");
+
+          @Override
+          void check(ByteBuffer buffer, int[] starts, int[] ends, long line) {
+            checkReference(buffer, starts, ends, observableColumn, line, "observableId",
+                observableIds, true);
+            checkReference(buffer, starts, ends, simulationColumn, line, "simulationConditionId",
+                conditionIds, true);
+            checkReference(buffer, starts, ends, preequilibrationColumn, line,
+                "preequilibrationConditionId", conditionIds, false);
+            if (measurementColumn >= 0 && !isNumber(measurementColumn)) {
+              findings.error("measurement is not a number", line, buffer,
+                  starts[measurementColumn], ends[measurementColumn]);
+            }
+            if (timeColumn >= 0 && !isNumber(timeColumn)) {
+              findings.error("time is not a number", line, buffer, starts[timeColumn],
+                  ends[timeColumn]);
+            }
+            if (replicateMatcher != null) {
+              checkPattern(buffer, starts[replicateColumn], ends[replicateColumn], line,
+                  "replicateId", replicateMatcher);
+            }
+          }
+        });
+  }
+
+  /**
+   * Scans the table, merges the results of all ranges and prints them.
+   * @param findings findings of the whole table, e.g. missing columns
+   * @return true if no errors were found
+   */
+  private boolean scanTable(Path table, String kind, List<String> header, Findings findings,
+      TsvScanner scanner, Supplier<TableHandler> handlers) throws IOException {
+    long start = System.nanoTime();
+    List<Range<TableHandler>> ranges = scanner.scan(table, header.size(), handlers);
+    ColumnProfile[] profiles = header.stream().map(ColumnProfile::new)
+        .toArray(ColumnProfile[]::new);
+    long rows = 0;
+    for (Range<TableHandler> range : ranges) {
+      TableHandler handler = range.getHandler();
+      rows += handler.rows;
+      for (int i = 0; i < profiles.length; i++) {
+        profiles[i].merge(handler.profiles[i]);
+      }
+      findings.merge(handler.findings, range.getFirstLine());
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    double megabytes = Files.size(table) / (1024.0 * 1024.0);
+    System.out.printf("Checked %s %s: %s rows, %.2f MB in %.2f s (%.2f MB/s)%n", kind, table,
+        rows, megabytes, seconds, megabytes / Math.max(seconds, 1e-9));
+    System.out.println(ColumnProfile.formatHeader());
+    for (ColumnProfile profile : profiles) {
+      System.out.println(profile.format());
+    }
+    findings.print(table.getFileName().toString());
+    return !findings.hasErrors();
+  }
+
+  private List<Path> findTables(Path petabFolder) throws IOException {
+    try (Stream<Path> files = Files.walk(petabFolder)) {
+      return files.filter(Files::isRegularFile)
+          .filter(file -> {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return TABLE_EXTENSIONS.stream().anyMatch(name::endsWith);
+          })
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private int requireColumn(List<String> header, String column, Findings findings) {
+    int index = header.indexOf(column);
+    if (index < 0) {
+      findings.error("required column '" + column + "' is missing", 1);
+    }
+    return index;
+  }
+
+  /**
+   * Compiles the pattern of an id from the metaInformation yaml. Patterns that are not regular
+   * expressions are reported as warning and not checked.
+   */
+  private Pattern compile(IdWithPattern id, String column, Findings findings) {
+    if (id == null || id.getPattern() == null || id.getPattern().isBlank()) {
+      return null;
+    }
+    try {
+      return Pattern.compile(id.getPattern());
+    } catch (PatternSyntaxException e) {
+      findings.warning("pattern '" + id.getPattern() + "' of " + column + " in the "
+          + "metaInformation yaml is not a regular expression and was not checked", 1);
+      return null;
+    }
+  }
+
+  /**
+   * Profiles every cell of a line and checks the number of cells. Subclasses add the checks of
+   * their table. Every scanned range of a table has its own handler.
+   */
+  private abstract static class TableHandler implements RowHandler {
+
+    final Findings findings = new Findings();
+    final ColumnProfile[] profiles;
+    private final boolean[] numeric;
+    private final NumberParser numbers = new NumberParser();
+    private final AsciiView view = new AsciiView();
+    private final String cellCountError;
+    long rows;
+
+    TableHandler(List<String> header) {
+      profiles = header.stream().map(ColumnProfile::new).toArray(ColumnProfile[]::new);
+      numeric = new boolean[header.size()];
+      cellCountError = "expected " + header.size() + " cells per line";
+    }
+
+    @Override
+    public void row(ByteBuffer buffer, int[] starts, int[] ends, int cells, long line) {
+      rows++;
+      if (cells != profiles.length) {
+        findings.error(cellCountError, line);
+      }
+      for (int i = 0; i < profiles.length; i++) {
+        numeric[i] = profiles[i].add(buffer, starts[i], ends[i], numbers);
+      }
+      check(buffer, starts, ends, line);
+    }
+
+    abstract void check(ByteBuffer buffer, int[] starts, int[] ends, long line);
+
+    /**
+     * @return true if the cell of the column in the current line is a number
+     */
+    boolean isNumber(int column) {
+      return numeric[column];
+    }
+
+    void checkId(ByteBuffer buffer, int start, int end, long line, String column, IdSet ids,
+        Matcher pattern) {
+      if (Cells.isBlank(buffer, start, end)) {
+        findings.error(column + " is empty", line);
+        return;
+      }
+      if (!ids.add(buffer, start, end)) {
+        findings.error(column + " is not unique", line, buffer, start, end);
+      }
+      if (pattern != null) {
+        checkPattern(buffer, start, end, line, column, pattern);
+      }
+    }
+
+    void checkPattern(ByteBuffer buffer, int start, int end, long line, String column,
+        Matcher pattern) {
+      if (!Cells.isBlank(buffer, start, end)
+          && !pattern.reset(view.of(buffer, start, end)).matches()) {
+        findings.warning(column + " does not match the pattern of the metaInformation yaml "
+            + "(" + pattern.pattern() + ")", line, buffer, start, end);
+      }
+    }
+
+    /**
+     * @param ids the known ids, null if they are unknown and only empty cells are reported
+     */
+    void checkReference(ByteBuffer buffer, int[] starts, int[] ends, int column, long line,
+        String name, IdSet ids, boolean required) {
+      if (column < 0) {
+        return;
+      }
+      if (Cells.isBlank(buffer, starts[column], ends[column])) {
+        if (required) {
+          findings.error(name + " is empty", line);
+        }
+        return;
+      }
+      if (ids != null && !ids.contains(buffer, starts[column], ends[column])) {
+        findings.error(name + " is not defined", line, buffer, starts[column], ends[column]);
+      }
+    }
+
+    void requireValue(ByteBuffer buffer, int[] starts, int[] ends, int column, long line,
+        String name) {
+      if (column >= 0 && Cells.isBlank(buffer, starts[column], ends[column])) {
+        findings.error(name + " is empty", line);
+      }
+    }
+
+    /**
+     * Checks optional cells against a set of allowed lower case values.
+     */
+    void checkValue(ByteBuffer buffer, int[] starts, int[] ends, int column, long line,
+        String name, Set<String> allowed) {
+      if (column < 0 || Cells.isBlank(buffer, starts[column], ends[column])) {
+        return;
+      }
+      for (String value : allowed) {
+        if (Cells.equalsIgnoreCase(buffer, starts[column], ends[column], value)) {
+          return;
+        }
+      }
+      findings.error(name + " must be one of " + allowed, line, buffer, starts[column],
+          ends[column]);
+    }
+  }
+}
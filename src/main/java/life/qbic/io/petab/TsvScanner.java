@@ -0,0 +1,242 @@
+package life.qbic.io.petab;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Scans a tab-separated file with several threads. After the header line, the file is split into
+ * ranges at line boundaries. Every range is memory-mapped and scanned by its own thread, which
+ * passes each line to its own row handler as start and end positions of the cells in the mapped
+ * buffer. No Strings or other objects are created per line or cell.
+ */
+final class TsvScanner {
+
+  // ranges are mapped as a whole, a single mapping is limited to 2 GB
+  private static final long MAX_RANGE_SIZE = 1L << 30;
+  private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Receives the lines of one range of a table. A handler is only called by a single thread.
+   */
+  interface RowHandler {
+
+    /**
+     * @param buffer the mapped range
+     * @param starts the start positions of the cells in the buffer
+     * @param ends the end positions (exclusive) of the cells in the buffer
+     * @param cells the number of cells in the line. It can be larger than the number of columns,
+     *              only the positions of the first cells are provided in that case.
+     * @param line the number of the line in the range, starting at 0
+     */
+    void row(ByteBuffer buffer, int[] starts, int[] ends, int cells, long line);
+  }
+
+  /**
+   * A scanned range of a table with its handler.
+   */
+  static final class Range<H extends RowHandler> {
+
+    private final long start;
+    private final long end;
+    private final H handler;
+    private long lines;
+    private long firstLine;
+
+    private Range(long start, long end, H handler) {
+      this.start = start;
+      this.end = end;
+      this.handler = handler;
+    }
+
+    H getHandler() {
+      return handler;
+    }
+
+    /**
+     * @return the line number of the first line of this range in the file, starting at 1
+     */
+    long getFirstLine() {
+      return firstLine;
+    }
+  }
+
+  private final int threads;
+
+  TsvScanner(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Reads the column names from the first line of a table.
+   */
+  static List<String> readHeader(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      if (header == null) {
+        return new ArrayList<>();
+      }
+      if (header.startsWith("\uFEFF")) {
+        header = header.substring(1);
+      }
+      List<String> columns = new ArrayList<>();
+      for (String column : header.split("\t", -1)) {
+        columns.add(column.strip());
+      }
+      return columns;
+    }
+  }
+
+  /**
+   * Scans all lines after the header.
+   * @param columns the number of columns, used to size the arrays of cell positions
+   * @param handlers creates a handler for every range
+   * @return the scanned ranges in the order of the file
+   */
+  <H extends RowHandler> List<Range<H>> scan(Path file, int columns, Supplier<H> handlers)
+      throws IOException {
+    List<Range<H>> ranges = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long dataStart = nextLineStart(channel, 0, size);
+      long dataSize = size - dataStart;
+      long count = Math.max(Math.min(threads, dataSize / SEARCH_BUFFER_SIZE + 1),
+          (dataSize + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+      long start = dataStart;
+      for (long i = 1; i <= count && start < size; i++) {
+        long end = i == count ? size : nextLineStart(channel, dataStart + dataSize * i / count,
+            size);
+        if (end > start) {
+          if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Lines of " + file + " are too long to be scanned.");
+          }
+          ranges.add(new Range<>(start, end, handlers.get()));
+        }
+        start = Math.max(start, end);
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+          Math.min(threads, ranges.size())));
+      try {
+        List<Future<?>> scans = new ArrayList<>();
+        for (Range<H> range : ranges) {
+          scans.add(executor.submit(() -> {
+            scanRange(channel, range, columns);
+            return null;
+          }));
+        }
+        for (Future<?> scan : scans) {
+          scan.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Scan of " + file + " was interrupted.");
+      } catch (ExecutionException e) {
+        throw new IOException("Could not scan " + file + ".", e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+    // the header is line 1
+    long line = 2;
+    for (Range<H> range : ranges) {
+      range.firstLine = line;
+      line += range.lines;
+    }
+    return ranges;
+  }
+
+  private void scanRange(FileChannel channel, Range<?> range, int columns) throws IOException {
+    MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, range.start,
+        range.end - range.start);
+    RowHandler handler = range.handler;
+    int[] starts = new int[Math.max(1, columns)];
+    int[] ends = new int[Math.max(1, columns)];
+    int limit = buffer.limit();
+    long line = 0;
+    int cell = 0;
+    int lineStart = 0;
+    starts[0] = 0;
+    for (int i = 0; i < limit; i++) {
+      byte b = buffer.get(i);
+      if (b == '\t') {
+        if (cell < ends.length) {
+          ends[cell] = i;
+        }
+        cell++;
+        if (cell < starts.length) {
+          starts[cell] = i + 1;
+        }
+      } else if (b == '\n') {
+        finishLine(handler, buffer, starts, ends, cell, lineStart, i, line);
+        line++;
+        cell = 0;
+        lineStart = i + 1;
+        starts[0] = lineStart;
+      }
+    }
+    if (lineStart < limit) {
+      finishLine(handler, buffer, starts, ends, cell, lineStart, limit, line);
+      line++;
+    }
+    range.lines = line;
+  }
+
+  private void finishLine(RowHandler handler, ByteBuffer buffer, int[] starts, int[] ends,
+      int cell, int lineStart, int lineEnd, long line) {
+    if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+      lineEnd--;
+    }
+    if (cell == 0 && lineEnd == lineStart) {
+      // empty lines are skipped
+      return;
+    }
+    if (cell < ends.length) {
+      ends[cell] = lineEnd;
+    }
+    int cells = cell + 1;
+    if (cells < starts.length) {
+      // cells missing in this line are passed as empty cells at its end
+      Arrays.fill(starts, cells, starts.length, lineEnd);
+      Arrays.fill(ends, cells, ends.length, lineEnd);
+    }
+    handler.row(buffer, starts, ends, cells, line);
+  }
+
+  /**
+   * @return the position after the next line break at or after the position, or the size of the
+   * file if there is none
+   */
+  private long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+    while (position < size) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+}
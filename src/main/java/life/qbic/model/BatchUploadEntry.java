@@ -0,0 +1,136 @@
+package life.qbic.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One line of a batch upload manifest: the file or folder to upload, the experiment or sample it
+ * should be attached to, its dataset type and optional parent datasets. Also holds the outcome of
+ * the upload, which is reported in the results file.
+ */
+public class BatchUploadEntry {
+
+  public enum Status {PENDING, INVALID, UPLOADED, REGISTERED, FAILED}
+
+  private final int line;
+  private final String path;
+  private final String objectID;
+  private final String datasetType;
+  private final List<String> parents;
+  private boolean attachToSample = false;
+  private Status status = Status.PENDING;
+  private String permId = "";
+  private String message = "";
+  private long uploadMillis = 0;
+  private long registrationMillis = 0;
+
+  public BatchUploadEntry(int line, String path, String objectID, String datasetType,
+      List<String> parents) {
+    this.line = line;
+    this.path = path;
+    this.objectID = objectID;
+    this.datasetType = datasetType;
+    this.parents = new ArrayList<>(parents);
+  }
+
+  /**
+   * Parses a tab-separated manifest line: path, object ID, dataset type (optional, UNKNOWN if
+   * empty) and a comma-separated list of parent dataset codes (optional). A line without path or
+   * object ID is returned as invalid entry.
+   * @param lineNumber the number of the line in the manifest, starting at 1
+   */
+  public static BatchUploadEntry fromManifestLine(String line, int lineNumber) {
+    String[] columns = line.split("\t");
+    if (columns.length < 2 || columns[0].isBlank() || columns[1].isBlank()) {
+      BatchUploadEntry entry = new BatchUploadEntry(lineNumber, columns[0].trim(), "", "UNKNOWN",
+          new ArrayList<>());
+      entry.setInvalid("Manifest line needs at least a path and an object ID");
+      return entry;
+    }
+    String type = columns.length > 2 && !columns[2].isBlank() ? columns[2].trim() : "UNKNOWN";
+    List<String> parents = new ArrayList<>();
+    if (columns.length > 3) {
+      for (String parent : columns[3].split(",")) {
+        if (!parent.isBlank()) {
+          parents.add(parent.trim());
+        }
+      }
+    }
+    return new BatchUploadEntry(lineNumber, columns[0].trim(), columns[1].trim(), type, parents);
+  }
+
+  public static String getResultsHeader() {
+    return String.join("\t", "line", "path", "object_id", "dataset_type", "status", "perm_id",
+        "upload_ms", "registration_ms", "message");
+  }
+
+  public String toResultsLine() {
+    return String.join("\t", Integer.toString(line), path, objectID, datasetType, status.name(), permId,
+        Long.toString(uploadMillis), Long.toString(registrationMillis),
+        message.replaceAll("\\s+", " "));
+  }
+
+  /**
+   * @return the number of the line in the manifest, starting at 1
+   */
+  public int getLine() {
+    return line;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public String getObjectID() {
+    return objectID;
+  }
+
+  public String getDatasetType() {
+    return datasetType;
+  }
+
+  public List<String> getParents() {
+    return parents;
+  }
+
+  public boolean isAttachToSample() {
+    return attachToSample;
+  }
+
+  public void setAttachToSample(boolean attachToSample) {
+    this.attachToSample = attachToSample;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public String getPermId() {
+    return permId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setInvalid(String reason) {
+    this.status = Status.INVALID;
+    this.message = message.isEmpty() ? reason : message + "; " + reason;
+  }
+
+  public void setUploaded(long uploadMillis) {
+    this.status = Status.UPLOADED;
+    this.uploadMillis = uploadMillis;
+  }
+
+  public void setRegistered(String permId, long registrationMillis) {
+    this.status = Status.REGISTERED;
+    this.permId = permId;
+    this.registrationMillis = registrationMillis;
+  }
+
+  public void setFailed(String reason) {
+    this.status = Status.FAILED;
+    this.message = reason;
+  }
+}
@@ -1,24 +1,44 @@
 package life.qbic.model;
 
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSet;
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSetType;
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.fetchoptions.DataSetFetchOptions;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.person.Person;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import life.qbic.model.projection.Interner;
 
 /**
  * Wrapper class for openBIS DataSets that collects additional information, e.g. from samples,
  * experiments etc. further up in the hierarchy.
+ * Only the fields of the DataSet that are used are copied, the DataSet itself is not retained.
  */
 public class DatasetWithProperties {
 
-  private final DataSet dataset;
+  private final String code;
+  private final String typeCode;
+  private final String experimentID;
+  private final String sampleID;
+  private final String registrator;
+  private final long registrationDate;
   private final Map<String, String> properties;
 
+  /**
+   * @param dataset a dataset fetched with at least its type and experiment. Sample and registrator
+   *                are copied if they were fetched.
+   */
   public DatasetWithProperties(DataSet dataset) {
-    this.dataset = dataset;
+    DataSetFetchOptions fetchOptions = dataset.getFetchOptions();
+    this.code = dataset.getCode();
+    this.typeCode = Interner.intern(dataset.getType().getCode());
+    this.experimentID = dataset.getExperiment() == null ? null
+        : dataset.getExperiment().getIdentifier().getIdentifier();
+    this.sampleID = fetchOptions.hasSample() && dataset.getSample() != null
+        ? dataset.getSample().getIdentifier().getIdentifier() : null;
+    Person person = fetchOptions.hasRegistrator() ? dataset.getRegistrator() : null;
+    this.registrator = person == null ? null : person.getFirstName() + " " + person.getLastName();
+    this.registrationDate = dataset.getRegistrationDate() == null ? 0
+        : dataset.getRegistrationDate().getTime();
     this.properties = new HashMap<>();
   }
 
@@ -34,38 +54,37 @@ public class DatasetWithProperties {
     return properties;
   }
 
-  public DataSet getDataset() {
-    return dataset;
-  }
-
   public String getCode() {
-    return dataset.getCode();
+    return code;
   }
 
-  public Experiment getExperiment() {
-    return dataset.getExperiment();
+  public String getExperimentID() {
+    return experimentID;
   }
 
-  public DataSetType getType() {
-    return dataset.getType();
+  public String getTypeCode() {
+    return typeCode;
   }
 
-  public Person getRegistrator() {
-    return dataset.getRegistrator();
+  /**
+   * @return first and last name of the registrator, null if the registrator was not fetched
+   */
+  public String getRegistrator() {
+    return registrator;
   }
 
   public Date getRegistrationDate() {
-    return dataset.getRegistrationDate();
+    return new Date(registrationDate);
   }
 
   /**
    * Returns sample ID or experiment ID, if Dataset has no sample.
    */
   public String getClosestSourceID() {
-    if(dataset.getSample()!=null) {
-      return dataset.getSample().getIdentifier().getIdentifier();
+    if(sampleID!=null) {
+      return sampleID;
     } else {
-      return getExperiment().getIdentifier().getIdentifier();
+      return experimentID;
     }
   }
 }
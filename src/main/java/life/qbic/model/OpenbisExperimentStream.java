@@ -0,0 +1,53 @@
+package life.qbic.model;
+
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import life.qbic.model.projection.DatasetFileProjection;
+import life.qbic.model.projection.ExperimentProjection;
+import life.qbic.model.projection.SampleProjection;
+
+/**
+ * An openBIS experiment whose samples, datasets and dataset files are not loaded up front, but
+ * requested while they are iterated. Unlike OpenbisExperimentWithDescendants, memory use does not
+ * depend on the number of samples or files of the experiment.
+ */
+public class OpenbisExperimentStream {
+
+  private final ExperimentProjection experiment;
+  private final Supplier<Iterator<SampleProjection>> samples;
+  private final Supplier<Iterator<DatasetWithProperties>> datasets;
+  private final Function<String, Iterator<DatasetFileProjection>> filesOfDataset;
+
+  /**
+   * @param experiment the experiment, without samples or datasets
+   * @param samples creates an iterator over the samples of the experiment
+   * @param datasets creates an iterator over the datasets of the experiment
+   * @param filesOfDataset creates an iterator over the files of the dataset with the provided code
+   */
+  public OpenbisExperimentStream(ExperimentProjection experiment,
+      Supplier<Iterator<SampleProjection>> samples,
+      Supplier<Iterator<DatasetWithProperties>> datasets,
+      Function<String, Iterator<DatasetFileProjection>> filesOfDataset) {
+    this.experiment = experiment;
+    this.samples = samples;
+    this.datasets = datasets;
+    this.filesOfDataset = filesOfDataset;
+  }
+
+  public ExperimentProjection getExperiment() {
+    return experiment;
+  }
+
+  public Iterator<SampleProjection> getSamples() {
+    return samples.get();
+  }
+
+  public Iterator<DatasetWithProperties> getDatasets() {
+    return datasets.get();
+  }
+
+  public Iterator<DatasetFileProjection> getFilesForDataset(String permID) {
+    return filesOfDataset.apply(permID);
+  }
+}
@@ -1,31 +1,36 @@
 package life.qbic.model;
 
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
-import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
 import java.util.List;
 import java.util.Map;
-
+import life.qbic.model.projection.DatasetFileProjection;
+import life.qbic.model.projection.ExperimentProjection;
+import life.qbic.model.projection.SampleProjection;
+
+/**
+ * An openBIS experiment with its samples, datasets and dataset files. Only projections of the
+ * fetched openBIS objects are stored, not the objects themselves.
+ */
 public class OpenbisExperimentWithDescendants {
 
-  private Experiment experiment;
-  private List<Sample> samples;
+  private ExperimentProjection experiment;
+  private List<SampleProjection> samples;
   private List<DatasetWithProperties> datasets;
-  private Map<String, List<DataSetFile>> datasetCodeToFiles;
+  private Map<String, List<DatasetFileProjection>> datasetCodeToFiles;
 
-  public OpenbisExperimentWithDescendants(Experiment experiment, List<Sample> samples,
-      List<DatasetWithProperties> datasets, Map<String, List<DataSetFile>> datasetCodeToFiles) {
+  public OpenbisExperimentWithDescendants(ExperimentProjection experiment,
+      List<SampleProjection> samples, List<DatasetWithProperties> datasets,
+      Map<String, List<DatasetFileProjection>> datasetCodeToFiles) {
     this.experiment = experiment;
     this.samples = samples;
     this.datasets = datasets;
     this.datasetCodeToFiles = datasetCodeToFiles;
   }
 
-  public Experiment getExperiment() {
+  public ExperimentProjection getExperiment() {
     return experiment;
   }
 
-  public List<Sample> getSamples() {
+  public List<SampleProjection> getSamples() {
     return samples;
   }
 
@@ -33,7 +38,7 @@ public class OpenbisExperimentWithDescendants {
     return datasets;
   }
 
-  public List<DataSetFile> getFilesForDataset(String permID) {
+  public List<DatasetFileProjection> getFilesForDataset(String permID) {
     return datasetCodeToFiles.get(permID);
   }
 }
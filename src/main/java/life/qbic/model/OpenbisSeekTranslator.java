@@ -2,32 +2,36 @@ package life.qbic.model;
 
 import static java.util.Map.entry;
 
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.DataType;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.PropertyAssignment;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.PropertyType;
-import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.SampleType;
-import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import life.qbic.App;
 import life.qbic.io.PropertyReader;
+import life.qbic.model.download.OpenbisTypeRegistry;
 import life.qbic.model.isa.GenericSeekAsset;
 import life.qbic.model.isa.ISAAssay;
 import life.qbic.model.isa.ISASample;
@@ -35,6 +39,13 @@ import life.qbic.model.isa.ISASampleType;
 import life.qbic.model.isa.ISASampleType.SampleAttribute;
 import life.qbic.model.isa.ISASampleType.SampleAttributeType;
 import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.isa.SeekStructureStream;
+import life.qbic.model.projection.DatasetFileProjection;
+import life.qbic.model.projection.ExperimentProjection;
+import life.qbic.model.projection.SampleProjection;
+import life.qbic.model.projection.SampleTypeProjection;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -50,6 +61,8 @@ public class OpenbisSeekTranslator {
   private Map<DataType, SampleAttributeType> dataTypeToAttributeType;
   private Map<String, String> datasetTypeToAssetType;
   private Map<String, String> experimentTypeToAssayType;
+  private static final DateTimeFormatter REGISTRATION_DATE_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
 
   public OpenbisSeekTranslator(String openBISBaseURL, String defaultProjectID)
       throws IOException, ParserConfigurationException, SAXException {
@@ -192,107 +205,208 @@ public class OpenbisSeekTranslator {
                                  boolean transferData,
                                  boolean translateForRO) throws URISyntaxException {
 
-    Experiment exp = experiment.getExperiment();
-    String expType = exp.getType().getCode();
-    String title = exp.getCode()+" ("+exp.getPermId().getPermId()+")";
-    String assayType = experimentTypeToAssayType.get(expType);
-
-    if(assayType ==null || assayType.isBlank()) {
-      throw new RuntimeException("Could not find assay type for " + expType+". A mapping needs to "
-          + "be added to the respective properties file.");
-    }
-      ISAAssay assay = new ISAAssay(title, STUDY_ID, experimentTypeToAssayClass.get(expType),
-          new URI(assayType));
+    ExperimentProjection exp = experiment.getExperiment();
+    SeekStructure result = new SeekStructure(translateAssay(exp), exp.getIdentifier());
 
-    SeekStructure result = new SeekStructure(assay, exp.getIdentifier().getIdentifier());
-
-    for(Sample sample : experiment.getSamples()) {
-      String sampleCode = sample.getCode();
-      if (sampleBlacklist.contains(sampleCode)) {
-        System.out.println("Skipping blacklisted sample: " + sampleCode);
-        continue;
-      }
-      else if (sampleCode.startsWith("EX_LINK_")) {
-        System.out.println("Skipping External Link sample: " + sampleCode);
-        continue;
+    // samples of the same type share one plan, samples and files are translated in parallel
+    Map<String, SampleTranslationPlan> plans = new ConcurrentHashMap<>();
+    experiment.getSamples().parallelStream().forEach(sample -> {
+      if (isSkippedSample(sample, sampleBlacklist)) {
+        return;
       }
+      SampleTypeProjection sampleType = sample.getType();
+      SampleTranslationPlan plan = plans.computeIfAbsent(sampleType.getCode(),
+          code -> new SampleTranslationPlan(sampleType,
+              translateForRO ? "-1" : sampleTypesToIds.get(code)));
+      result.addSample(plan.translate(sample), sample.getIdentifier());
+    });
 
-      SampleType sampleType = sample.getType();
+    //create ISA files for assets. If actual data is to be uploaded is determined later based on flag
+    Map<String, String> datasetTypesByCode = new HashMap<>();
+    List<DatasetFileProjection> files = new ArrayList<>();
+    for(DatasetWithProperties dataset : experiment.getDatasets()) {
+      String permID = dataset.getCode();
+      datasetTypesByCode.put(permID, dataset.getTypeCode());
+      List<DatasetFileProjection> filesOfDataset = experiment.getFilesForDataset(permID);
+      if(!blacklist.contains(permID) && filesOfDataset != null) {
+        files.addAll(filesOfDataset);
+      }
+    }
+    files.parallelStream().forEach(file -> {
+      String datasetType = datasetTypesByCode.getOrDefault(file.getDatasetCode(), "");
+      datasetFileToSeekAsset(file, datasetType, transferData)
+          .ifPresent(seekAsset -> result.addAsset(seekAsset, file));
+    });
+    return result;
+  }
 
-      //try to put all attributes into sample properties, as they should be a 1:1 mapping
-      Map<String, String> typeCodesToNames = new HashMap<>();
-      Set<String> propertiesLinkingSamples = new HashSet<>();
-      for (PropertyAssignment a : sampleType.getPropertyAssignments()) {
-        String code = a.getPropertyType().getCode();
-        String label = a.getPropertyType().getLabel();
-        DataType type = a.getPropertyType().getDataType();
-        typeCodesToNames.put(code, label);
-        if(type.equals(DataType.SAMPLE)) {
-          propertiesLinkingSamples.add(code);
+  /**
+   * Translates an experiment like translate, but samples and files are only requested from
+   * openBIS and translated while the returned structure is iterated. Only the current page of
+   * openBIS objects is held in memory, so this can be used for experiments with millions of files.
+   * Blacklisted datasets are skipped without listing their files.
+   */
+  public SeekStructureStream translateIncrementally(OpenbisExperimentStream experiment,
+      Map<String, String> sampleTypesToIds,
+      Set<String> blacklist,
+      Set<String> sampleBlacklist,
+      boolean transferData) throws URISyntaxException {
+    ExperimentProjection exp = experiment.getExperiment();
+    ISAAssay assay = translateAssay(exp);
+    Map<String, SampleTranslationPlan> plans = new ConcurrentHashMap<>();
+
+    Supplier<Iterator<Pair<ISASample, String>>> samples = () -> {
+      Iterator<SampleProjection> openbisSamples = experiment.getSamples();
+      return new NextElementIterator<>() {
+        @Override
+        Pair<ISASample, String> computeNext() {
+          while (openbisSamples.hasNext()) {
+            SampleProjection sample = openbisSamples.next();
+            if (!isSkippedSample(sample, sampleBlacklist)) {
+              SampleTypeProjection sampleType = sample.getType();
+              SampleTranslationPlan plan = plans.computeIfAbsent(sampleType.getCode(),
+                  code -> new SampleTranslationPlan(sampleType, sampleTypesToIds.get(code)));
+              return new ImmutablePair<>(plan.translate(sample), sample.getIdentifier());
+            }
+          }
+          return null;
         }
-      }
-      Map<String, Object> attributes = new HashMap<>();
-      for(String code : sample.getProperties().keySet()) {
-        String value = sample.getProperty(code);
-        if(propertiesLinkingSamples.contains(code)) {
-          value = generateOpenBISLinkFromPermID("SAMPLE", value);
+      };
+    };
+
+    Supplier<Iterator<Pair<GenericSeekAsset, DatasetFileProjection>>> assets = () -> {
+      Iterator<DatasetWithProperties> datasets = experiment.getDatasets();
+      return new NextElementIterator<>() {
+        private Iterator<DatasetFileProjection> files = Collections.emptyIterator();
+        private String datasetType = "";
+
+        @Override
+        Pair<GenericSeekAsset, DatasetFileProjection> computeNext() {
+          while (true) {
+            while (files.hasNext()) {
+              DatasetFileProjection file = files.next();
+              Optional<GenericSeekAsset> asset = datasetFileToSeekAsset(file, datasetType,
+                  transferData);
+              if (asset.isPresent()) {
+                return new ImmutablePair<>(asset.get(), file);
+              }
+            }
+            if (!datasets.hasNext()) {
+              return null;
+            }
+            DatasetWithProperties dataset = datasets.next();
+            if (!blacklist.contains(dataset.getCode())) {
+              datasetType = dataset.getTypeCode();
+              files = experiment.getFilesForDataset(dataset.getCode());
+            }
+          }
         }
-        attributes.put(typeCodesToNames.get(code), value);
-      }
-
-      String sampleID = sample.getIdentifier().getIdentifier();
-      attributes.put(App.configProperties.get("seek_openbis_sample_title"), sampleID);
+      };
+    };
+    return new SeekStructureStream(assay, exp.getIdentifier(), samples, assets);
+  }
 
-      Date registrationDate = sample.getRegistrationDate();
-      SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-      String formattedDate = dateFormat.format(registrationDate);
-      attributes.put(App.configProperties.get("seek_openbis_registration_date"), formattedDate);
+  /**
+   * Iterator based on a method returning the next element, or null if there is none. The next
+   * element is computed once, when hasNext or next is called for the first time.
+   */
+  private abstract static class NextElementIterator<T> implements Iterator<T> {
 
-      String sampleTypeId = translateForRO ? "-1" : sampleTypesToIds.get(sampleType.getCode());
+    private T next;
 
-      ISASample isaSample = new ISASample(
-              sample.getIdentifier().getIdentifier(),
-              attributes,
-              sampleTypeId,
-              Collections.singletonList(DEFAULT_PROJECT_ID));
+    abstract T computeNext();
 
-      result.addSample(isaSample, sampleID);
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        next = computeNext();
+      }
+      return next != null;
     }
 
-    //create ISA files for assets. If actual data is to be uploaded is determined later based on flag
-    for(DatasetWithProperties dataset : experiment.getDatasets()) {
-      String permID = dataset.getCode();
-      if(!blacklist.contains(permID)) {
-        for(DataSetFile file : experiment.getFilesForDataset(permID)) {
-          String datasetType = getDatasetTypeOfFile(file, experiment.getDatasets());
-          datasetFileToSeekAsset(file, datasetType, transferData)
-              .ifPresent(seekAsset -> result.addAsset(seekAsset, file));
-        }
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
+      T result = next;
+      next = null;
+      return result;
     }
-    return result;
   }
 
-  private String getDatasetTypeOfFile(DataSetFile file, List<DatasetWithProperties> dataSets) {
-    String permId = file.getDataSetPermId().getPermId();
-    for(DatasetWithProperties dataset : dataSets) {
-      if(dataset.getCode().equals(permId)) {
-        return dataset.getType().getCode();
-      }
+  private ISAAssay translateAssay(ExperimentProjection exp) throws URISyntaxException {
+    String expType = exp.getTypeCode();
+    String title = exp.getCode()+" ("+exp.getPermId()+")";
+    String assayType = experimentTypeToAssayType.get(expType);
+
+    if(assayType ==null || assayType.isBlank()) {
+      throw new RuntimeException("Could not find assay type for " + expType+". A mapping needs to "
+          + "be added to the respective properties file.");
+    }
+    return new ISAAssay(title, STUDY_ID, experimentTypeToAssayClass.get(expType),
+        new URI(assayType));
+  }
+
+  private boolean isSkippedSample(SampleProjection sample, Set<String> sampleBlacklist) {
+    String sampleCode = sample.getCode();
+    if (sampleBlacklist.contains(sampleCode)) {
+      System.out.println("Skipping blacklisted sample: " + sampleCode);
+      return true;
+    }
+    else if (sampleCode.startsWith("EX_LINK_")) {
+      System.out.println("Skipping External Link sample: " + sampleCode);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Translation of the samples of one sample type: property labels and properties linking to
+   * other samples are taken from the type projection shared by all samples of the type. Plans are
+   * immutable and can be used by several threads.
+   */
+  private class SampleTranslationPlan {
+
+    private final SampleTypeProjection sampleType;
+    private final String sampleTypeId;
+    private final String titleAttribute = App.configProperties.get("seek_openbis_sample_title");
+    private final String registrationDateAttribute =
+        App.configProperties.get("seek_openbis_registration_date");
+
+    SampleTranslationPlan(SampleTypeProjection sampleType, String sampleTypeId) {
+      this.sampleType = sampleType;
+      this.sampleTypeId = sampleTypeId;
+    }
+
+    ISASample translate(SampleProjection sample) {
+      //try to put all attributes into sample properties, as they should be a 1:1 mapping
+      Map<String, Object> attributes = new HashMap<>();
+      sample.forEachProperty((code, value) -> {
+        if(sampleType.isLinkingSamples(code)) {
+          value = generateOpenBISLinkFromPermID("SAMPLE", value);
+        }
+        attributes.put(sampleType.getLabel(code), value);
+      });
+      String sampleID = sample.getIdentifier();
+      attributes.put(titleAttribute, sampleID);
+      attributes.put(registrationDateAttribute,
+          REGISTRATION_DATE_FORMAT.format(Instant.ofEpochMilli(sample.getRegistrationDate())));
+      return new ISASample(sampleID, attributes, sampleTypeId,
+          Collections.singletonList(DEFAULT_PROJECT_ID));
     }
-    return "";
   }
 
   /**
    * Creates a SEEK asset from an openBIS DataSetFile, if it describes a file (not a folder).
-   * @param file the openBIS DataSetFile
+   * @param file the projection of the openBIS DataSetFile
    * @return an optional SEEK asset
    */
-  private Optional<GenericSeekAsset> datasetFileToSeekAsset(DataSetFile file, String datasetType,
-      boolean transferData) {
+  private Optional<GenericSeekAsset> datasetFileToSeekAsset(DatasetFileProjection file,
+      String datasetType, boolean transferData) {
     if (!file.getPath().isBlank() && !file.isDirectory()) {
       File f = new File(file.getPath());
-      String datasetPermID = file.getDataSetPermId().toString();
+      String datasetPermID = file.getDatasetCode();
       String assetName = datasetPermID + ": " + f.getName();
       String assetType = assetForDatasetType(datasetType);
       GenericSeekAsset isaFile = new GenericSeekAsset(assetType, assetName, file.getPath(),
@@ -312,6 +426,30 @@ public class OpenbisSeekTranslator {
     return Optional.empty();
   }
 
+  /**
+   * Checks the type mappings read from the properties files against the types known to the openBIS
+   * instance.
+   * @param registry the types of the openBIS instance
+   * @return a warning for every mapped experiment or dataset type unknown to the instance, e.g. due
+   * to a typo in one of the properties files
+   */
+  public List<String> validateTypeMappings(OpenbisTypeRegistry registry) {
+    List<String> warnings = new ArrayList<>();
+    Set<String> experimentTypes = new TreeSet<>(experimentTypeToAssayType.keySet());
+    experimentTypes.addAll(experimentTypeToAssayClass.keySet());
+    for (String type : experimentTypes) {
+      if (!registry.hasExperimentType(type)) {
+        warnings.add("Mapped experiment type " + type + " is not known to this instance of openBIS.");
+      }
+    }
+    for (String type : new TreeSet<>(datasetTypeToAssetType.keySet())) {
+      if (!registry.hasDatasetType(type)) {
+        warnings.add("Mapped dataset type " + type + " is not known to this instance of openBIS.");
+      }
+    }
+    return warnings;
+  }
+
   public void setDefaultStudy(String studyID) {
     this.STUDY_ID = studyID;
   }
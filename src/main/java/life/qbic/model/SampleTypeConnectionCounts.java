@@ -0,0 +1,79 @@
+package life.qbic.model;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.SampleType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Counts how often sample types are connected via parent-child relationships. Counters are kept in
+ * primitive int cells and keyed by the (interned) codes of parent and child type, so incrementing
+ * does not allocate. Not thread-safe: every worker keeps its own table and tables are merged once
+ * the work is done.
+ */
+public class SampleTypeConnectionCounts {
+
+  private static final String NO_CHILD = "";
+  private final Map<String, Map<String, int[]>> counts = new HashMap<>();
+  private final Map<String, SampleType> typesByCode = new HashMap<>();
+
+  /**
+   * Counts a sample of the provided type that has no children
+   */
+  public void incrementLeaf(SampleType type) {
+    increment(type, null, 1);
+  }
+
+  /**
+   * Counts one connection between a parent sample of one type and a child sample of another type
+   */
+  public void incrementConnection(SampleType parentType, SampleType childType) {
+    increment(parentType, childType, 1);
+  }
+
+  private void increment(SampleType parentType, SampleType childType, int by) {
+    String parentCode = register(parentType);
+    String childCode = childType == null ? NO_CHILD : register(childType);
+    counts.computeIfAbsent(parentCode, k -> new HashMap<>())
+        .computeIfAbsent(childCode, k -> new int[1])[0] += by;
+  }
+
+  private String register(SampleType type) {
+    String code = type.getCode().intern();
+    typesByCode.putIfAbsent(code, type);
+    return code;
+  }
+
+  /**
+   * Adds all counts of another table to this one.
+   * @param other the table to merge into this one, it is not changed
+   * @return this table, to allow reducing several tables in a row
+   */
+  public SampleTypeConnectionCounts merge(SampleTypeConnectionCounts other) {
+    other.typesByCode.forEach(typesByCode::putIfAbsent);
+    for (Entry<String, Map<String, int[]>> parent : other.counts.entrySet()) {
+      Map<String, int[]> children = counts.computeIfAbsent(parent.getKey(), k -> new HashMap<>());
+      for (Entry<String, int[]> child : parent.getValue().entrySet()) {
+        children.computeIfAbsent(child.getKey(), k -> new int[1])[0] += child.getValue()[0];
+      }
+    }
+    return this;
+  }
+
+  public Map<SampleTypeConnection, Integer> toConnectionMap() {
+    Map<SampleTypeConnection, Integer> result = new HashMap<>();
+    for (Entry<String, Map<String, int[]>> parent : counts.entrySet()) {
+      SampleType parentType = typesByCode.get(parent.getKey());
+      for (Entry<String, int[]> child : parent.getValue().entrySet()) {
+        SampleTypeConnection connection;
+        if (child.getKey().equals(NO_CHILD)) {
+          connection = new SampleTypeConnection(parentType);
+        } else {
+          connection = new SampleTypeConnection(parentType, typesByCode.get(child.getKey()));
+        }
+        result.put(connection, child.getValue()[0]);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,88 @@
+package life.qbic.model.download;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Input stream that is filled by a background thread writing into a pipe, e.g. an archive that is
+ * created while the files it contains are downloaded. Only the pipe buffer is held in memory. If
+ * the writing thread fails, the error is thrown as IOException once the end of the stream is read,
+ * so consumers cannot mistake a broken archive for a complete one.
+ */
+class ArchiveInputStream extends FilterInputStream {
+
+  private static final int PIPE_SIZE = 1024 * 1024;
+  private final AtomicReference<Throwable> failure;
+
+  /**
+   * Writes the content of the stream.
+   */
+  interface Producer {
+
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  private ArchiveInputStream(PipedInputStream in, AtomicReference<Throwable> failure) {
+    super(in);
+    this.failure = failure;
+  }
+
+  /**
+   * Starts a background thread running the producer and returns the stream it writes to.
+   */
+  static ArchiveInputStream start(Producer producer, String threadName) {
+    PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+    PipedOutputStream out;
+    try {
+      out = new PipedOutputStream(in);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread thread = new Thread(() -> {
+      try {
+        producer.writeTo(out);
+      } catch (Throwable t) {
+        failure.set(t);
+      } finally {
+        try {
+          out.close();
+        } catch (IOException e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    }, threadName);
+    thread.setDaemon(true);
+    thread.start();
+    return new ArchiveInputStream(in, failure);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b == -1) {
+      checkFailure();
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int read = super.read(b, off, len);
+    if (read == -1) {
+      checkFailure();
+    }
+    return read;
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t != null) {
+      throw new IOException("Could not create archive: " + t.getMessage(), t);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Computes the CRC32 checksum and length of a dataset file while it is read. Once the end of the
+ * stream is reached, both are compared to the values stored in openBIS and an IOException is
+ * thrown if they differ, so consumers never silently receive a truncated or corrupted file.
+ */
+class ChecksumVerifyingInputStream extends FilterInputStream {
+
+  private final DataSetFile file;
+  private final CRC32 crc = new CRC32();
+  private long length = 0;
+  private boolean verified = false;
+
+  ChecksumVerifyingInputStream(InputStream in, DataSetFile file) {
+    super(in);
+    this.file = file;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b == -1) {
+      verify();
+    } else {
+      crc.update(b);
+      length++;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int read = super.read(b, off, len);
+    if (read == -1) {
+      verify();
+    } else {
+      crc.update(b, off, read);
+      length += read;
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    throw new IOException("Skipping is not supported while verifying " + file.getPath());
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  private void verify() throws IOException {
+    if (verified) {
+      return;
+    }
+    verified = true;
+    VerifiedFile result = new VerifiedFile(file, length, (int) crc.getValue(), 1);
+    if (!result.isValid()) {
+      throw new IOException("Verification of streamed file failed. " + result);
+    }
+  }
+}
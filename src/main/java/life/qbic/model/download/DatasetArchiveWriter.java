@@ -0,0 +1,170 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.download.DataSetFileDownload;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.download.DataSetFileDownloadReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the files of a dataset download into a single zip or tar archive while they are read from
+ * the data store server. Files are copied through a fixed size buffer, so memory use does not
+ * depend on the size of the dataset and no temporary files are needed. The checksum of every file
+ * is verified while it is copied.
+ */
+public class DatasetArchiveWriter {
+
+  public enum Format {ZIP, TAR}
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int TAR_BLOCK = 512;
+
+  private final Format format;
+
+  public DatasetArchiveWriter(Format format) {
+    this.format = format;
+  }
+
+  /**
+   * Writes all files and folders read from the download into the archive. The output stream is
+   * finished, but not closed.
+   * @param reader the download of a dataset or a folder of a dataset, it is read to its end
+   * @param out the stream the archive is written to
+   * @return the number of archived files
+   */
+  public int write(DataSetFileDownloadReader reader, OutputStream out) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int files = 0;
+    if (format == Format.ZIP) {
+      ZipOutputStream zip = new ZipOutputStream(out);
+      DataSetFileDownload download;
+      while ((download = reader.read()) != null) {
+        DataSetFile file = download.getDataSetFile();
+        String name = entryName(file);
+        if (name.isEmpty()) {
+          continue;
+        }
+        zip.putNextEntry(new ZipEntry(file.isDirectory() ? name + "/" : name));
+        if (!file.isDirectory()) {
+          copy(new ChecksumVerifyingInputStream(download.getInputStream(), file), zip, buffer);
+          files++;
+        }
+        zip.closeEntry();
+      }
+      zip.finish();
+    } else {
+      DataSetFileDownload download;
+      while ((download = reader.read()) != null) {
+        DataSetFile file = download.getDataSetFile();
+        String name = entryName(file);
+        if (name.isEmpty()) {
+          continue;
+        }
+        if (file.isDirectory()) {
+          out.write(tarHeader(name + "/", 0, true));
+        } else {
+          out.write(tarHeader(name, file.getFileLength(), false));
+          long copied = copy(new ChecksumVerifyingInputStream(download.getInputStream(), file), out,
+              buffer);
+          int padding = (int) ((TAR_BLOCK - copied % TAR_BLOCK) % TAR_BLOCK);
+          out.write(new byte[padding]);
+          files++;
+        }
+      }
+      // the end of a tar archive is marked by two empty blocks
+      out.write(new byte[2 * TAR_BLOCK]);
+    }
+    out.flush();
+    return files;
+  }
+
+  private long copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+    long copied = 0;
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+      copied += read;
+    }
+    return copied;
+  }
+
+  /**
+   * Uses the same relative paths as downloads to the local file system, without the 'original'
+   * folder every dataset starts with.
+   */
+  private String entryName(DataSetFile file) {
+    String name = file.getPath().replace("original", "");
+    while (name.startsWith("/")) {
+      name = name.substring(1);
+    }
+    return name;
+  }
+
+  /**
+   * Creates a POSIX ustar header. Names longer than 100 characters are split into prefix and name
+   * at a folder boundary, sizes that do not fit into 11 octal digits use base-256 encoding.
+   */
+  private byte[] tarHeader(String path, long size, boolean directory) throws IOException {
+    byte[] header = new byte[TAR_BLOCK];
+    byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+    String name = path;
+    String prefix = "";
+    if (pathBytes.length > 100) {
+      int split = path.lastIndexOf('/', directory ? path.length() - 2 : path.length() - 1);
+      while (split > 0 && (path.substring(split + 1).getBytes(StandardCharsets.UTF_8).length > 100
+          || path.substring(0, split).getBytes(StandardCharsets.UTF_8).length > 155)) {
+        split = path.lastIndexOf('/', split - 1);
+      }
+      if (split <= 0) {
+        throw new IOException("Path is too long to be stored in a tar archive: " + path);
+      }
+      prefix = path.substring(0, split);
+      name = path.substring(split + 1);
+    }
+    put(header, 0, 100, name.getBytes(StandardCharsets.UTF_8));
+    putOctal(header, 100, 8, directory ? 0755 : 0644);
+    putOctal(header, 108, 8, 0);
+    putOctal(header, 116, 8, 0);
+    if (size < 077777777777L) {
+      putOctal(header, 124, 12, size);
+    } else {
+      header[124] = (byte) 0x80;
+      for (int i = 135; i > 124; i--) {
+        header[i] = (byte) (size & 0xff);
+        size >>>= 8;
+      }
+    }
+    putOctal(header, 136, 12, System.currentTimeMillis() / 1000);
+    header[156] = (byte) (directory ? '5' : '0');
+    put(header, 257, 6, "ustar\0".getBytes(StandardCharsets.US_ASCII));
+    put(header, 263, 2, "00".getBytes(StandardCharsets.US_ASCII));
+    put(header, 345, 155, prefix.getBytes(StandardCharsets.UTF_8));
+    // the checksum is computed with the checksum field filled with spaces
+    Arrays.fill(header, 148, 156, (byte) ' ');
+    long checksum = 0;
+    for (byte b : header) {
+      checksum += b & 0xff;
+    }
+    putOctal(header, 148, 7, checksum);
+    header[155] = ' ';
+    return header;
+  }
+
+  private void put(byte[] header, int offset, int length, byte[] value) {
+    System.arraycopy(value, 0, header, offset, Math.min(length, value.length));
+  }
+
+  /**
+   * Writes a zero-padded octal number, terminated by a NUL byte.
+   */
+  private void putOctal(byte[] header, int offset, int length, long value) {
+    String octal = String.format("%0" + (length - 1) + "o", value);
+    put(header, offset, length - 1, octal.getBytes(StandardCharsets.US_ASCII));
+    header[offset + length - 1] = 0;
+  }
+}
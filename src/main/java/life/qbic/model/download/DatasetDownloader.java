@@ -0,0 +1,477 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.OpenBIS;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.download.DataSetFileDownload;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.download.DataSetFileDownloadOptions;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.download.DataSetFileDownloadReader;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.fetchoptions.DataSetFileFetchOptions;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.id.DataSetFilePermId;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.search.DataSetFileSearchCriteria;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import life.qbic.App;
+import life.qbic.model.Configuration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Downloads the files of a dataset using several concurrent download streams. The file list of the
+ * dataset is split into groups of similar total size, every group is requested with its own
+ * download call and written through a file channel with a large direct buffer. The directory
+ * structure of the dataset is preserved below the target folder.
+ * The CRC32 checksum and length of every file are computed while it is written and compared to the
+ * values stored in openBIS. Files that do not match are downloaded again, the results are written
+ * to a {@link VerificationManifest} beside the download folder.
+ * Files are written to '.part' files first and only moved to their final location once they are
+ * verified. Verified files are recorded in a {@link DownloadState}, so an interrupted download can
+ * be resumed without requesting these files again. Partial files of the interrupted download are
+ * continued instead of written again.
+ * The number of streams can be set via the config file as 'download_threads' (default: 4).
+ */
+public class DatasetDownloader {
+
+  private static final Logger LOG = LogManager.getLogger(DatasetDownloader.class);
+  private static final int DEFAULT_THREADS = 4;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private final OpenBIS openBIS;
+  private final int threads;
+
+  public DatasetDownloader(OpenBIS openBIS, int threads) {
+    this.openBIS = openBIS;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Creates a downloader using the number of download streams configured in the config file.
+   */
+  public static DatasetDownloader fromConfig(OpenBIS openBIS) {
+    int threads = DEFAULT_THREADS;
+    String configured = App.configProperties.get("download_threads");
+    if (configured != null && !configured.isBlank()) {
+      threads = Integer.parseInt(configured.trim());
+    }
+    return new DatasetDownloader(openBIS, threads);
+  }
+
+  /**
+   * Downloads a file or folder of a dataset, including all files below it.
+   * @param targetPath the local folder to download to
+   * @param datasetCode the code of the dataset
+   * @param filePath the path of the file or folder in the dataset, an empty path downloads the
+   *                 whole dataset
+   * @return the downloaded file or folder
+   */
+  public File download(String targetPath, String datasetCode, String filePath) {
+    return download(targetPath, datasetCode, filePath, false);
+  }
+
+  /**
+   * Downloads a file or folder of a dataset, including all files below it.
+   * @param targetPath the local folder to download to
+   * @param datasetCode the code of the dataset
+   * @param filePath the path of the file or folder in the dataset, an empty path downloads the
+   *                 whole dataset
+   * @param resume if true, files verified by an earlier, interrupted download into the same folder
+   *               are not downloaded again
+   * @return the downloaded file or folder
+   */
+  public File download(String targetPath, String datasetCode, String filePath, boolean resume) {
+    return download(targetPath, datasetCode, filePath, resume, false);
+  }
+
+  /**
+   * Downloads a file or folder of a dataset, including all files below it.
+   * @param targetPath the local folder to download to
+   * @param datasetCode the code of the dataset
+   * @param filePath the path of the file or folder in the dataset, an empty path downloads the
+   *                 whole dataset
+   * @param resume if true, files verified by an earlier, interrupted download into the same folder
+   *               are not downloaded again
+   * @param keepState if true, the downloaded files stay in the download state after they were
+   *                  verified, so that a later, resumed download into the same folder skips them,
+   *                  e.g. if they are part of a larger transfer that might be interrupted. The
+   *                  state has to be removed using {@link #removeState(String, String)}.
+   * @return the downloaded file or folder
+   */
+  public File download(String targetPath, String datasetCode, String filePath, boolean resume,
+      boolean keepState) {
+    downloadFiles(targetPath, null, datasetCode, listFiles(datasetCode, filePath), resume,
+        keepState);
+    return new File(targetPath, filePath.replace("original/", ""));
+  }
+
+  /**
+   * Removes the download state of a dataset that was kept after its files were downloaded.
+   */
+  public void removeState(String targetPath, String datasetCode) {
+    DownloadState state = new DownloadState(targetPath, datasetCode);
+    try {
+      state.reset();
+    } catch (IOException e) {
+      LOG.warn("Could not remove download state " + state.getPath() + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Downloads selected files of a dataset, e.g. only the files that changed since an earlier
+   * download. The dataset is listed once, paths that are not part of it are ignored.
+   * @param targetPath the local folder to download to
+   * @param recordFolder the folder to store the download state and verification manifest in, e.g.
+   *                     if no other files should be written beside the download folder
+   * @param datasetCode the code of the dataset
+   * @param filePaths the paths of the files in the dataset
+   * @param resume if true, files verified by an earlier, interrupted download into the same folder
+   *               are not downloaded again
+   */
+  public void download(String targetPath, Path recordFolder, String datasetCode,
+      Set<String> filePaths, boolean resume) {
+    downloadFiles(targetPath, recordFolder, datasetCode, listFiles(datasetCode, "").stream()
+        .filter(file -> !file.isDirectory() && filePaths.contains(file.getPath()))
+        .collect(Collectors.toList()), resume, false);
+  }
+
+  private void downloadFiles(String targetPath, Path recordFolder, String datasetCode,
+      List<DataSetFile> files, boolean resume, boolean keepState) {
+    DownloadState state = new DownloadState(targetPath, datasetCode, recordFolder);
+    List<String> paths = files.stream().filter(file -> !file.isDirectory())
+        .map(DataSetFile::getPath).collect(Collectors.toList());
+    List<VerifiedFile> results = new ArrayList<>();
+    List<DataSetFile> missingFiles = new ArrayList<>();
+    try {
+      for (DataSetFile file : files) {
+        if (file.isDirectory()) {
+          Files.createDirectories(localPath(targetPath, file));
+        }
+      }
+      if (resume) {
+        state.load();
+      } else {
+        state.forget(paths);
+      }
+      for (DataSetFile file : files) {
+        if (file.isDirectory()) {
+          continue;
+        }
+        if (resume && state.isComplete(file, localPath(targetPath, file))) {
+          results.add(new VerifiedFile(file, file.getFileLength(), file.getChecksumCRC32(), 0));
+        } else {
+          missingFiles.add(file);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Could not prepare download of dataset " + datasetCode + ".", e);
+    }
+    if (!results.isEmpty()) {
+      System.out.printf("Resuming download of dataset %s, %s files were already verified.%n",
+          datasetCode, results.size());
+    }
+    List<List<DataSetFile>> groups = splitBySize(missingFiles);
+
+    long start = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, groups.size()));
+    try {
+      List<Future<List<VerifiedFile>>> downloads = new ArrayList<>();
+      for (List<DataSetFile> group : groups) {
+        downloads.add(executor.submit(() -> downloadGroup(targetPath, group, state, resume)));
+      }
+      for (Future<List<VerifiedFile>> download : downloads) {
+        results.addAll(download.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Download of dataset " + datasetCode + " was interrupted.");
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Could not download dataset " + datasetCode + ".", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    if (results.isEmpty()) {
+      return;
+    }
+    List<VerifiedFile> downloaded = results.stream().filter(result -> result.getAttempts() > 0)
+        .collect(Collectors.toList());
+    long bytes = downloaded.stream().mapToLong(VerifiedFile::getLength).sum();
+    System.out.printf("Downloaded %s files (%s) of dataset %s using %s streams at %s.%n",
+        downloaded.size(), formatSize(bytes), datasetCode, groups.size(),
+        formatThroughput(bytes, System.nanoTime() - start));
+
+    VerificationManifest manifest = new VerificationManifest(targetPath, datasetCode,
+        recordFolder);
+    try {
+      manifest.write(results);
+    } catch (IOException e) {
+      LOG.warn("Could not write verification manifest " + manifest.getPath() + ": "
+          + e.getMessage());
+    }
+    List<VerifiedFile> failed = results.stream().filter(result -> !result.isValid())
+        .collect(Collectors.toList());
+    if (!failed.isEmpty()) {
+      failed.forEach(result -> LOG.error("Verification failed: " + result));
+      throw new RuntimeException(String.format("%s files of dataset %s could not be verified "
+          + "after %s attempts, see %s", failed.size(), datasetCode,
+          Configuration.MAX_DOWNLOAD_ATTEMPTS, manifest.getPath()));
+    }
+    if (!keepState) {
+      try {
+        state.forget(paths);
+      } catch (IOException e) {
+        LOG.warn("Could not update download state " + state.getPath() + ": " + e.getMessage());
+      }
+    }
+    System.out.printf("Verified checksums of all files, see %s%n", manifest.getPath());
+  }
+
+  private List<DataSetFile> listFiles(String datasetCode, String filePath) {
+    DataSetFileSearchCriteria criteria = new DataSetFileSearchCriteria();
+    criteria.withDataSet().withCode().thatEquals(datasetCode);
+    List<DataSetFile> files = openBIS.searchFiles(criteria, new DataSetFileFetchOptions())
+        .getObjects();
+    if (filePath.isEmpty()) {
+      return files;
+    }
+    return files.stream()
+        .filter(file -> file.getPath().equals(filePath)
+            || file.getPath().startsWith(filePath + "/"))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Distributes files to at most as many groups as there are download streams, always adding the
+   * next largest file to the group with the smallest total size.
+   */
+  private List<List<DataSetFile>> splitBySize(List<DataSetFile> files) {
+    int groupCount = Math.min(threads, files.size());
+    List<List<DataSetFile>> groups = new ArrayList<>();
+    long[] groupSizes = new long[groupCount];
+    for (int i = 0; i < groupCount; i++) {
+      groups.add(new ArrayList<>());
+    }
+    files.sort(Comparator.comparingLong(DataSetFile::getFileLength).reversed());
+    for (DataSetFile file : files) {
+      int smallest = 0;
+      for (int i = 1; i < groupCount; i++) {
+        if (groupSizes[i] < groupSizes[smallest]) {
+          smallest = i;
+        }
+      }
+      groups.get(smallest).add(file);
+      groupSizes[smallest] += file.getFileLength();
+    }
+    return groups;
+  }
+
+  /**
+   * Downloads a group of files with a single download stream. Files that fail verification, or
+   * could not be read because the stream broke off, are downloaded again one by one.
+   * @param resume if true, partial files of an earlier download are continued
+   */
+  private List<VerifiedFile> downloadGroup(String targetPath, List<DataSetFile> files,
+      DownloadState state, boolean resume) {
+    Map<String, DataSetFile> pending = new LinkedHashMap<>();
+    files.forEach(file -> pending.put(file.getPath(), file));
+    List<DataSetFile> toRetry = new ArrayList<>();
+    List<VerifiedFile> results = new ArrayList<>();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    DataSetFileDownloadReader reader = openReader(new ArrayList<>(pending.values()));
+    DataSetFile current = null;
+    try {
+      DataSetFileDownload download;
+      while ((download = reader.read()) != null) {
+        current = pending.remove(download.getDataSetFile().getPath());
+        if (current == null || current.isDirectory()) {
+          continue;
+        }
+        VerifiedFile result = writeAndVerify(download.getInputStream(), targetPath, current,
+            buffer, 1, resume, state);
+        if (result.isValid()) {
+          results.add(result);
+        } else {
+          LOG.warn("Verification failed, retrying: " + result);
+          toRetry.add(current);
+        }
+        current = null;
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Download stream broke off, retrying remaining files: " + e.getMessage());
+      if (current != null) {
+        toRetry.add(current);
+      }
+    } finally {
+      reader.close();
+    }
+    toRetry.addAll(pending.values());
+    for (DataSetFile file : toRetry) {
+      results.add(downloadWithRetries(targetPath, file, buffer, state));
+    }
+    return results;
+  }
+
+  private VerifiedFile downloadWithRetries(String targetPath, DataSetFile file,
+      ByteBuffer buffer, DownloadState state) {
+    VerifiedFile result = null;
+    for (int attempt = 2; attempt <= Configuration.MAX_DOWNLOAD_ATTEMPTS; attempt++) {
+      DataSetFileDownloadReader reader = openReader(List.of(file));
+      try {
+        DataSetFileDownload download = reader.read();
+        result = writeAndVerify(download.getInputStream(), targetPath, file, buffer, attempt,
+            false, state);
+        if (result.isValid()) {
+          return result;
+        }
+        LOG.warn("Verification failed in attempt " + attempt + ": " + result);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn("Could not download " + file.getPath() + " in attempt " + attempt + ": "
+            + e.getMessage());
+      } finally {
+        reader.close();
+      }
+    }
+    try {
+      Files.deleteIfExists(partPath(localPath(targetPath, file)));
+    } catch (IOException e) {
+      LOG.warn("Could not remove partial file of " + file.getPath() + ": " + e.getMessage());
+    }
+    if (result == null) {
+      result = new VerifiedFile(file, 0, 0, (int) Configuration.MAX_DOWNLOAD_ATTEMPTS);
+    }
+    return result;
+  }
+
+  private DataSetFileDownloadReader openReader(List<DataSetFile> files) {
+    List<DataSetFilePermId> ids = files.stream().map(DataSetFile::getPermId)
+        .collect(Collectors.toList());
+    DataSetFileDownloadOptions options = new DataSetFileDownloadOptions();
+    options.setRecursive(false);
+    return new DataSetFileDownloadReader(openBIS.downloadFiles(ids, options));
+  }
+
+  /**
+   * Writes the file to a '.part' file. If it can be verified, it is moved to its final location
+   * and recorded in the download state.
+   * @param append if true, an existing '.part' file is continued instead of written again
+   */
+  private VerifiedFile writeAndVerify(InputStream inputStream, String targetPath,
+      DataSetFile file, ByteBuffer buffer, int attempt, boolean append, DownloadState state)
+      throws IOException {
+    Path target = localPath(targetPath, file);
+    Path part = partPath(target);
+    Files.createDirectories(target.toAbsolutePath().getParent());
+    long start = System.nanoTime();
+    CRC32 crc = new CRC32();
+    long existing = 0;
+    if (append && Files.isRegularFile(part) && Files.size(part) < file.getFileLength()) {
+      existing = continuePartFile(inputStream, part, buffer, crc);
+      LOG.info("Continuing " + file.getPath() + " after " + formatSize(existing));
+    }
+    long written = existing + writeToFile(inputStream, part, buffer, crc, existing > 0);
+    LOG.info("Downloaded " + file.getPath() + " (" + formatSize(written) + ") at "
+        + formatThroughput(written, System.nanoTime() - start));
+    VerifiedFile result = new VerifiedFile(file, written, (int) crc.getValue(), attempt);
+    if (result.isValid()) {
+      Files.move(part, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      state.markComplete(result);
+    }
+    return result;
+  }
+
+  /**
+   * Prepares continuing a partial file: its content is added to the checksum and the same number
+   * of bytes is skipped in the stream. openBIS always streams a file from its start, so the
+   * skipped bytes are still transferred, but they are neither written again nor lost if the file
+   * is verified in the end. A partial file that does not match is downloaded again in the next
+   * attempt.
+   * @return the length of the partial file
+   */
+  private long continuePartFile(InputStream inputStream, Path part, ByteBuffer buffer, CRC32 crc)
+      throws IOException {
+    long existing = 0;
+    try (FileChannel channel = FileChannel.open(part, StandardOpenOption.READ)) {
+      buffer.clear();
+      int read;
+      while ((read = channel.read(buffer)) != -1) {
+        buffer.flip();
+        crc.update(buffer);
+        buffer.clear();
+        existing += read;
+      }
+    }
+    byte[] skipBuffer = new byte[BUFFER_SIZE];
+    long skipped = 0;
+    while (skipped < existing) {
+      int read = inputStream.read(skipBuffer, 0, (int) Math.min(skipBuffer.length,
+          existing - skipped));
+      if (read == -1) {
+        throw new IOException("Stream ended before the partial file " + part + " was reached");
+      }
+      skipped += read;
+    }
+    return existing;
+  }
+
+  /**
+   * Copies the stream to the file, updating the checksum with every chunk before it is written.
+   * @param append if true, the stream is appended to the file instead of replacing its content
+   */
+  private long writeToFile(InputStream inputStream, Path target, ByteBuffer buffer, CRC32 crc,
+      boolean append) throws IOException {
+    ReadableByteChannel source = Channels.newChannel(inputStream);
+    long written = 0;
+    try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND
+            : StandardOpenOption.TRUNCATE_EXISTING)) {
+      buffer.clear();
+      while (source.read(buffer) != -1) {
+        buffer.flip();
+        crc.update(buffer);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          written += channel.write(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    return written;
+  }
+
+  private Path localPath(String targetPath, DataSetFile file) {
+    return Paths.get(targetPath, file.getPath().replace("original", ""));
+  }
+
+  private Path partPath(Path target) {
+    return target.resolveSibling(target.getFileName() + ".part");
+  }
+
+  static String formatSize(long bytes) {
+    return String.format("%.2f MB", bytes / (1024.0 * 1024.0));
+  }
+
+  static String formatThroughput(long bytes, long nanos) {
+    double seconds = Math.max(nanos, 1) / 1e9;
+    return String.format("%.2f MB/s", bytes / (1024.0 * 1024.0) / seconds);
+  }
+}
@@ -0,0 +1,132 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the verified files of a dataset download in a local state file, so an interrupted
+ * download can be resumed. Every file is appended to the state file as soon as it has been
+ * verified and moved to its final location. The state file is stored beside the download folder,
+ * or in a separate record folder, named after the download folder and the dataset code. Several
+ * downloads of files of the same dataset into the same folder share the state file, each of them
+ * only forgets its own files.
+ */
+public class DownloadState {
+
+  private final Path stateFile;
+  private final Map<String, String> completedByPath = new HashMap<>();
+
+  public DownloadState(String targetPath, String datasetCode) {
+    this(targetPath, datasetCode, null);
+  }
+
+  /**
+   * @param recordFolder the folder to store the state file in, the parent of the download folder
+   *                     if null
+   */
+  public DownloadState(String targetPath, String datasetCode, Path recordFolder) {
+    Path folder = Paths.get(targetPath).toAbsolutePath().normalize();
+    Path parent = recordFolder != null ? recordFolder : folder.getParent();
+    this.stateFile = parent.resolve(folder.getFileName() + "_" + datasetCode + "_download.state");
+  }
+
+  public Path getPath() {
+    return stateFile;
+  }
+
+  /**
+   * Reads the files completed by an earlier, interrupted download.
+   */
+  public void load() throws IOException {
+    completedByPath.clear();
+    if (!Files.isRegularFile(stateFile)) {
+      return;
+    }
+    for (String line : Files.readAllLines(stateFile)) {
+      String[] columns = line.split("\t");
+      if (columns.length == 3) {
+        completedByPath.put(columns[0], line);
+      }
+    }
+  }
+
+  /**
+   * Forgets all completed files, e.g. if a download is not meant to be resumed.
+   */
+  public void reset() throws IOException {
+    completedByPath.clear();
+    Files.deleteIfExists(stateFile);
+  }
+
+  /**
+   * Forgets the given files, e.g. once they were downloaded successfully. The state file is
+   * removed when no files are left in it.
+   */
+  public synchronized void forget(Collection<String> paths) throws IOException {
+    completedByPath.keySet().removeAll(paths);
+    if (!Files.isRegularFile(stateFile)) {
+      return;
+    }
+    Set<String> forgotten = new HashSet<>(paths);
+    List<String> lines = Files.readAllLines(stateFile).stream()
+        .filter(line -> !forgotten.contains(line.split("\t")[0]))
+        .collect(Collectors.toList());
+    if (lines.isEmpty()) {
+      Files.deleteIfExists(stateFile);
+      return;
+    }
+    Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+    Files.write(tmp, lines);
+    Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * A file is complete, if it was verified with the length and checksum openBIS currently stores
+   * for it and the local file still has this length. Files without a checksum in openBIS are
+   * compared by length only.
+   */
+  public boolean isComplete(DataSetFile file, Path localFile) throws IOException {
+    String line = completedByPath.get(file.getPath());
+    if (line == null) {
+      return false;
+    }
+    String[] columns = line.split("\t");
+    boolean matches = columns[1].equals(Long.toString(file.getFileLength()))
+        && (file.getChecksumCRC32() == 0 || columns[2].equals(
+        String.format("%08x", file.getChecksumCRC32())));
+    return matches && Files.isRegularFile(localFile)
+        && Files.size(localFile) == file.getFileLength();
+  }
+
+  /**
+   * Appends a verified file to the state file.
+   */
+  public synchronized void markComplete(VerifiedFile file) throws IOException {
+    String line = toLine(file.getPath(), file.getLength(), file.getChecksum());
+    Files.createDirectories(stateFile.getParent());
+    try (BufferedWriter writer = Files.newBufferedWriter(stateFile, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND)) {
+      writer.write(line);
+      writer.newLine();
+    }
+    completedByPath.put(file.getPath(), line);
+  }
+
+  private String toLine(String path, long length, int checksum) {
+    return String.join("\t", path, Long.toString(length), String.format("%08x", checksum));
+  }
+}
@@ -0,0 +1,202 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Local state of a mirror folder: the mirrored datasets with the paths, sizes and checksums of
+ * their files, and the latest modification date seen in openBIS. The next sync only needs to query
+ * datasets modified at or after this date.
+ */
+public class MirrorIndex {
+
+  public static final String FILE_NAME = ".mirror-index.json";
+
+  @JsonProperty
+  private long lastModification;
+  @JsonProperty
+  private final Map<String, MirroredDataset> datasets;
+
+  public MirrorIndex() {
+    this(0, new TreeMap<>());
+  }
+
+  @JsonCreator
+  public MirrorIndex(@JsonProperty("lastModification") long lastModification,
+      @JsonProperty("datasets") Map<String, MirroredDataset> datasets) {
+    this.lastModification = lastModification;
+    this.datasets = new TreeMap<>(datasets);
+  }
+
+  /**
+   * Reads the index of a mirror folder, or returns an empty index if the folder was never synced.
+   */
+  public static MirrorIndex read(Path mirrorFolder) throws IOException {
+    Path indexFile = mirrorFolder.resolve(FILE_NAME);
+    if (!Files.isRegularFile(indexFile)) {
+      return new MirrorIndex();
+    }
+    return new ObjectMapper().readValue(indexFile.toFile(), MirrorIndex.class);
+  }
+
+  /**
+   * Writes the index to the mirror folder, replacing the previous index in one step.
+   */
+  public synchronized void write(Path mirrorFolder) throws IOException {
+    Files.createDirectories(mirrorFolder);
+    Path tmp = Files.createTempFile(mirrorFolder, FILE_NAME, ".tmp");
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(tmp.toFile(), this);
+    Files.move(tmp, mirrorFolder.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the latest modification date of all mirrored datasets, in milliseconds since the
+   * epoch, 0 if nothing was mirrored yet
+   */
+  public long getLastModification() {
+    return lastModification;
+  }
+
+  public synchronized void updateLastModification(long modification) {
+    lastModification = Math.max(lastModification, modification);
+  }
+
+  public synchronized Map<String, MirroredDataset> getDatasets() {
+    return new TreeMap<>(datasets);
+  }
+
+  public synchronized MirroredDataset getDataset(String code) {
+    return datasets.get(code);
+  }
+
+  public synchronized void put(MirroredDataset dataset) {
+    datasets.put(dataset.getCode(), dataset);
+  }
+
+  public synchronized void remove(String code) {
+    datasets.remove(code);
+  }
+
+  /**
+   * A mirrored dataset with the experiment it belongs to and its files.
+   */
+  public static class MirroredDataset {
+
+    @JsonProperty
+    private final String code;
+    @JsonProperty
+    private final String experiment;
+    @JsonProperty
+    private final String type;
+    @JsonProperty
+    private final List<MirroredFile> files;
+
+    @JsonCreator
+    public MirroredDataset(@JsonProperty("code") String code,
+        @JsonProperty("experiment") String experiment, @JsonProperty("type") String type,
+        @JsonProperty("files") List<MirroredFile> files) {
+      this.code = code;
+      this.experiment = experiment;
+      this.type = type;
+      this.files = new ArrayList<>(files);
+    }
+
+    public static MirroredDataset of(String code, String experiment, String type,
+        List<DataSetFile> files) {
+      return new MirroredDataset(code, experiment, type, files.stream()
+          .filter(file -> !file.isDirectory())
+          .map(file -> new MirroredFile(file.getPath(), file.getFileLength(),
+              file.getChecksumCRC32()))
+          .sorted((a, b) -> a.getPath().compareTo(b.getPath()))
+          .collect(Collectors.toList()));
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getExperiment() {
+      return experiment;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public List<MirroredFile> getFiles() {
+      return files;
+    }
+
+    /**
+     * @return true if both datasets contain the same files with the same sizes and checksums
+     */
+    public boolean hasSameFiles(MirroredDataset other) {
+      return other != null && files.equals(other.files);
+    }
+  }
+
+  /**
+   * A file of a mirrored dataset with its size and CRC32 checksum.
+   */
+  public static class MirroredFile {
+
+    @JsonProperty
+    private final String path;
+    @JsonProperty
+    private final long length;
+    @JsonProperty
+    private final int checksumCRC32;
+
+    @JsonCreator
+    public MirroredFile(@JsonProperty("path") String path, @JsonProperty("length") long length,
+        @JsonProperty("checksumCRC32") int checksumCRC32) {
+      this.path = path;
+      this.length = length;
+      this.checksumCRC32 = checksumCRC32;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public int getChecksumCRC32() {
+      return checksumCRC32;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      MirroredFile that = (MirroredFile) o;
+      return length == that.length && checksumCRC32 == that.checksumCRC32
+          && Objects.equals(path, that.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, length, checksumCRC32);
+    }
+  }
+}
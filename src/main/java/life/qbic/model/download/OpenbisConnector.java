@@ -13,16 +13,23 @@ import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.update.DataSetUpdate;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.entitytype.EntityKind;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.entitytype.id.EntityTypePermId;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.ExperimentType;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.fetchoptions.ExperimentFetchOptions;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.fetchoptions.ExperimentTypeFetchOptions;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.id.ExperimentIdentifier;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.id.IExperimentId;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.search.ExperimentSearchCriteria;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.search.ExperimentTypeSearchCriteria;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.update.ExperimentUpdate;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.PropertyAssignment;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.SampleType;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.create.SampleCreation;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.fetchoptions.SampleFetchOptions;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.fetchoptions.SampleTypeFetchOptions;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.id.ISampleId;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.id.SampleIdentifier;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.id.SamplePermId;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.search.SampleSearchCriteria;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.search.SampleTypeSearchCriteria;
 import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.update.SampleUpdate;
@@ -40,25 +47,46 @@ import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.id.DataSetFilePermI
 import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.id.IDataSetFileId;
 import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.search.DataSetFileSearchCriteria;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import life.qbic.App;
 import life.qbic.model.DatasetWithProperties;
+import life.qbic.model.OpenbisExperimentStream;
 import life.qbic.model.OpenbisExperimentWithDescendants;
 import life.qbic.model.SampleTypeConnection;
+import life.qbic.model.SampleTypeConnectionCounts;
 import life.qbic.model.SampleTypesAndMaterials;
 import life.qbic.model.download.SEEKConnector.SeekStructurePostRegistrationInformation;
+import life.qbic.model.projection.DatasetFileProjection;
+import life.qbic.model.projection.ExperimentProjection;
+import life.qbic.model.projection.SampleProjection;
+import life.qbic.model.projection.SampleTypeProjection;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -67,14 +95,65 @@ public class OpenbisConnector {
 
   private static final Logger LOG = LogManager.getLogger(OpenbisConnector.class);
   private final OpenBIS openBIS;
+  private final DatasetDownloader downloader;
 
   public static Pattern datasetCodePattern = Pattern.compile("[0-9]{17}-[0-9]+");
   public final String EXPERIMENT_LINK_PROPERTY = "EXPERIMENT_NAME";
   public final String SAMPLE_LINK_PROPERTY = "experimentLink";
   public final String DATASET_LINK_PROPERTY = "experimentLink";
+  private static final String LINK_SAMPLE_TYPE = "EXTERNAL_LINK";
+  private static final String LINK_URL_PROPERTY = "URL";
+  private static final String LINK_SEPARATOR = ", ";
+  private static final int SAMPLE_PAGE_SIZE = 5000;
+  private static final int SAMPLE_ID_BATCH_SIZE = 1000;
+  private static final int DATASET_PAGE_SIZE = 5000;
+  private static final int FILE_PAGE_SIZE = 10000;
+  private static final int UPDATE_BATCH_SIZE = 1000;
+  private static final int DEFAULT_QUERY_THREADS = 4;
+
+  private OpenbisTypeRegistry typeRegistry;
+  private Optional<OpenbisTypeRegistryCache> typeRegistryCache = Optional.empty();
+  private ExecutorService queryExecutor;
 
   public OpenbisConnector(OpenBIS authentication) {
     this.openBIS = authentication;
+    this.downloader = DatasetDownloader.fromConfig(authentication);
+  }
+
+  /**
+   * Sets an on-disk cache that is used to share the type registry between invocations.
+   */
+  public void setTypeRegistryCache(OpenbisTypeRegistryCache cache) {
+    this.typeRegistryCache = Optional.of(cache);
+  }
+
+  /**
+   * Returns the dataset, sample and experiment types of this openBIS instance. Types are loaded
+   * once per session, or read from the on-disk cache, if one is set and has not expired.
+   */
+  public synchronized OpenbisTypeRegistry getTypeRegistry() {
+    if (typeRegistry != null) {
+      return typeRegistry;
+    }
+    Optional<OpenbisTypeRegistry> cached = typeRegistryCache.flatMap(OpenbisTypeRegistryCache::read);
+    if (cached.isPresent()) {
+      typeRegistry = cached.get();
+      return typeRegistry;
+    }
+    Set<String> datasetTypes = openBIS.searchDataSetTypes(new DataSetTypeSearchCriteria(),
+        new DataSetTypeFetchOptions()).getObjects().stream()
+        .map(DataSetType::getCode).collect(Collectors.toSet());
+    Set<String> sampleTypes = openBIS.searchSampleTypes(new SampleTypeSearchCriteria(),
+        new SampleTypeFetchOptions()).getObjects().stream()
+        .map(SampleType::getCode).collect(Collectors.toSet());
+    Set<String> experimentTypes = openBIS.searchExperimentTypes(new ExperimentTypeSearchCriteria(),
+        new ExperimentTypeFetchOptions()).getObjects().stream()
+        .map(ExperimentType::getCode).collect(Collectors.toSet());
+    String asURL = typeRegistryCache.map(OpenbisTypeRegistryCache::getAsURL).orElse(null);
+    typeRegistry = new OpenbisTypeRegistry(asURL, System.currentTimeMillis(), datasetTypes,
+        sampleTypes, experimentTypes);
+    typeRegistryCache.ifPresent(cache -> cache.write(typeRegistry));
+    return typeRegistry;
   }
 
   public List<String> getSpaces() {
@@ -110,14 +189,44 @@ public class OpenbisConnector {
     return null;
   }
 
+  /**
+   * Uploads a file or folder to the workspace of the data store server, without registering it.
+   * @return the upload id needed to register the uploaded data as a dataset
+   */
+  public String uploadToWorkspace(Path uploadPath) {
+    return openBIS.uploadFileWorkspaceDSS(uploadPath);
+  }
+
+  /**
+   * Registers data that was uploaded to the workspace as a new dataset. Unlike
+   * registerDatasetForExperiment and registerDatasetForSample, errors are not caught.
+   * @param uploadId the id returned by uploadToWorkspace
+   * @param objectID the identifier of the experiment or sample the dataset is attached to
+   * @param attachToSample true if the object is a sample, false if it is an experiment
+   */
+  public DataSetPermId registerUploadedDataset(String uploadId, String objectID,
+      boolean attachToSample, String datasetType, List<String> parentCodes) {
+    UploadedDataSetCreation creation = newDataSetCreation(uploadId, datasetType, parentCodes);
+    if (attachToSample) {
+      creation.setSampleId(new SampleIdentifier(objectID));
+    } else {
+      creation.setExperimentId(new ExperimentIdentifier(objectID));
+    }
+    return openBIS.createUploadedDataSet(creation);
+  }
+
   private UploadedDataSetCreation prepareDataSetCreation(Path uploadPath, String datasetType,
       List<String> parentCodes) {
-    if(listDatasetTypes().stream().map(DataSetType::getCode).noneMatch(x -> x.equals(datasetType))) {
+    if(!getTypeRegistry().hasDatasetType(datasetType)) {
       throw new RuntimeException("Dataset type " + datasetType +
           " is not supported by this instance of openBIS.");
     }
     final String uploadId = openBIS.uploadFileWorkspaceDSS(uploadPath);
+    return newDataSetCreation(uploadId, datasetType, parentCodes);
+  }
 
+  private UploadedDataSetCreation newDataSetCreation(String uploadId, String datasetType,
+      List<String> parentCodes) {
     final UploadedDataSetCreation creation = new UploadedDataSetCreation();
     creation.setUploadId(uploadId);
     creation.setParentIds(parentCodes.stream().map(DataSetPermId::new).collect(
@@ -126,17 +235,6 @@ public class OpenbisConnector {
     return creation;
   }
 
-  private static void copyInputStreamToFile(InputStream inputStream, File file)
-      throws IOException {
-    try (FileOutputStream outputStream = new FileOutputStream(file, false)) {
-      int read;
-      byte[] bytes = new byte[8192];
-      while ((read = inputStream.read(bytes)) != -1) {
-        outputStream.write(bytes, 0, read);
-      }
-    }
-  }
-
   public List<DataSet> listDatasetsOfExperiment(List<String> spaces, String experiment) {
     DataSetSearchCriteria criteria = new DataSetSearchCriteria();
     criteria.withExperiment().withCode().thatEquals(experiment);
@@ -165,42 +263,313 @@ public class OpenbisConnector {
     return openBIS.searchDataSets(criteria, options).getObjects();
   }
 
+  /**
+   * Pages through all datasets attached to experiments of the provided spaces. Each page is passed
+   * to the consumer as soon as it has been received, so callers never need to hold the full result.
+   * Datasets are fetched with type, registrator, sample and experiment (including project and
+   * space).
+   * @param spaces the spaces to search datasets in
+   * @param pageConsumer receives every page of found datasets
+   */
+  public void streamDatasetsOfSpaces(List<String> spaces, Consumer<List<DataSet>> pageConsumer) {
+    DataSetSearchCriteria criteria = new DataSetSearchCriteria();
+    criteria.withExperiment().withProject().withSpace().withCodes().thatIn(spaces);
+    int totalCount;
+    int from = 0;
+    do {
+      DataSetFetchOptions options = new DataSetFetchOptions();
+      options.withType();
+      options.withRegistrator();
+      options.withSample();
+      options.withExperiment().withProject().withSpace();
+      options.sortBy().code();
+      options.from(from);
+      options.count(DATASET_PAGE_SIZE);
+      SearchResult<DataSet> page = openBIS.searchDataSets(criteria, options);
+      totalCount = page.getTotalCount();
+      pageConsumer.accept(page.getObjects());
+      from += DATASET_PAGE_SIZE;
+    } while (from < totalCount);
+  }
+
+  /**
+   * Searches one page of the experiments of a space, fetched with type and project (including
+   * space). Pages are sorted by perm id, so they can be requested independently of each other.
+   * @param modifiedSince only experiments modified (or registered) at or after this date are
+   *                      found, all experiments are found if it is null
+   */
+  public SearchResult<Experiment> searchExperimentsOfSpace(String space, Date modifiedSince,
+      int from, int count) {
+    ExperimentSearchCriteria criteria = new ExperimentSearchCriteria();
+    criteria.withAndOperator();
+    criteria.withProject().withSpace().withCode().thatEquals(space.toUpperCase());
+    if (modifiedSince != null) {
+      criteria.withModificationDate().thatIsLaterThanOrEqualTo(modifiedSince);
+    }
+    ExperimentFetchOptions options = new ExperimentFetchOptions();
+    options.withType();
+    options.withProject().withSpace();
+    options.sortBy().permId();
+    options.from(from);
+    options.count(count);
+    return openBIS.searchExperiments(criteria, options);
+  }
+
+  /**
+   * Searches one page of the samples of a space, fetched with type, space, experiment, properties
+   * and the perm ids of parents and children. Pages are sorted by perm id, so they can be
+   * requested independently of each other.
+   * @param modifiedSince only samples modified (or registered) at or after this date are found,
+   *                      all samples are found if it is null
+   */
+  public SearchResult<Sample> searchSamplesOfSpace(String space, Date modifiedSince, int from,
+      int count) {
+    SampleSearchCriteria criteria = new SampleSearchCriteria();
+    criteria.withAndOperator();
+    criteria.withSpace().withCode().thatEquals(space.toUpperCase());
+    if (modifiedSince != null) {
+      criteria.withModificationDate().thatIsLaterThanOrEqualTo(modifiedSince);
+    }
+    SampleFetchOptions options = new SampleFetchOptions();
+    options.withType();
+    options.withSpace();
+    options.withExperiment();
+    options.withProperties();
+    options.withParents();
+    options.withChildren();
+    options.sortBy().permId();
+    options.from(from);
+    options.count(count);
+    return openBIS.searchSamples(criteria, options);
+  }
+
+  /**
+   * Searches one page of the datasets of a space, i.e. datasets whose sample or experiment
+   * belongs to the space. Datasets are fetched with type, registrator, sample (including space)
+   * and experiment (including project and space). Pages are sorted by code, so they can be
+   * requested independently of each other.
+   * @param modifiedSince only datasets modified (or registered) at or after this date are found,
+   *                      all datasets are found if it is null
+   */
+  public SearchResult<DataSet> searchDatasetsOfSpace(String space, Date modifiedSince, int from,
+      int count) {
+    DataSetSearchCriteria criteria = new DataSetSearchCriteria();
+    criteria.withAndOperator();
+    DataSetSearchCriteria spaceCriteria = criteria.withSubcriteria().withOrOperator();
+    spaceCriteria.withSample().withSpace().withCode().thatEquals(space.toUpperCase());
+    spaceCriteria.withExperiment().withProject().withSpace().withCode()
+        .thatEquals(space.toUpperCase());
+    if (modifiedSince != null) {
+      criteria.withModificationDate().thatIsLaterThanOrEqualTo(modifiedSince);
+    }
+    DataSetFetchOptions options = new DataSetFetchOptions();
+    options.withType();
+    options.withRegistrator();
+    options.withSample().withSpace();
+    options.withExperiment().withProject().withSpace();
+    options.sortBy().code();
+    options.from(from);
+    options.count(count);
+    return openBIS.searchDataSets(criteria, options);
+  }
+
+  /**
+   * Lists the files and folders of several datasets with a single call.
+   * @return the files by the code of their dataset
+   */
+  public Map<String, List<DataSetFile>> listFilesOfDatasets(Collection<String> datasetCodes) {
+    DataSetFileSearchCriteria criteria = new DataSetFileSearchCriteria();
+    criteria.withDataSet().withCodes().thatIn(new ArrayList<>(datasetCodes));
+    return openBIS.searchFiles(criteria, new DataSetFileFetchOptions()).getObjects().stream()
+        .collect(Collectors.groupingBy(file -> file.getDataSetPermId().getPermId()));
+  }
+
+  /**
+   * Lists the codes of all datasets of an experiment, including the datasets of its samples.
+   * Only codes are fetched, so this is cheap even for experiments with many datasets.
+   */
+  public Set<String> listDatasetCodesOfExperiment(String experimentID) {
+    DataSetSearchCriteria criteria = new DataSetSearchCriteria();
+    criteria.withExperiment().withIdentifier().thatEquals(experimentID);
+    Set<String> codes = new HashSet<>();
+    int totalCount;
+    int from = 0;
+    do {
+      DataSetFetchOptions options = new DataSetFetchOptions();
+      options.sortBy().code();
+      options.from(from);
+      options.count(DATASET_PAGE_SIZE);
+      SearchResult<DataSet> page = openBIS.searchDataSets(criteria, options);
+      totalCount = page.getTotalCount();
+      page.getObjects().forEach(dataSet -> codes.add(dataSet.getCode()));
+      from += DATASET_PAGE_SIZE;
+    } while (from < totalCount);
+    return codes;
+  }
+
+  /**
+   * Finds the datasets of an experiment, including the datasets of its samples, that were
+   * registered or modified at or after the provided date. Datasets are fetched with type and
+   * experiment.
+   * @param since the earliest modification date, all datasets are returned if it is null
+   */
+  public List<DataSet> findDatasetsOfExperimentModifiedSince(String experimentID, Date since) {
+    DataSetSearchCriteria criteria = new DataSetSearchCriteria();
+    criteria.withAndOperator();
+    criteria.withExperiment().withIdentifier().thatEquals(experimentID);
+    if (since != null) {
+      criteria.withModificationDate().thatIsLaterThanOrEqualTo(since);
+    }
+    List<DataSet> datasets = new ArrayList<>();
+    int totalCount;
+    int from = 0;
+    do {
+      DataSetFetchOptions options = new DataSetFetchOptions();
+      options.withType();
+      options.withExperiment();
+      options.sortBy().code();
+      options.from(from);
+      options.count(DATASET_PAGE_SIZE);
+      SearchResult<DataSet> page = openBIS.searchDataSets(criteria, options);
+      totalCount = page.getTotalCount();
+      datasets.addAll(page.getObjects());
+      from += DATASET_PAGE_SIZE;
+    } while (from < totalCount);
+    return datasets;
+  }
+
+  /**
+   * Downloads a file or folder of a dataset, using several concurrent download streams.
+   * @see DatasetDownloader
+   */
   public File downloadDataset(String targetPath, String datasetID, String filePath) {
-    DataSetFileDownloadOptions options = new DataSetFileDownloadOptions();
-    IDataSetFileId fileToDownload = new DataSetFilePermId(new DataSetPermId(datasetID),
-        filePath);
+    return downloader.download(targetPath, datasetID, filePath);
+  }
 
-    // Setting recursive flag to true will return both subfolders and files
-    options.setRecursive(true);
+  /**
+   * Downloads a file or folder of a dataset. If resume is set, files that were already verified by
+   * an earlier, interrupted download into the same folder are skipped.
+   * @see DatasetDownloader
+   */
+  public File downloadDataset(String targetPath, String datasetID, String filePath,
+      boolean resume) {
+    return downloader.download(targetPath, datasetID, filePath, resume);
+  }
 
-    // Read the contents and print them out
-    InputStream stream = openBIS.downloadFiles(new ArrayList<>(List.of(fileToDownload)),
-        options);
-    DataSetFileDownloadReader reader = new DataSetFileDownloadReader(stream);
-    DataSetFileDownload file;
-    while ((file = reader.read()) != null) {
-      DataSetFile df = file.getDataSetFile();
-      String currentPath = df.getPath().replace("original", "");
-      if (df.isDirectory()) {
-        File newDir = new File(targetPath, currentPath);
-        if (!newDir.exists()) {
-          if(!newDir.mkdirs()) {
-            throw new RuntimeException("Could not create folders for downloaded dataset.");
-          }
-        }
-      } else {
-        File toWrite = new File(targetPath, currentPath);
+  /**
+   * Downloads a file or folder of a dataset as part of a larger transfer. The download state of
+   * the verified files is kept, so a resumed transfer skips them, until it is removed with
+   * {@link #removeDownloadState(String, String)}.
+   * @see DatasetDownloader
+   */
+  public File downloadDatasetKeepingState(String targetPath, String datasetID, String filePath,
+      boolean resume) {
+    return downloader.download(targetPath, datasetID, filePath, resume, true);
+  }
+
+  public void removeDownloadState(String targetPath, String datasetID) {
+    downloader.removeState(targetPath, datasetID);
+  }
+
+  /**
+   * Downloads selected files of a dataset, listing the dataset only once. The download state and
+   * verification manifest are stored in the record folder instead of beside the target folder.
+   * @see DatasetDownloader
+   */
+  public void downloadDatasetFiles(String targetPath, Path recordFolder, String datasetID,
+      Set<String> filePaths, boolean resume) {
+    downloader.download(targetPath, recordFolder, datasetID, filePaths, resume);
+  }
+
+  /**
+   * Streams a file of a dataset. Its checksum is verified while it is read, the stream fails with
+   * an IOException at its end if the file does not match the checksum stored in openBIS. Closing
+   * the stream closes the underlying download.
+   * Use streamDatasetArchive to stream a folder or a whole dataset.
+   */
+  public InputStream streamDataset(String datasetCode, String filePath) {
+    DataSetFileDownloadReader reader = openDownload(datasetCode, filePath);
+    DataSetFileDownload download = reader.read();
+    return new ChecksumVerifyingInputStream(download.getInputStream(),
+        download.getDataSetFile()) {
+      @Override
+      public void close() throws IOException {
         try {
-          copyInputStreamToFile(file.getInputStream(), toWrite);
-        } catch (IOException e) {
-          throw new RuntimeException(e);
+          super.close();
+        } finally {
+          reader.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * Writes a dataset, or a folder of a dataset, as a single zip or tar archive to the provided
+   * stream, while it is downloaded. The output stream is not closed.
+   * @param filePath the path of a file or folder in the dataset, empty for the whole dataset
+   * @return the number of archived files
+   */
+  public int writeDatasetArchive(String datasetCode, String filePath,
+      DatasetArchiveWriter.Format format, OutputStream out) throws IOException {
+    DataSetFileDownloadReader reader = openDownload(datasetCode, filePath);
+    try {
+      return new DatasetArchiveWriter(format).write(reader, out);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Receives the files of a dataset one after another while it is read.
+   */
+  @FunctionalInterface
+  public interface DatasetFileHandler {
+
+    /**
+     * @param file the openBIS file, never a folder
+     * @param content the content of the file. It is verified against the checksum stored in
+     *                openBIS while it is read and must be read to its end before the next file is
+     *                received.
+     */
+    void handle(DataSetFile file, InputStream content) throws IOException;
+  }
+
+  /**
+   * Reads all files of a dataset using a single download, e.g. to copy them into an archive
+   * without writing them to disk first. Folders are skipped.
+   * @return the number of files passed to the handler
+   */
+  public int readDataset(String datasetCode, DatasetFileHandler handler) throws IOException {
+    DataSetFileDownloadReader reader = openDownload(datasetCode, "");
+    try {
+      int files = 0;
+      DataSetFileDownload download;
+      while ((download = reader.read()) != null) {
+        DataSetFile file = download.getDataSetFile();
+        if (!file.isDirectory()) {
+          handler.handle(file, new ChecksumVerifyingInputStream(download.getInputStream(), file));
+          files++;
         }
       }
+      return files;
+    } finally {
+      reader.close();
     }
-    return new File(targetPath, filePath.replace("original/",""));
   }
 
-  public InputStream streamDataset(String datasetCode, String filePath) {
+  /**
+   * Streams a dataset, or a folder of a dataset, as a single zip or tar archive. The archive is
+   * created on the fly by a background thread, e.g. to upload it to SEEK without temporary files.
+   * Errors while creating the archive are thrown as IOException when the end of the stream is read.
+   * @param filePath the path of a file or folder in the dataset, empty for the whole dataset
+   */
+  public InputStream streamDatasetArchive(String datasetCode, String filePath,
+      DatasetArchiveWriter.Format format) {
+    return ArchiveInputStream.start(out -> writeDatasetArchive(datasetCode, filePath, format, out),
+        "archive-" + datasetCode);
+  }
+
+  private DataSetFileDownloadReader openDownload(String datasetCode, String filePath) {
     DataSetFileDownloadOptions options = new DataSetFileDownloadOptions();
     IDataSetFileId fileToDownload = new DataSetFilePermId(new DataSetPermId(datasetCode),
         filePath);
@@ -208,75 +577,302 @@ public class OpenbisConnector {
     // Setting recursive flag to true will return both subfolders and files
     options.setRecursive(true);
 
-    // Read the contents and print them out
     InputStream stream = openBIS.downloadFiles(new ArrayList<>(List.of(fileToDownload)),
         options);
-
-    DataSetFileDownloadReader reader = new DataSetFileDownloadReader(stream);
-    return reader.read().getInputStream();
+    return new DataSetFileDownloadReader(stream);
   }
 
+  /**
+   * Counts how often sample types are connected via parent-child relationships. Spaces, and pages of
+   * samples within a space, are queried concurrently. Every task counts into its own table and the
+   * tables are merged when the tasks are joined.
+   * @param spaces the spaces to query, all available spaces are used if the list is empty
+   * @return the sample type connections and how often they were found
+   */
   public Map<SampleTypeConnection, Integer> queryFullSampleHierarchy(List<String> spaces) {
-    Map<SampleTypeConnection, Integer> hierarchy = new HashMap<>();
     if (spaces.isEmpty()) {
       spaces = getSpaces();
     }
-    for (String space : spaces) {
-      SampleFetchOptions fetchType = new SampleFetchOptions();
-      fetchType.withType();
-      SampleFetchOptions withDescendants = new SampleFetchOptions();
-      withDescendants.withChildrenUsing(fetchType);
-      withDescendants.withType();
-      SampleSearchCriteria criteria = new SampleSearchCriteria();
-      criteria.withSpace().withCode().thatEquals(space.toUpperCase());
-      SearchResult<Sample> result = openBIS.searchSamples(criteria, withDescendants);
-      for (Sample s : result.getObjects()) {
-        SampleType parentType = s.getType();
-        List<Sample> children = s.getChildren();
-        if (children.isEmpty()) {
-          SampleTypeConnection leaf = new SampleTypeConnection(parentType);
-          if (hierarchy.containsKey(leaf)) {
-            int count = hierarchy.get(leaf) + 1;
-            hierarchy.put(leaf, count);
-          } else {
-            hierarchy.put(leaf, 1);
-          }
-        } else {
-          for (Sample c : children) {
-            SampleType childType = c.getType();
-            SampleTypeConnection connection = new SampleTypeConnection(parentType, childType);
-            if (hierarchy.containsKey(connection)) {
-              int count = hierarchy.get(connection) + 1;
-              hierarchy.put(connection, count);
-            } else {
-              hierarchy.put(connection, 1);
-            }
-          }
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    try {
+      List<SampleHierarchySpaceTask> spaceTasks = spaces.stream()
+          .map(SampleHierarchySpaceTask::new)
+          .collect(Collectors.toList());
+      SampleTypeConnectionCounts counts = new SampleTypeConnectionCounts();
+      for (SampleHierarchySpaceTask task : spaceTasks) {
+        pool.execute(task);
+      }
+      for (SampleHierarchySpaceTask task : spaceTasks) {
+        counts.merge(task.join());
+      }
+      return counts.toConnectionMap();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private SearchResult<Sample> searchSamplesWithChildTypes(String space, int from) {
+    SampleFetchOptions fetchType = new SampleFetchOptions();
+    fetchType.withType();
+    SampleFetchOptions withDescendants = new SampleFetchOptions();
+    withDescendants.withChildrenUsing(fetchType);
+    withDescendants.withType();
+    withDescendants.sortBy().permId();
+    withDescendants.from(from);
+    withDescendants.count(SAMPLE_PAGE_SIZE);
+    SampleSearchCriteria criteria = new SampleSearchCriteria();
+    criteria.withSpace().withCode().thatEquals(space.toUpperCase());
+    return openBIS.searchSamples(criteria, withDescendants);
+  }
+
+  private static SampleTypeConnectionCounts countTypeConnections(List<Sample> samples) {
+    SampleTypeConnectionCounts counts = new SampleTypeConnectionCounts();
+    for (Sample s : samples) {
+      SampleType parentType = s.getType();
+      List<Sample> children = s.getChildren();
+      if (children.isEmpty()) {
+        counts.incrementLeaf(parentType);
+      } else {
+        for (Sample c : children) {
+          counts.incrementConnection(parentType, c.getType());
         }
       }
     }
-    return hierarchy;
+    return counts;
   }
 
-  private Set<String> getPropertiesFromSampleHierarchy(String propertyName, List<Sample> samples,
-      Set<String> foundProperties) {
-    if(samples.isEmpty()) {
-      return foundProperties;
+  /**
+   * Queries the first page of samples of a space. Remaining pages are forked as separate tasks once
+   * the total number of samples is known.
+   */
+  private class SampleHierarchySpaceTask extends RecursiveTask<SampleTypeConnectionCounts> {
+
+    private final String space;
+
+    SampleHierarchySpaceTask(String space) {
+      this.space = space;
     }
-    for(Sample s : samples) {
-      if(s.getProperties().containsKey(propertyName)) {
-        foundProperties.add(s.getProperties().get(propertyName));
+
+    @Override
+    protected SampleTypeConnectionCounts compute() {
+      SearchResult<Sample> firstPage = searchSamplesWithChildTypes(space, 0);
+      List<SampleHierarchyPageTask> pageTasks = new ArrayList<>();
+      for (int from = SAMPLE_PAGE_SIZE; from < firstPage.getTotalCount(); from += SAMPLE_PAGE_SIZE) {
+        SampleHierarchyPageTask task = new SampleHierarchyPageTask(space, from);
+        task.fork();
+        pageTasks.add(task);
       }
+      SampleTypeConnectionCounts counts = countTypeConnections(firstPage.getObjects());
+      for (SampleHierarchyPageTask task : pageTasks) {
+        counts.merge(task.join());
+      }
+      return counts;
+    }
+  }
+
+  private class SampleHierarchyPageTask extends RecursiveTask<SampleTypeConnectionCounts> {
+
+    private final String space;
+    private final int from;
+
+    SampleHierarchyPageTask(String space, int from) {
+      this.space = space;
+      this.from = from;
+    }
+
+    @Override
+    protected SampleTypeConnectionCounts compute() {
+      return countTypeConnections(searchSamplesWithChildTypes(space, from).getObjects());
     }
-    return getPropertiesFromSampleHierarchy(propertyName,
-        samples.stream().map(Sample::getParents).flatMap(List::stream).collect(Collectors.toList()),
-        foundProperties);
   }
 
+  /**
+   * Collects the values of a property found in the samples of an experiment and all of their
+   * ancestors. The hierarchy is traversed breadth-first: every generation of parents is fetched
+   * with batched queries by permId, samples already visited are skipped and the traversal stops
+   * when a generation is empty. There is no limit to the depth of the hierarchy.
+   * @param propertyName the code of the property to collect
+   * @param experimentId the experiment whose samples are the starting point of the traversal
+   * @return all distinct values of the property found in the hierarchy
+   */
   public Set<String> findPropertiesInSampleHierarchy(String propertyName,
       ExperimentIdentifier experimentId) {
-    return getPropertiesFromSampleHierarchy(propertyName,
-        getSamplesWithAncestorsOfExperiment(experimentId), new HashSet<>());
+    return findPropertiesInSampleHierarchy(propertyName, experimentId,
+        new SampleHierarchyPropertyCache());
+  }
+
+  /**
+   * Collects the values of a property found in the samples of an experiment and all of their
+   * ancestors, like {@link #findPropertiesInSampleHierarchy(String, ExperimentIdentifier)}. Samples
+   * already known to the cache are not traversed again, the values found at or above every newly
+   * traversed sample are added to it.
+   * @param propertyName the code of the property to collect
+   * @param experimentId the experiment whose samples are the starting point of the traversal
+   * @param cache values of the property found at or above samples, shared across lookups
+   * @return all distinct values of the property found in the hierarchy
+   */
+  public Set<String> findPropertiesInSampleHierarchy(String propertyName,
+      ExperimentIdentifier experimentId, SampleHierarchyPropertyCache cache) {
+    Set<String> foundProperties = new HashSet<>();
+    Map<String, Sample> traversed = new HashMap<>();
+    Set<String> requested = new HashSet<>();
+    List<Sample> generation = new ArrayList<>();
+    for (Sample s : getSamplesOfExperiment(experimentId)) {
+      String permId = s.getPermId().getPermId();
+      Optional<Set<String>> known = cache.lookup(propertyName, permId);
+      if (known.isPresent()) {
+        foundProperties.addAll(known.get());
+      } else if (traversed.putIfAbsent(permId, s) == null) {
+        generation.add(s);
+      }
+    }
+    List<Sample> roots = new ArrayList<>(generation);
+    while (!generation.isEmpty()) {
+      List<SamplePermId> parentIds = new ArrayList<>();
+      for (Sample s : generation) {
+        for (Sample parent : s.getParents()) {
+          String parentId = parent.getPermId().getPermId();
+          if (requested.contains(parentId) || traversed.containsKey(parentId)) {
+            continue;
+          }
+          if (cache.lookup(propertyName, parentId).isPresent()) {
+            continue;
+          }
+          requested.add(parentId);
+          parentIds.add(parent.getPermId());
+        }
+      }
+      generation = getSamplesByPermId(parentIds);
+      generation.forEach(s -> traversed.put(s.getPermId().getPermId(), s));
+    }
+    for (Sample root : roots) {
+      foundProperties.addAll(resolvePropertiesAtOrAbove(propertyName, root, traversed, cache));
+    }
+    return foundProperties;
+  }
+
+  /**
+   * Computes the values of a property at or above a traversed sample from its own value and the
+   * values of its parents, storing every intermediate result in the cache.
+   */
+  private Set<String> resolvePropertiesAtOrAbove(String propertyName, Sample sample,
+      Map<String, Sample> traversed, SampleHierarchyPropertyCache cache) {
+    String permId = sample.getPermId().getPermId();
+    Optional<Set<String>> known = cache.get(propertyName, permId);
+    if (known.isPresent()) {
+      return known.get();
+    }
+    Set<String> values = new HashSet<>();
+    String value = sample.getProperties().get(propertyName);
+    if (value != null) {
+      values.add(value);
+    }
+    for (Sample parent : sample.getParents()) {
+      String parentId = parent.getPermId().getPermId();
+      Optional<Set<String>> knownParent = cache.get(propertyName, parentId);
+      if (knownParent.isPresent()) {
+        values.addAll(knownParent.get());
+      } else if (traversed.containsKey(parentId)) {
+        values.addAll(resolvePropertiesAtOrAbove(propertyName, traversed.get(parentId),
+            traversed, cache));
+      }
+    }
+    cache.store(propertyName, permId, values);
+    return values;
+  }
+
+  /**
+   * Fetch options used for every generation of the ancestor traversal: the properties of the
+   * sample and the ids of its parents, nothing else.
+   */
+  private SampleFetchOptions propertiesWithParentIds() {
+    SampleFetchOptions options = new SampleFetchOptions();
+    options.withProperties();
+    options.withParents();
+    return options;
+  }
+
+  private List<Sample> getSamplesOfExperiment(ExperimentIdentifier experimentId) {
+    SampleSearchCriteria criteria = new SampleSearchCriteria();
+    criteria.withExperiment().withId().thatEquals(experimentId);
+
+    return openBIS.searchSamples(criteria, propertiesWithParentIds()).getObjects();
+  }
+
+  private List<Sample> getSamplesByPermId(List<SamplePermId> permIds) {
+    List<Sample> result = new ArrayList<>();
+    for (int from = 0; from < permIds.size(); from += SAMPLE_ID_BATCH_SIZE) {
+      List<SamplePermId> batch = permIds.subList(from,
+          Math.min(from + SAMPLE_ID_BATCH_SIZE, permIds.size()));
+      result.addAll(openBIS.getSamples(batch, propertiesWithParentIds()).values());
+    }
+    return result;
+  }
+
+  /**
+   * Runs a query on the query executor of this connector, so independent queries can be waited for
+   * together. The executor is created on first use. The number of queries running at the same time
+   * can be set via the config file as 'query_threads' (default: 4). Its threads are daemon threads
+   * and do not keep the application running.
+   */
+  public <T> CompletableFuture<T> queryAsync(Supplier<T> query) {
+    return CompletableFuture.supplyAsync(query, getQueryExecutor());
+  }
+
+  private synchronized ExecutorService getQueryExecutor() {
+    if (queryExecutor == null) {
+      int threads = DEFAULT_QUERY_THREADS;
+      String configured = App.configProperties.get("query_threads");
+      if (configured != null && !configured.isBlank()) {
+        threads = Math.max(1, Integer.parseInt(configured.trim()));
+      }
+      AtomicInteger threadCount = new AtomicInteger();
+      queryExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+        Thread thread = new Thread(runnable, "openbis-query-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return queryExecutor;
+  }
+
+  /**
+   * Waits for the result of an asynchronous query. Exceptions thrown by the query are rethrown as
+   * they are, if they are runtime exceptions.
+   */
+  public static <T> T await(CompletableFuture<T> query) {
+    try {
+      return query.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  public CompletableFuture<Map<String, List<Experiment>>> getExperimentsBySpaceAsync(
+      List<String> spaces) {
+    return queryAsync(() -> getExperimentsBySpace(spaces));
+  }
+
+  public CompletableFuture<Map<String, List<Sample>>> getSamplesBySpaceAsync(List<String> spaces) {
+    return queryAsync(() -> getSamplesBySpace(spaces));
+  }
+
+  public CompletableFuture<Map<String, Map<String, List<Experiment>>>>
+      getExperimentsByTypeAndSpaceAsync(List<String> spaces) {
+    return queryAsync(() -> getExperimentsByTypeAndSpace(spaces));
+  }
+
+  public CompletableFuture<Map<String, Map<String, List<Sample>>>> getSamplesByTypeAndSpaceAsync(
+      List<String> spaces) {
+    return queryAsync(() -> getSamplesByTypeAndSpace(spaces));
+  }
+
+  public CompletableFuture<Map<String, Map<String, List<DataSet>>>> getDatasetsByTypeAndSpaceAsync(
+      List<String> spaces) {
+    return queryAsync(() -> getDatasetsByTypeAndSpace(spaces));
   }
 
   public Map<String, List<Experiment>> getExperimentsBySpace(List<String> spaces) {
@@ -407,25 +1003,6 @@ public class OpenbisConnector {
     return "NO SPACE";
   }
 
-  private List<Sample> getSamplesWithAncestorsOfExperiment(ExperimentIdentifier experimentId) {
-    int numberOfFetchedLevels = 10;
-    SampleFetchOptions previousLevel = null;
-    for(int i = 0; i < numberOfFetchedLevels; i++) {
-      SampleFetchOptions withAncestors = new SampleFetchOptions();
-      withAncestors.withProperties();
-      withAncestors.withType();
-      if (previousLevel != null) {
-        withAncestors.withParentsUsing(previousLevel);
-      }
-      previousLevel = withAncestors;
-    }
-
-    SampleSearchCriteria criteria = new SampleSearchCriteria();
-    criteria.withExperiment().withId().thatEquals(experimentId);
-
-    return openBIS.searchSamples(criteria, previousLevel).getObjects();
-  }
-
   public List<DataSet> findDataSets(List<String> codes) {
     if (codes.isEmpty()) {
       return new ArrayList<>();
@@ -438,10 +1015,58 @@ public class OpenbisConnector {
     return openBIS.searchDataSets(criteria, options).getObjects();
   }
 
+  /**
+   * Finds datasets by their codes, using one query per batch of codes, e.g. for the codes listed
+   * in a large manifest.
+   */
+  public List<DataSet> findDataSetsInBatches(Collection<String> codes) {
+    List<DataSet> datasets = new ArrayList<>();
+    for (List<String> chunk : chunks(codes, SAMPLE_ID_BATCH_SIZE)) {
+      datasets.addAll(findDataSets(new ArrayList<>(chunk)));
+    }
+    return datasets;
+  }
+
   public boolean datasetExists(String code) {
     return !findDataSets(new ArrayList<>(Arrays.asList(code))).isEmpty();
   }
 
+  /**
+   * Checks which of the provided experiment identifiers exist, using one query per batch.
+   * @return the identifiers of the experiments that were found
+   */
+  public Set<String> findExistingExperiments(Collection<String> experimentIDs) {
+    Map<String, ExperimentIdentifier> ids = new HashMap<>();
+    experimentIDs.forEach(id -> ids.put(id, new ExperimentIdentifier(id)));
+    List<ExperimentIdentifier> idList = new ArrayList<>(ids.values());
+    Set<IExperimentId> found = new HashSet<>();
+    for (int i = 0; i < idList.size(); i += SAMPLE_ID_BATCH_SIZE) {
+      List<ExperimentIdentifier> batch = idList.subList(i,
+          Math.min(i + SAMPLE_ID_BATCH_SIZE, idList.size()));
+      found.addAll(openBIS.getExperiments(batch, new ExperimentFetchOptions()).keySet());
+    }
+    return ids.keySet().stream().filter(id -> found.contains(ids.get(id)))
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Checks which of the provided sample identifiers exist, using one query per batch.
+   * @return the identifiers of the samples that were found
+   */
+  public Set<String> findExistingSamples(Collection<String> sampleIDs) {
+    Map<String, SampleIdentifier> ids = new HashMap<>();
+    sampleIDs.forEach(id -> ids.put(id, new SampleIdentifier(id)));
+    List<SampleIdentifier> idList = new ArrayList<>(ids.values());
+    Set<ISampleId> found = new HashSet<>();
+    for (int i = 0; i < idList.size(); i += SAMPLE_ID_BATCH_SIZE) {
+      List<SampleIdentifier> batch = idList.subList(i,
+          Math.min(i + SAMPLE_ID_BATCH_SIZE, idList.size()));
+      found.addAll(openBIS.getSamples(batch, new SampleFetchOptions()).keySet());
+    }
+    return ids.keySet().stream().filter(id -> found.contains(ids.get(id)))
+        .collect(Collectors.toSet());
+  }
+
   public boolean experimentExists(String experimentID) {
     ExperimentSearchCriteria criteria = new ExperimentSearchCriteria();
     criteria.withIdentifier().thatEquals(experimentID);
@@ -480,15 +1105,34 @@ public class OpenbisConnector {
 
     Experiment experiment = openBIS.searchExperiments(criteria, fetchOptions).getObjects().get(0);
 
-    Map<String, List<DataSetFile>> datasetCodeToFiles = new HashMap<>();
-    for(DataSet dataset : experiment.getDataSets()) {
-      datasetCodeToFiles.put(dataset.getPermId().getPermId(), getDatasetFiles(dataset));
-    }
-
-    return new OpenbisExperimentWithDescendants(experiment, experiment.getSamples(),
+    return new OpenbisExperimentWithDescendants(ExperimentProjection.of(experiment),
+        projectSamples(experiment.getSamples()),
         experiment.getDataSets()
             .stream().map(DatasetWithProperties::new)
-            .collect(Collectors.toList()), datasetCodeToFiles);
+            .collect(Collectors.toList()), projectDatasetFiles(experiment.getDataSets()));
+  }
+
+  private List<SampleProjection> projectSamples(List<Sample> samples) {
+    Map<String, SampleTypeProjection> types = new HashMap<>();
+    List<SampleProjection> projections = new ArrayList<>(samples.size());
+    for (Sample sample : samples) {
+      projections.add(SampleProjection.of(sample, types));
+    }
+    return projections;
+  }
+
+  private Map<String, List<DatasetFileProjection>> projectDatasetFiles(List<DataSet> datasets) {
+    Map<String, List<DatasetFileProjection>> datasetCodeToFiles = new HashMap<>();
+    for (DataSet dataset : datasets) {
+      String code = dataset.getPermId().getPermId();
+      List<DataSetFile> files = getDatasetFiles(dataset);
+      List<DatasetFileProjection> projections = new ArrayList<>(files.size());
+      for (DataSetFile file : files) {
+        projections.add(DatasetFileProjection.of(file, code));
+      }
+      datasetCodeToFiles.put(code, projections);
+    }
+    return datasetCodeToFiles;
   }
 
   public List<DataSetFile> getDatasetFiles(DataSet dataset) {
@@ -502,6 +1146,123 @@ public class OpenbisConnector {
     return result.getObjects();
   }
 
+  /**
+   * Like getExperimentWithDescendants, but samples, datasets and files are only requested from
+   * openBIS, one page at a time, while they are iterated.
+   */
+  public OpenbisExperimentStream streamExperimentWithDescendants(String experimentID) {
+    return new OpenbisExperimentStream(ExperimentProjection.of(getExperiment(experimentID)),
+        () -> iterateSamplesOfExperiment(experimentID),
+        () -> iterateDatasetsOfExperiment(experimentID),
+        this::iterateDatasetFiles);
+  }
+
+  /**
+   * Fetches an experiment with type, project and properties, but without its samples and
+   * datasets. These can be iterated separately, see iterateSamplesOfExperiment and
+   * iterateDatasetsOfExperiment.
+   */
+  public Experiment getExperiment(String experimentID) {
+    ExperimentSearchCriteria criteria = new ExperimentSearchCriteria();
+    criteria.withIdentifier().thatEquals(experimentID);
+    ExperimentFetchOptions fetchOptions = new ExperimentFetchOptions();
+    fetchOptions.withType();
+    fetchOptions.withProject();
+    fetchOptions.withProperties();
+    List<Experiment> experiments = openBIS.searchExperiments(criteria, fetchOptions).getObjects();
+    if (experiments.isEmpty()) {
+      throw new RuntimeException("Experiment " + experimentID + " not found.");
+    }
+    return experiments.get(0);
+  }
+
+  /**
+   * Iterates over the samples of an experiment, fetched with properties and their type including
+   * property assignments. Samples are requested page by page while iterating.
+   */
+  public Iterator<SampleProjection> iterateSamplesOfExperiment(String experimentID) {
+    SampleSearchCriteria criteria = new SampleSearchCriteria();
+    criteria.withExperiment().withIdentifier().thatEquals(experimentID);
+    Map<String, SampleTypeProjection> types = new HashMap<>();
+    Iterator<Sample> samples = new PagedIterator<>((from, count) -> {
+      SampleFetchOptions options = new SampleFetchOptions();
+      options.withProperties();
+      options.withType().withPropertyAssignments().withPropertyType();
+      options.sortBy().permId();
+      options.from(from);
+      options.count(count);
+      return openBIS.searchSamples(criteria, options);
+    }, SAMPLE_PAGE_SIZE);
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return samples.hasNext();
+      }
+
+      @Override
+      public SampleProjection next() {
+        return SampleProjection.of(samples.next(), types);
+      }
+    };
+  }
+
+  /**
+   * Iterates over the datasets of an experiment, including the datasets of its samples. Datasets
+   * are requested page by page while iterating.
+   */
+  public Iterator<DatasetWithProperties> iterateDatasetsOfExperiment(String experimentID) {
+    DataSetSearchCriteria criteria = new DataSetSearchCriteria();
+    criteria.withExperiment().withIdentifier().thatEquals(experimentID);
+    Iterator<DataSet> datasets = new PagedIterator<>((from, count) -> {
+      DataSetFetchOptions options = new DataSetFetchOptions();
+      options.withType();
+      options.withRegistrator();
+      options.withExperiment();
+      options.withSample();
+      options.sortBy().code();
+      options.from(from);
+      options.count(count);
+      return openBIS.searchDataSets(criteria, options);
+    }, DATASET_PAGE_SIZE);
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return datasets.hasNext();
+      }
+
+      @Override
+      public DatasetWithProperties next() {
+        return new DatasetWithProperties(datasets.next());
+      }
+    };
+  }
+
+  /**
+   * Iterates over the files and folders of a dataset. The listing is requested page by page
+   * while iterating, so datasets with millions of files can be processed.
+   */
+  public Iterator<DatasetFileProjection> iterateDatasetFiles(String datasetCode) {
+    DataSetFileSearchCriteria criteria = new DataSetFileSearchCriteria();
+    criteria.withDataSet().withCode().thatEquals(datasetCode);
+    Iterator<DataSetFile> files = new PagedIterator<>((from, count) -> {
+      DataSetFileFetchOptions options = new DataSetFileFetchOptions();
+      options.from(from);
+      options.count(count);
+      return openBIS.searchFiles(criteria, options);
+    }, FILE_PAGE_SIZE);
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return files.hasNext();
+      }
+
+      @Override
+      public DatasetFileProjection next() {
+        return DatasetFileProjection.of(files.next(), datasetCode);
+      }
+    };
+  }
+
   public List<DataSetType> listDatasetTypes() {
     DataSetTypeSearchCriteria criteria = new DataSetTypeSearchCriteria();
     DataSetTypeFetchOptions fetchOptions = new DataSetTypeFetchOptions();
@@ -537,113 +1298,286 @@ public class OpenbisConnector {
     return new SampleTypesAndMaterials(sampleTypes, sampleTypesAsMaterials);
   }
 
+  /**
+   * Stores links to newly created SEEK objects in openBIS. The experiment and every transferred
+   * sample get a child EXTERNAL_LINK sample pointing to their counterpart in SEEK, all of them are
+   * created with a single call. The asset URLs of transferred datasets are added to the
+   * DATASET_LINK_PROPERTY of the datasets, if their type has this property.
+   */
   public void createSeekLinks(SeekStructurePostRegistrationInformation postRegInformation) {
-    Optional<Pair<String, String>> experimentInfo = postRegInformation.getExperimentIDWithEndpoint();
+    linkSeekObjects(postRegInformation, false);
+  }
 
-    if(experimentInfo.isPresent()) {
-      ExperimentIdentifier id = new ExperimentIdentifier(experimentInfo.get().getLeft());
-      String endpoint = experimentInfo.get().getRight();
-      String space_id = id.toString().split("/")[1];
+  /**
+   * Stores links to SEEK objects after an existing SEEK structure was updated. Works like
+   * createSeekLinks, but links that already exist in openBIS are not created again.
+   */
+  public void updateSeekLinks(SeekStructurePostRegistrationInformation postRegistrationInformation) {
+    linkSeekObjects(postRegistrationInformation, true);
+  }
 
-      SampleCreation sample = createNewLinkSample(endpoint, space_id);
-      sample.setExperimentId(id);
+  private void linkSeekObjects(SeekStructurePostRegistrationInformation postRegInformation,
+      boolean skipExisting) {
+    List<SampleCreation> linkSamples = new ArrayList<>();
+    if (!getTypeRegistry().hasSampleType(LINK_SAMPLE_TYPE)) {
+      LOG.warn("Sample type " + LINK_SAMPLE_TYPE + " not found, no links to SEEK experiments or "
+          + "samples are stored in openBIS.");
+    } else {
+      Set<String> existingLinks = new HashSet<>();
+      if (skipExisting) {
+        Set<String> urls = new HashSet<>(postRegInformation.getSampleIDsWithEndpoints().values());
+        postRegInformation.getExperimentIDWithEndpoint().ifPresent(
+            experimentInfo -> urls.add(experimentInfo.getRight()));
+        existingLinks = findExistingLinkURLs(urls);
+      }
+      linkSamples = collectLinkSamples(postRegInformation, existingLinks);
+    }
+    if (!linkSamples.isEmpty()) {
+      openBIS.createSamples(linkSamples);
+    }
+    int linkedDatasets = linkDatasets(postRegInformation.getDatasetIDsWithEndpoints());
+    System.out.printf("Created %s link samples and linked %s datasets.%n", linkSamples.size(),
+        linkedDatasets);
+  }
 
-      Map<String, String> sampleInfos = postRegInformation.getSampleIDsWithEndpoints();
-      List<SampleIdentifier> parentIds = new ArrayList<>();
-      for(String sampleID : sampleInfos.keySet()) {
-        SampleIdentifier sampleId = new SampleIdentifier(sampleID);
-        parentIds.add(sampleId);
+  /**
+   * Link samples are attached to the experiment of the post registration information, the
+   * experiment itself is only linked if its SEEK endpoint is part of the information.
+   * @param existingLinks URLs that are already linked, no link samples are created for them
+   */
+  List<SampleCreation> collectLinkSamples(
+      SeekStructurePostRegistrationInformation postRegInformation, Set<String> existingLinks) {
+    List<SampleCreation> linkSamples = new ArrayList<>();
+    Optional<Pair<String, String>> experimentInfo = postRegInformation.getExperimentIDWithEndpoint();
+    ExperimentIdentifier experimentId = postRegInformation.getExperimentID()
+        .map(ExperimentIdentifier::new).orElse(null);
+    if (experimentInfo.isPresent()) {
+      String endpoint = experimentInfo.get().getRight();
+      if (!existingLinks.contains(endpoint)) {
+        String space_id = experimentId.toString().split("/")[1];
+        SampleCreation sample = createNewLinkSample(endpoint, space_id);
+        sample.setExperimentId(experimentId);
+        linkSamples.add(sample);
       }
-      sample.setParentIds(parentIds);
-      openBIS.createSamples(List.of(sample));
     }
+    for (Map.Entry<String, String> sampleInfo :
+        postRegInformation.getSampleIDsWithEndpoints().entrySet()) {
+      if (existingLinks.contains(sampleInfo.getValue())) {
+        continue;
+      }
+      SampleIdentifier sampleId = new SampleIdentifier(sampleInfo.getKey());
+      String space_id = sampleInfo.getKey().split("/")[1];
+      SampleCreation sample = createNewLinkSample(sampleInfo.getValue(), space_id);
+      if (experimentId != null) {
+        sample.setExperimentId(experimentId);
+      }
+      sample.setParentIds(List.of(sampleId));
+      linkSamples.add(sample);
+    }
+    return linkSamples;
   }
 
   private SampleCreation createNewLinkSample(String endpoint, String space_id) {
-    final String SAMPLE_TYPE = "EXTERNAL_LINK";
     SampleCreation sample = new SampleCreation();
-    sample.setTypeId(new EntityTypePermId(SAMPLE_TYPE, EntityKind.SAMPLE));
+    sample.setTypeId(new EntityTypePermId(LINK_SAMPLE_TYPE, EntityKind.SAMPLE));
     sample.setSpaceId(new SpacePermId(space_id));
 
     Map<String, String> properties = new HashMap<>();
     properties.put("LINK_TYPE", "SEEK");
-    properties.put("URL", endpoint);
+    properties.put(LINK_URL_PROPERTY, endpoint);
 
     sample.setProperties(properties);
     return sample;
   }
 
-  public void updateSeekLinks(SeekStructurePostRegistrationInformation postRegistrationInformation) {
+  /**
+   * @return the URLs of the provided ones that are already stored in EXTERNAL_LINK samples
+   */
+  private Set<String> findExistingLinkURLs(Set<String> urls) {
+    Set<String> existing = new HashSet<>();
+    SampleFetchOptions options = new SampleFetchOptions();
+    options.withProperties();
+    for (List<String> chunk : chunks(urls, SAMPLE_ID_BATCH_SIZE)) {
+      SampleSearchCriteria criteria = new SampleSearchCriteria();
+      criteria.withType().withCode().thatEquals(LINK_SAMPLE_TYPE);
+      SampleSearchCriteria urlCriteria = criteria.withSubcriteria().withOrOperator();
+      for (String url : chunk) {
+        urlCriteria.withProperty(LINK_URL_PROPERTY).thatEquals(url);
+      }
+      for (Sample sample : openBIS.searchSamples(criteria, options).getObjects()) {
+        existing.add(sample.getProperty(LINK_URL_PROPERTY));
+      }
+    }
+    return existing;
   }
 
-  private void updateExperimentProperties(ExperimentIdentifier id, Map<String, String> properties,
-      boolean overwrite) {
-    ExperimentUpdate update = new ExperimentUpdate();
-    update.setExperimentId(id);
-    if(overwrite) {
-      update.setProperties(properties);
-    } else {
-      ExperimentFetchOptions options = new ExperimentFetchOptions();
-      options.withProperties();
-      Experiment oldExp = openBIS.getExperiments(Arrays.asList(id), options).get(id);
-      for(String property : properties.keySet()) {
-        String newValue = properties.get(property);
-        String oldValue = oldExp.getProperty(property);
-        if(oldValue == null || oldValue.isEmpty() || oldValue.equals(newValue)) {
-          update.setProperty(property, newValue);
-        } else if(!newValue.isBlank()) {
-          update.setProperty(property, oldValue+", "+newValue);//TODO this can be changed to any other strategy
+  /**
+   * Adds SEEK asset URLs to the link property of datasets, if their type has this property. URLs
+   * already stored in the property are not added again.
+   * @param datasetIDsWithEndpoints dataset codes and the URLs of their assets in SEEK
+   * @return the number of updated datasets
+   */
+  private int linkDatasets(Map<String, Set<String>> datasetIDsWithEndpoints) {
+    if (datasetIDsWithEndpoints.isEmpty()) {
+      return 0;
+    }
+    Set<String> typesWithLink = new HashSet<>();
+    for (DataSetType type : listDatasetTypes()) {
+      for (PropertyAssignment assignment : type.getPropertyAssignments()) {
+        if (assignment.getPropertyType().getCode().equals(DATASET_LINK_PROPERTY)) {
+          typesWithLink.add(type.getCode());
         }
       }
     }
-    openBIS.updateExperiments(Arrays.asList(update));
-  }
-
-  private void updateSampleProperties(SampleIdentifier id, Map<String, String> properties,
-      boolean overwrite) {
-    SampleUpdate update = new SampleUpdate();
-    update.setSampleId(id);
-    if(overwrite) {
-      update.setProperties(properties);
-    } else {
-      SampleFetchOptions options = new SampleFetchOptions();
-      options.withProperties();
-      Sample oldSample = openBIS.getSamples(Arrays.asList(id), options).get(id);
-      for(String property : properties.keySet()) {
-        String newValue = properties.get(property);
-        String oldValue = oldSample.getProperty(property);
-        if(oldValue == null || oldValue.isEmpty() || oldValue.equals(newValue)) {
-          update.setProperty(property, newValue);
+    if (typesWithLink.isEmpty()) {
+      LOG.warn("No dataset type has property " + DATASET_LINK_PROPERTY + ", no links to SEEK "
+          + "assets are stored in openBIS.");
+      return 0;
+    }
+    DataSetFetchOptions options = new DataSetFetchOptions();
+    options.withType();
+    Map<DataSetPermId, Map<String, String>> linksById = new HashMap<>();
+    for (List<String> chunk : chunks(datasetIDsWithEndpoints.keySet(), SAMPLE_ID_BATCH_SIZE)) {
+      List<DataSetPermId> ids = chunk.stream().map(DataSetPermId::new)
+          .collect(Collectors.toList());
+      for (DataSet dataSet : openBIS.getDataSets(ids, options).values()) {
+        if (typesWithLink.contains(dataSet.getType().getCode())) {
+          String urls = datasetIDsWithEndpoints.get(dataSet.getCode()).stream().sorted()
+              .collect(Collectors.joining(LINK_SEPARATOR));
+          linksById.put(new DataSetPermId(dataSet.getCode()),
+              Map.of(DATASET_LINK_PROPERTY, urls));
         } else {
-          update.setProperty(property, oldValue+", "+newValue);//TODO this can be changed to any other strategy
+          LOG.info("Dataset type " + dataSet.getType().getCode() + " has no property "
+              + DATASET_LINK_PROPERTY + ", dataset " + dataSet.getCode() + " is not linked.");
         }
       }
     }
-    openBIS.updateSamples(Arrays.asList(update));
+    return updateDatasetProperties(linksById,
+        PropertyMergeStrategy.appendIfAbsent(LINK_SEPARATOR));
   }
 
-  private void updateDatasetProperties(DataSetPermId id, Map<String, String> properties,
-      boolean overwrite) {
-    DataSetUpdate update = new DataSetUpdate();
-    update.setDataSetId(id);
-    if (overwrite) {
+  /**
+   * Updates properties of many experiments. Current values are fetched with one call per chunk of
+   * experiments (if the merge strategy needs them) and updates are submitted in chunks.
+   * @param propertiesById the new property values of every experiment
+   * @param strategy decides which value is stored, if a property already has a value
+   * @return the number of updated experiments
+   */
+  public int updateExperimentProperties(
+      Map<ExperimentIdentifier, Map<String, String>> propertiesById,
+      PropertyMergeStrategy strategy) {
+    return updateProperties(propertiesById, strategy, chunk -> {
+      ExperimentFetchOptions options = new ExperimentFetchOptions();
+      options.withProperties();
+      return openBIS.getExperiments(chunk, options);
+    }, Experiment::getProperty, (id, properties) -> {
+      ExperimentUpdate update = new ExperimentUpdate();
+      update.setExperimentId(id);
       update.setProperties(properties);
-    } else {
+      return update;
+    }, openBIS::updateExperiments);
+  }
+
+  /**
+   * Updates properties of many samples. Current values are fetched with one call per chunk of
+   * samples (if the merge strategy needs them) and updates are submitted in chunks.
+   * @param propertiesById the new property values of every sample
+   * @param strategy decides which value is stored, if a property already has a value
+   * @return the number of updated samples
+   */
+  public int updateSampleProperties(Map<SampleIdentifier, Map<String, String>> propertiesById,
+      PropertyMergeStrategy strategy) {
+    return updateProperties(propertiesById, strategy, chunk -> {
+      SampleFetchOptions options = new SampleFetchOptions();
+      options.withProperties();
+      return openBIS.getSamples(chunk, options);
+    }, Sample::getProperty, (id, properties) -> {
+      SampleUpdate update = new SampleUpdate();
+      update.setSampleId(id);
+      update.setProperties(properties);
+      return update;
+    }, openBIS::updateSamples);
+  }
+
+  /**
+   * Updates properties of many datasets. Current values are fetched with one call per chunk of
+   * datasets (if the merge strategy needs them) and updates are submitted in chunks.
+   * @param propertiesById the new property values of every dataset
+   * @param strategy decides which value is stored, if a property already has a value
+   * @return the number of updated datasets
+   */
+  public int updateDatasetProperties(Map<DataSetPermId, Map<String, String>> propertiesById,
+      PropertyMergeStrategy strategy) {
+    return updateProperties(propertiesById, strategy, chunk -> {
       DataSetFetchOptions options = new DataSetFetchOptions();
       options.withProperties();
-      DataSet oldDataset = openBIS.getDataSets(Arrays.asList(id), options).get(id);
-      for (String property : properties.keySet()) {
-        String newValue = properties.get(property);
-        String oldValue = oldDataset.getProperty(property);
-        if (oldValue == null || oldValue.isEmpty() || oldValue.equals(newValue)) {
-          update.setProperty(property, newValue);
-        } else {
-          update.setProperty(property,
-              oldValue + ", " + newValue);//TODO this can be changed to any other strategy
+      return openBIS.getDataSets(chunk, options);
+    }, DataSet::getProperty, (id, properties) -> {
+      DataSetUpdate update = new DataSetUpdate();
+      update.setDataSetId(id);
+      update.setProperties(properties);
+      return update;
+    }, openBIS::updateDataSets);
+  }
+
+  /**
+   * Updates properties of many entities of one kind in chunks: the current values of a chunk are
+   * fetched with one call (if the merge strategy needs them), merged with the new values and the
+   * resulting updates are submitted with one call.
+   * @param fetchCurrent fetches the entities of a chunk, including their properties
+   * @param propertyOf reads the current value of a property of an entity
+   * @param toUpdate creates the update of an entity from the merged properties
+   * @param submit submits the updates of a chunk
+   * @return the number of updated entities
+   */
+  private <I, E, U> int updateProperties(Map<I, Map<String, String>> propertiesById,
+      PropertyMergeStrategy strategy, Function<List<I>, Map<?, E>> fetchCurrent,
+      BiFunction<E, String, String> propertyOf,
+      BiFunction<I, Map<String, String>, U> toUpdate, Consumer<List<U>> submit) {
+    int updated = 0;
+    for (List<I> chunk : chunks(propertiesById.keySet(), UPDATE_BATCH_SIZE)) {
+      Map<?, E> current = strategy.needsCurrentValues() ? fetchCurrent.apply(chunk)
+          : new HashMap<>();
+      List<U> updates = new ArrayList<>();
+      for (I id : chunk) {
+        E entity = current.get(id);
+        Map<String, String> merged = mergeProperties(propertiesById.get(id),
+            property -> entity == null ? null : propertyOf.apply(entity, property), strategy);
+        if (!merged.isEmpty()) {
+          updates.add(toUpdate.apply(id, merged));
         }
       }
+      if (!updates.isEmpty()) {
+        submit.accept(updates);
+        updated += updates.size();
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * @return the properties to set, properties the strategy does not want to change are left out
+   */
+  private Map<String, String> mergeProperties(Map<String, String> newProperties,
+      Function<String, String> currentProperties, PropertyMergeStrategy strategy) {
+    Map<String, String> merged = new HashMap<>();
+    for (Map.Entry<String, String> property : newProperties.entrySet()) {
+      String currentValue = currentProperties.apply(property.getKey());
+      String value = strategy.merge(property.getKey(), currentValue, property.getValue());
+      if (value != null && !value.equals(currentValue)) {
+        merged.put(property.getKey(), value);
+      }
+    }
+    return merged;
+  }
+
+  private static <T> List<List<T>> chunks(Collection<T> items, int size) {
+    List<T> list = new ArrayList<>(items);
+    List<List<T>> chunks = new ArrayList<>();
+    for (int i = 0; i < list.size(); i += size) {
+      chunks.add(list.subList(i, Math.min(i + size, list.size())));
     }
-    openBIS.updateDataSets(Arrays.asList(update));
+    return chunks;
   }
 
   public OpenbisExperimentWithDescendants getExperimentAndDataFromSample(String sampleID) {
@@ -670,13 +1604,11 @@ public class OpenbisConnector {
     Sample sample = samples.get(0);
 
     List<DatasetWithProperties> datasets = new ArrayList<>();
-    Map<String, List<DataSetFile>> datasetCodeToFiles = new HashMap<>();
     for (DataSet dataset : sample.getDataSets()) {
       datasets.add(new DatasetWithProperties(dataset));
-      datasetCodeToFiles.put(dataset.getPermId().getPermId(), getDatasetFiles(dataset));
     }
-    return new OpenbisExperimentWithDescendants(sample.getExperiment(), samples, datasets,
-        datasetCodeToFiles);
+    return new OpenbisExperimentWithDescendants(ExperimentProjection.of(sample.getExperiment()),
+        projectSamples(samples), datasets, projectDatasetFiles(sample.getDataSets()));
   }
 
   public OpenbisExperimentWithDescendants getExperimentStructureFromDataset(String datasetID) {
@@ -706,14 +1638,12 @@ public class OpenbisConnector {
     }
 
     List<DatasetWithProperties> datasets = new ArrayList<>();
-    Map<String, List<DataSetFile>> datasetCodeToFiles = new HashMap<>();
     datasets.add(new DatasetWithProperties(dataset));
-    datasetCodeToFiles.put(dataset.getPermId().getPermId(), getDatasetFiles(dataset));
 
     if(dataset.getExperiment() == null) {
       System.err.println("No experiment found for dataset "+datasetID);
     }
-    return new OpenbisExperimentWithDescendants(dataset.getExperiment(), samples, datasets,
-        datasetCodeToFiles);
+    return new OpenbisExperimentWithDescendants(ExperimentProjection.of(dataset.getExperiment()),
+        projectSamples(samples), datasets, projectDatasetFiles(List.of(dataset)));
   }
 }
@@ -0,0 +1,122 @@
+package life.qbic.model.download;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import life.qbic.App;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stores openBIS session tokens on disk, so subsequent invocations of the scripts can reuse a
+ * session instead of logging in again. Tokens are keyed by application server URL and user. The
+ * file is only readable and writable by the current user.
+ * The cache is enabled by providing a file path via the config file as 'openbis_session_cache'.
+ */
+public class OpenbisSessionCache {
+
+  private static final Logger LOG = LogManager.getLogger(OpenbisSessionCache.class);
+  private static final Set<PosixFilePermission> OWNER_ONLY =
+      PosixFilePermissions.fromString("rw-------");
+  private final Path cacheFile;
+
+  public OpenbisSessionCache(Path cacheFile) {
+    this.cacheFile = cacheFile;
+  }
+
+  /**
+   * Creates a cache from the config file properties, if a cache file is configured.
+   */
+  public static Optional<OpenbisSessionCache> fromConfig() {
+    String file = App.configProperties.get("openbis_session_cache");
+    if (file == null || file.isBlank()) {
+      return Optional.empty();
+    }
+    return Optional.of(new OpenbisSessionCache(Paths.get(file)));
+  }
+
+  /**
+   * @return the session token last stored for this user and application server, if any
+   */
+  public Optional<String> read(String asURL, String user) {
+    return Optional.ofNullable(readTokens().get(key(asURL, user)));
+  }
+
+  /**
+   * Stores the session token of this user and application server, keeping the tokens of other
+   * users and servers.
+   */
+  public synchronized void write(String asURL, String user, String sessionToken) {
+    Map<String, String> tokens = readTokens();
+    tokens.put(key(asURL, user), sessionToken);
+    writeTokens(tokens);
+  }
+
+  /**
+   * Removes the session token of this user and application server, e.g. after it has expired.
+   */
+  public synchronized void remove(String asURL, String user) {
+    Map<String, String> tokens = readTokens();
+    if (tokens.remove(key(asURL, user)) != null) {
+      writeTokens(tokens);
+    }
+  }
+
+  private String key(String asURL, String user) {
+    return user + "@" + asURL;
+  }
+
+  private Map<String, String> readTokens() {
+    if (!Files.isRegularFile(cacheFile)) {
+      return new HashMap<>();
+    }
+    try {
+      return new ObjectMapper().readValue(cacheFile.toFile(),
+          new TypeReference<HashMap<String, String>>() {});
+    } catch (IOException e) {
+      LOG.warn("Could not read openBIS session cache " + cacheFile + ": " + e.getMessage());
+      return new HashMap<>();
+    }
+  }
+
+  private void writeTokens(Map<String, String> tokens) {
+    try {
+      Path parent = cacheFile.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      Path tmp;
+      if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+        tmp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp",
+            PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+      } else {
+        tmp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+        restrictToOwner(tmp);
+      }
+      new ObjectMapper().writeValue(tmp.toFile(), tokens);
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Could not write openBIS session cache " + cacheFile + ": " + e.getMessage());
+    }
+  }
+
+  private void restrictToOwner(Path file) {
+    File asFile = file.toFile();
+    boolean restricted = asFile.setReadable(false, false) && asFile.setReadable(true, true)
+        && asFile.setWritable(false, false) && asFile.setWritable(true, true);
+    if (!restricted) {
+      LOG.warn("Could not restrict access to openBIS session cache " + file);
+    }
+  }
+}
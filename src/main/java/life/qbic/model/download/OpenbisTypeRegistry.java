@@ -0,0 +1,73 @@
+package life.qbic.model.download;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Snapshot of the dataset, sample and experiment type codes known to an openBIS instance. Used to
+ * validate type codes without querying the application server every time.
+ */
+public class OpenbisTypeRegistry {
+
+  @JsonProperty
+  private final String asURL;
+  @JsonProperty
+  private final long loadedAt;
+  @JsonProperty
+  private final Set<String> datasetTypes;
+  @JsonProperty
+  private final Set<String> sampleTypes;
+  @JsonProperty
+  private final Set<String> experimentTypes;
+
+  @JsonCreator
+  public OpenbisTypeRegistry(@JsonProperty("asURL") String asURL,
+      @JsonProperty("loadedAt") long loadedAt,
+      @JsonProperty("datasetTypes") Set<String> datasetTypes,
+      @JsonProperty("sampleTypes") Set<String> sampleTypes,
+      @JsonProperty("experimentTypes") Set<String> experimentTypes) {
+    this.asURL = asURL;
+    this.loadedAt = loadedAt;
+    this.datasetTypes = Collections.unmodifiableSet(new TreeSet<>(datasetTypes));
+    this.sampleTypes = Collections.unmodifiableSet(new TreeSet<>(sampleTypes));
+    this.experimentTypes = Collections.unmodifiableSet(new TreeSet<>(experimentTypes));
+  }
+
+  public String getAsURL() {
+    return asURL;
+  }
+
+  /**
+   * @return the time the types were queried from openBIS, in milliseconds since the epoch
+   */
+  public long getLoadedAt() {
+    return loadedAt;
+  }
+
+  public boolean hasDatasetType(String code) {
+    return datasetTypes.contains(code);
+  }
+
+  public boolean hasSampleType(String code) {
+    return sampleTypes.contains(code);
+  }
+
+  public boolean hasExperimentType(String code) {
+    return experimentTypes.contains(code);
+  }
+
+  public Set<String> getDatasetTypes() {
+    return datasetTypes;
+  }
+
+  public Set<String> getSampleTypes() {
+    return sampleTypes;
+  }
+
+  public Set<String> getExperimentTypes() {
+    return experimentTypes;
+  }
+}
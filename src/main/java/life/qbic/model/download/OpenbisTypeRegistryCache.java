@@ -0,0 +1,95 @@
+package life.qbic.model.download;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Optional;
+import life.qbic.App;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stores an {@link OpenbisTypeRegistry} on disk, so it can be shared by several invocations of the
+ * scripts. A stored registry is only used if it was loaded from the same application server and is
+ * younger than the configured time to live.
+ * The cache is enabled by providing a file path via the config file as 'openbis_type_cache'. The
+ * time to live in minutes can be set as 'openbis_type_cache_ttl' (default: 60).
+ */
+public class OpenbisTypeRegistryCache {
+
+  private static final Logger LOG = LogManager.getLogger(OpenbisTypeRegistryCache.class);
+  private static final long DEFAULT_TTL_MINUTES = 60;
+  private final Path cacheFile;
+  private final Duration timeToLive;
+  private final String asURL;
+
+  public OpenbisTypeRegistryCache(Path cacheFile, Duration timeToLive, String asURL) {
+    this.cacheFile = cacheFile;
+    this.timeToLive = timeToLive;
+    this.asURL = asURL;
+  }
+
+  /**
+   * Creates a cache from the config file properties, if a cache file is configured.
+   * @param asURL the application server the registry belongs to
+   */
+  public static Optional<OpenbisTypeRegistryCache> fromConfig(String asURL) {
+    String file = App.configProperties.get("openbis_type_cache");
+    if (file == null || file.isBlank()) {
+      return Optional.empty();
+    }
+    long ttl = DEFAULT_TTL_MINUTES;
+    String configuredTTL = App.configProperties.get("openbis_type_cache_ttl");
+    if (configuredTTL != null && !configuredTTL.isBlank()) {
+      ttl = Long.parseLong(configuredTTL.trim());
+    }
+    return Optional.of(new OpenbisTypeRegistryCache(Paths.get(file), Duration.ofMinutes(ttl),
+        asURL));
+  }
+
+  public String getAsURL() {
+    return asURL;
+  }
+
+  /**
+   * @return the stored registry, if it exists, belongs to this application server and has not
+   * expired
+   */
+  public Optional<OpenbisTypeRegistry> read() {
+    if (!Files.isRegularFile(cacheFile)) {
+      return Optional.empty();
+    }
+    try {
+      OpenbisTypeRegistry registry = new ObjectMapper()
+          .readValue(cacheFile.toFile(), OpenbisTypeRegistry.class);
+      long age = System.currentTimeMillis() - registry.getLoadedAt();
+      if (!asURL.equals(registry.getAsURL()) || age > timeToLive.toMillis()) {
+        return Optional.empty();
+      }
+      return Optional.of(registry);
+    } catch (IOException e) {
+      LOG.warn("Could not read openBIS type cache " + cacheFile + ": " + e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Stores the registry, replacing the previous file in one step.
+   */
+  public void write(OpenbisTypeRegistry registry) {
+    try {
+      Path parent = cacheFile.toAbsolutePath().getParent();
+      Files.createDirectories(parent);
+      Path tmp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+      new ObjectMapper().writeValue(tmp.toFile(), registry);
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn("Could not write openBIS type cache " + cacheFile + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.common.search.SearchResult;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the results of an openBIS search, requesting one page at a time. The next page is
+ * only requested once all objects of the current one were returned, so at most one page is held
+ * in memory, independent of the total number of results.
+ * The search must use a stable sort order, otherwise objects can be skipped or repeated between
+ * pages.
+ */
+public class PagedIterator<T> implements Iterator<T> {
+
+  /**
+   * Queries one page of a search.
+   */
+  @FunctionalInterface
+  public interface PageQuery<T> {
+
+    SearchResult<T> search(int from, int count);
+  }
+
+  private final PageQuery<T> query;
+  private final int pageSize;
+  private Iterator<T> currentPage = Collections.emptyIterator();
+  private int nextFrom = 0;
+  private boolean lastPageLoaded = false;
+
+  public PagedIterator(PageQuery<T> query, int pageSize) {
+    this.query = query;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!currentPage.hasNext() && !lastPageLoaded) {
+      SearchResult<T> page = query.search(nextFrom, pageSize);
+      List<T> objects = page.getObjects();
+      nextFrom += pageSize;
+      lastPageLoaded = objects.isEmpty() || nextFrom >= page.getTotalCount();
+      currentPage = objects.iterator();
+    }
+    return currentPage.hasNext();
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return currentPage.next();
+  }
+}
@@ -0,0 +1,79 @@
+package life.qbic.model.download;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which value is stored when a property of an openBIS object is updated, based on the
+ * value currently stored and the new value.
+ */
+@FunctionalInterface
+public interface PropertyMergeStrategy {
+
+  /**
+   * @param property the code of the property
+   * @param currentValue the value currently stored, null or empty if the property is not set
+   * @param newValue the new value
+   * @return the value to store, or null if the property should not be changed
+   */
+  String merge(String property, String currentValue, String newValue);
+
+  /**
+   * @return false if the strategy does not look at current values, so they do not need to be
+   * fetched before updating
+   */
+  default boolean needsCurrentValues() {
+    return true;
+  }
+
+  /**
+   * Replaces current values with the new ones.
+   */
+  static PropertyMergeStrategy overwrite() {
+    return new PropertyMergeStrategy() {
+      @Override
+      public String merge(String property, String currentValue, String newValue) {
+        return newValue;
+      }
+
+      @Override
+      public boolean needsCurrentValues() {
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Only sets properties that are not set yet.
+   */
+  static PropertyMergeStrategy keepExisting() {
+    return (property, currentValue, newValue) ->
+        currentValue == null || currentValue.isEmpty() ? newValue : null;
+  }
+
+  /**
+   * Appends the new value to the current one, unless it is blank or already part of the
+   * separated list of current values. If the new value is itself a separated list, every element
+   * is appended this way. Applying the same update twice does not change anything.
+   */
+  static PropertyMergeStrategy appendIfAbsent(String separator) {
+    Pattern split = Pattern.compile(Pattern.quote(separator.trim()));
+    return (property, currentValue, newValue) -> {
+      if (currentValue == null || currentValue.isEmpty()) {
+        return newValue;
+      }
+      Set<String> present = Arrays.stream(split.split(currentValue)).map(String::trim)
+          .collect(Collectors.toCollection(HashSet::new));
+      StringBuilder merged = new StringBuilder(currentValue);
+      for (String value : split.split(newValue)) {
+        if (!value.isBlank() && present.add(value.trim())) {
+          merged.append(separator).append(value.trim());
+        }
+      }
+      return merged.length() == currentValue.length() ? null : merged.toString();
+    };
+  }
+}
@@ -1,6 +1,5 @@
 package life.qbic.model.download;
 
-import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -31,11 +30,13 @@ import life.qbic.model.AssetInformation;
 import life.qbic.model.OpenbisSeekTranslator;
 import life.qbic.model.SampleInformation;
 import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.isa.SeekStructureStream;
 import life.qbic.model.isa.GenericSeekAsset;
 import life.qbic.model.isa.ISAAssay;
 import life.qbic.model.isa.ISASample;
 import life.qbic.model.isa.ISASampleType;
 import life.qbic.model.isa.ISAStudy;
+import life.qbic.model.projection.DatasetFileProjection;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.client.utils.URIBuilder;
@@ -69,6 +70,17 @@ public class SEEKConnector {
     translator = new OpenbisSeekTranslator(openBISBaseURL, DEFAULT_PROJECT_ID);
   }
 
+  /**
+   * Creates a connector without checking the credentials or looking up the default project.
+   */
+  SEEKConnector(String apiURL, byte[] httpCredentials, OpenbisSeekTranslator translator,
+      String defaultProjectID) {
+    this.apiURL = apiURL;
+    this.credentials = httpCredentials;
+    this.translator = translator;
+    this.DEFAULT_PROJECT_ID = defaultProjectID;
+  }
+
   public void testCredentials(String seekUser) throws URISyntaxException, IOException, InterruptedException {
     // Using an endpoint which only logged-in users have access to
     String endpoint = apiURL + "/people/current";
@@ -406,14 +418,14 @@ public class SEEKConnector {
    * @throws InterruptedException
    */
   public List<AssetToUpload> createAssetsForAssays(Map<GenericSeekAsset,
-      DataSetFile> isaToOpenBISFile, List<String> assays)
+      DatasetFileProjection> isaToOpenBISFile, List<String> assays)
       throws IOException, URISyntaxException, InterruptedException {
     List<AssetToUpload> result = new ArrayList<>();
     for (GenericSeekAsset isaFile : isaToOpenBISFile.keySet()) {
       if(!assays.isEmpty()) {
         isaFile.withAssays(assays);
       }
-      result.add(createAsset(isaToOpenBISFile.get(isaFile).getDataSetPermId().getPermId(),
+      result.add(createAsset(isaToOpenBISFile.get(isaFile).getDatasetCode(),
           isaFile));
     }
     return result;
@@ -614,31 +626,18 @@ public class SEEKConnector {
         samplesToCreate.add(newSample);
         System.out.printf("%s not found in SEEK. It will be created.%n", openBisID);
       } else {
-        Map<String, Object> newAttributes = newSample.fetchCopyOfAttributeMap();
-        for (String key : newAttributes.keySet()) {
-          Object newValue = newAttributes.get(key);
-          Object oldValue = existingSample.getAttributes().get(key);
-
-          boolean oldEmpty = oldValue == null || oldValue.toString().isEmpty();
-          boolean newEmpty = newValue == null || newValue.toString().isEmpty();
-          if ((!oldEmpty && !newEmpty) && !newValue.toString().equals(oldValue.toString())) {
-            System.out.printf("Mismatch found in %s attribute of %s. Sample will be updated.%n",
-                key, openBisID);
-            newSample.setAssayIDs(List.of(assayID));
-            updateSample(newSample, existingSample.getSeekID());
-          }
-        }
+        updateSampleIfChanged(newSample, existingSample, openBisID, assayID);
       }
     }
 
     // compare assets
     Map<String, AssetInformation> assetInfos = collectAssetInformation(assayData);
-    Map<GenericSeekAsset, DataSetFile> newAssetsToFiles = nodeWithChildren.getISAFileToDatasetFiles();
+    Map<GenericSeekAsset, DatasetFileProjection> newAssetsToFiles = nodeWithChildren.getISAFileToDatasetFiles();
 
     List<GenericSeekAsset> assetsToCreate = new ArrayList<>();
     for (GenericSeekAsset newAsset : newAssetsToFiles.keySet()) {
-      DataSetFile file = newAssetsToFiles.get(newAsset);
-      String newPermId = file.getDataSetPermId().getPermId();
+      DatasetFileProjection file = newAssetsToFiles.get(newAsset);
+      String newPermId = file.getDatasetCode();
       if (!assetInfos.containsKey(newPermId)) {
         assetsToCreate.add(newAsset);
         System.out.printf("Assets with Dataset PermId %s not found in SEEK. File %s from this "
@@ -654,7 +653,7 @@ public class SEEKConnector {
     List<AssetToUpload> assetsToUpload = new ArrayList<>();
     for (GenericSeekAsset asset : assetsToCreate) {
       asset.withAssays(Collections.singletonList(assayID));
-      assetsToUpload.add(createAsset(newAssetsToFiles.get(asset).getDataSetPermId().getPermId(),
+      assetsToUpload.add(createAsset(newAssetsToFiles.get(asset).getDatasetCode(),
           asset));
     }
     Map<String, Set<String>> datasetIDsWithEndpoints = new HashMap<>();
@@ -682,6 +681,33 @@ public class SEEKConnector {
         return postRegInfo;
   }
 
+  /**
+   * Compares the attributes of a translated sample with those of the existing SEEK sample and
+   * updates the SEEK sample if a non-empty attribute differs.
+   */
+  private void updateSampleIfChanged(ISASample newSample, SampleInformation existingSample,
+      String openBisID, String assayID)
+      throws URISyntaxException, IOException, InterruptedException {
+    boolean changed = false;
+    Map<String, Object> newAttributes = newSample.fetchCopyOfAttributeMap();
+    for (String key : newAttributes.keySet()) {
+      Object newValue = newAttributes.get(key);
+      Object oldValue = existingSample.getAttributes().get(key);
+
+      boolean oldEmpty = oldValue == null || oldValue.toString().isEmpty();
+      boolean newEmpty = newValue == null || newValue.toString().isEmpty();
+      if ((!oldEmpty && !newEmpty) && !newValue.toString().equals(oldValue.toString())) {
+        System.out.printf("Mismatch found in %s attribute of %s. Sample will be updated.%n",
+            key, openBisID);
+        changed = true;
+      }
+    }
+    if (changed) {
+      newSample.setAssayIDs(List.of(assayID));
+      updateSample(newSample, existingSample.getSeekID());
+    }
+  }
+
   private Map<String, AssetInformation> collectAssetInformation(JsonNode assayData)
       throws URISyntaxException, IOException, InterruptedException {
     Map<String, AssetInformation> assets = new HashMap<>();
@@ -784,7 +810,7 @@ public class SEEKConnector {
     }
 
     // compare assets
-    Map<GenericSeekAsset, DataSetFile> newAssetsToFiles = nodeWithChildren.getISAFileToDatasetFiles();
+    Map<GenericSeekAsset, DatasetFileProjection> newAssetsToFiles = nodeWithChildren.getISAFileToDatasetFiles();
 
     //TODO follow creation of assets for assay, no way to be sure these are attached to similar samples
     List<GenericSeekAsset> assetsToCreate = new ArrayList<>();
@@ -797,7 +823,7 @@ public class SEEKConnector {
     List<AssetToUpload> assetsToUpload = new ArrayList<>();
 
     for (GenericSeekAsset asset : assetsToCreate) {
-      assetsToUpload.add(createAsset(newAssetsToFiles.get(asset).getDataSetPermId().getPermId(),
+      assetsToUpload.add(createAsset(newAssetsToFiles.get(asset).getDatasetCode(),
           asset));
     }
     Map<String, Set<String>> datasetIDsWithEndpoints = new HashMap<>();
@@ -887,7 +913,7 @@ public class SEEKConnector {
       sampleIDsWithEndpoints.put(samplesWithReferences.get(sample), sampleEndpoint);
     }
 
-    Map<GenericSeekAsset, DataSetFile> isaToFileMap = nodeWithChildren.getISAFileToDatasetFiles();
+    Map<GenericSeekAsset, DatasetFileProjection> isaToFileMap = nodeWithChildren.getISAFileToDatasetFiles();
 
     if(!isaToFileMap.isEmpty()) {
       System.out.println("Creating assets...");
@@ -915,6 +941,124 @@ public class SEEKConnector {
     return postRegInfo;
   }
 
+  /**
+   * Receives the post registration information of a part of a structure created in SEEK.
+   */
+  @FunctionalInterface
+  public interface PostRegistrationHandler {
+
+    void handle(SeekStructurePostRegistrationInformation postRegInfo)
+        throws URISyntaxException, IOException, InterruptedException;
+  }
+
+  /**
+   * Creates an assay with its samples and assets while the structure is iterated. Every time
+   * windowSize samples or assets were created, their post registration information is passed to
+   * the handler, e.g. to upload data and link the new objects in openBIS, and then dropped. The
+   * first information passed to the handler only contains the new assay. Later windows of samples
+   * contain the openBIS experiment identifier, but not the assay endpoint, so the experiment is
+   * only linked once. Memory use is therefore bounded by the window size, not by the size of the
+   * structure.
+   */
+  public void createNodeIncrementally(SeekStructureStream nodeWithChildren, int windowSize,
+      PostRegistrationHandler handler)
+      throws URISyntaxException, IOException, InterruptedException {
+    System.out.println("Creating assay...");
+    String assayID = addAssay(nodeWithChildren.getAssayWithOpenBISReference().getKey());
+
+    //wait for a bit, so we can be sure the assay that will be referenced by the samples has been created
+    Thread.sleep(3000);
+
+    transferIncrementally(nodeWithChildren, assayID, new HashMap<>(), new HashSet<>(), windowSize,
+        handler);
+  }
+
+  /**
+   * Incremental version of updateAssayNode: samples and assets of the structure are compared to
+   * the existing assay while they are iterated. Missing ones are created, changed samples are
+   * updated, post registration information of new objects is passed to the handler in windows of
+   * windowSize objects, see createNodeIncrementally.
+   */
+  public void updateAssayNodeIncrementally(SeekStructureStream nodeWithChildren, String assayID,
+      int windowSize, PostRegistrationHandler handler)
+      throws URISyntaxException, IOException, InterruptedException {
+    JsonNode assayData = fetchAssayData(assayID).get("data");
+    Map<String, SampleInformation> sampleInfos = collectSampleInformation(assayData);
+    Set<String> datasetsWithAssets = collectAssetInformation(assayData).keySet();
+    transferIncrementally(nodeWithChildren, assayID, sampleInfos, datasetsWithAssets, windowSize,
+        handler);
+  }
+
+  void transferIncrementally(SeekStructureStream nodeWithChildren, String assayID,
+      Map<String, SampleInformation> existingSamples, Set<String> datasetsWithAssets,
+      int windowSize, PostRegistrationHandler handler)
+      throws URISyntaxException, IOException, InterruptedException {
+    String assayEndpoint = apiURL+"/assays/"+assayID;
+    String experimentID = nodeWithChildren.getAssayWithOpenBISReference().getValue();
+    SeekStructurePostRegistrationInformation assayInfo =
+        new SeekStructurePostRegistrationInformation(new ArrayList<>(), new HashMap<>(),
+            new HashMap<>());
+    assayInfo.setExperimentIDWithEndpoint(new ImmutablePair<>(experimentID, assayEndpoint));
+    handler.handle(assayInfo);
+
+    int createdSamples = 0;
+    Map<String, String> sampleIDsWithEndpoints = new HashMap<>();
+    Iterator<Pair<ISASample, String>> samples = nodeWithChildren.getSamplesWithOpenBISReference();
+    while (samples.hasNext()) {
+      Pair<ISASample, String> sampleWithReference = samples.next();
+      ISASample sample = sampleWithReference.getKey();
+      String openBisID = sampleWithReference.getValue();
+      SampleInformation existingSample = existingSamples.get(openBisID);
+      if (existingSample == null) {
+        sample.setAssayIDs(Collections.singletonList(assayID));
+        sampleIDsWithEndpoints.put(openBisID, createSample(sample));
+      } else {
+        updateSampleIfChanged(sample, existingSample, openBisID, assayID);
+      }
+      if (sampleIDsWithEndpoints.size() >= windowSize || !samples.hasNext()) {
+        if (!sampleIDsWithEndpoints.isEmpty()) {
+          createdSamples += sampleIDsWithEndpoints.size();
+          System.out.printf("Created %s samples...%n", createdSamples);
+          SeekStructurePostRegistrationInformation sampleInfo =
+              new SeekStructurePostRegistrationInformation(new ArrayList<>(),
+                  sampleIDsWithEndpoints, new HashMap<>());
+          // the experiment was linked with the assay, link samples only need to be attached to it
+          sampleInfo.setExperimentID(experimentID);
+          handler.handle(sampleInfo);
+        }
+        sampleIDsWithEndpoints = new HashMap<>();
+      }
+    }
+
+    int createdAssets = 0;
+    List<AssetToUpload> assetsToUpload = new ArrayList<>();
+    Iterator<Pair<GenericSeekAsset, DatasetFileProjection>> assets =
+        nodeWithChildren.getISAFileToDatasetFiles();
+    while (assets.hasNext()) {
+      Pair<GenericSeekAsset, DatasetFileProjection> assetWithFile = assets.next();
+      String datasetCode = assetWithFile.getValue().getDatasetCode();
+      if (!datasetsWithAssets.contains(datasetCode)) {
+        GenericSeekAsset asset = assetWithFile.getKey();
+        asset.withAssays(Collections.singletonList(assayID));
+        assetsToUpload.add(createAsset(datasetCode, asset));
+      }
+      if (assetsToUpload.size() >= windowSize || !assets.hasNext()) {
+        if (!assetsToUpload.isEmpty()) {
+          createdAssets += assetsToUpload.size();
+          System.out.printf("Created %s assets...%n", createdAssets);
+          Map<String, Set<String>> datasetIDsWithEndpoints = new HashMap<>();
+          for (AssetToUpload asset : assetsToUpload) {
+            datasetIDsWithEndpoints.computeIfAbsent(asset.getDataSetCode(), k -> new HashSet<>())
+                .add(blobEndpointToAssetURL(asset.getBlobEndpoint()));
+          }
+          handler.handle(new SeekStructurePostRegistrationInformation(assetsToUpload,
+              new HashMap<>(), datasetIDsWithEndpoints));
+        }
+        assetsToUpload = new ArrayList<>();
+      }
+    }
+  }
+
   /*
   public SeekStructurePostRegistrationInformation createSampleWithAssets(SeekStructure nodeWithChildren)
       throws URISyntaxException, IOException, InterruptedException {
@@ -925,7 +1069,7 @@ public class SEEKConnector {
       sampleIDsWithEndpoints.put(samplesWithReferences.get(sample), sampleEndpoint);
     }
 
-    Map<GenericSeekAsset, DataSetFile> isaToFileMap = nodeWithChildren.getISAFileToDatasetFiles();
+    Map<GenericSeekAsset, DatasetFileProjection> isaToFileMap = nodeWithChildren.getISAFileToDatasetFiles();
 
     List<AssetToUpload> assetsToUpload = createAssetsForAssays(isaToFileMap, new ArrayList<>());
 
@@ -946,7 +1090,7 @@ public class SEEKConnector {
   }
 
   public SeekStructurePostRegistrationInformation createStandaloneAssets(
-      Map<GenericSeekAsset, DataSetFile> isaToFileMap)
+      Map<GenericSeekAsset, DatasetFileProjection> isaToFileMap)
       throws IOException, URISyntaxException, InterruptedException {
 
     List<AssetToUpload> assetsToUpload = createAssetsForAssays(isaToFileMap, new ArrayList<>());
@@ -1004,10 +1148,11 @@ public class SEEKConnector {
     }
   }
 
-  public class SeekStructurePostRegistrationInformation {
+  public static class SeekStructurePostRegistrationInformation {
 
     private final List<AssetToUpload> assetsToUpload;
     private Optional<Pair<String, String>> experimentIDWithEndpoint;
+    private Optional<String> experimentID = Optional.empty();
     private final Map<String, String> sampleIDsWithEndpoints;
     private final Map<String, Set<String>> datasetIDsWithEndpoints;
 
@@ -1040,6 +1185,21 @@ public class SEEKConnector {
       return experimentIDWithEndpoint;
     }
 
+    /**
+     * Sets the openBIS experiment the samples belong to, if the experiment itself was already
+     * linked with an earlier part of the structure.
+     */
+    public void setExperimentID(String experimentID) {
+      this.experimentID = Optional.of(experimentID);
+    }
+
+    /**
+     * @return the openBIS experiment the samples belong to, also if it is not linked again
+     */
+    public Optional<String> getExperimentID() {
+      return experimentID.or(() -> experimentIDWithEndpoint.map(Pair::getLeft));
+    }
+
     public Map<String, String> getSampleIDsWithEndpoints() {
       return sampleIDsWithEndpoints;
     }
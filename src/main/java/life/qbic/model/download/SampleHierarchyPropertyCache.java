@@ -0,0 +1,67 @@
+package life.qbic.model.download;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Memoizes which values of a property are found at or above a sample in the sample hierarchy.
+ * Entries are keyed by property code and sample permId, so ancestor trees shared by many samples
+ * only have to be traversed once per run. Counts how often lookups could be answered from the
+ * cache.
+ */
+public class SampleHierarchyPropertyCache {
+
+  private final Map<String, Map<String, Set<String>>> valuesByPropertyAndSample = new HashMap<>();
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * Looks up the values found at or above a sample and counts the lookup as hit or miss.
+   */
+  public Optional<Set<String>> lookup(String propertyName, String samplePermId) {
+    Optional<Set<String>> values = get(propertyName, samplePermId);
+    if (values.isPresent()) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return values;
+  }
+
+  /**
+   * Returns the values found at or above a sample without counting the access.
+   */
+  Optional<Set<String>> get(String propertyName, String samplePermId) {
+    Map<String, Set<String>> valuesBySample = valuesByPropertyAndSample.get(propertyName);
+    if (valuesBySample == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(valuesBySample.get(samplePermId));
+  }
+
+  void store(String propertyName, String samplePermId, Set<String> values) {
+    valuesByPropertyAndSample.computeIfAbsent(propertyName, k -> new HashMap<>())
+        .put(samplePermId, values);
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public double getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d hits, %d misses (%.1f%% hit rate)", hits, misses,
+        getHitRate() * 100);
+  }
+}
@@ -0,0 +1,64 @@
+package life.qbic.model.download;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tab-separated file listing the verification results of the downloaded files of a dataset. It is
+ * stored beside the download folder, or in a separate record folder, named after the download
+ * folder and the dataset code. If files of the same dataset are downloaded into the same folder
+ * several times, the results are merged.
+ */
+public class VerificationManifest {
+
+  private static final String HEADER = String.join("\t", "path", "expected_length", "length",
+      "expected_crc32", "crc32", "attempts", "status");
+  private final Path manifestFile;
+
+  public VerificationManifest(String targetPath, String datasetCode) {
+    this(targetPath, datasetCode, null);
+  }
+
+  /**
+   * @param recordFolder the folder to store the manifest in, the parent of the download folder if
+   *                     null
+   */
+  public VerificationManifest(String targetPath, String datasetCode, Path recordFolder) {
+    Path folder = Paths.get(targetPath).toAbsolutePath().normalize();
+    Path parent = recordFolder != null ? recordFolder : folder.getParent();
+    this.manifestFile = parent.resolve(
+        folder.getFileName() + "_" + datasetCode + "_verification.tsv");
+  }
+
+  public Path getPath() {
+    return manifestFile;
+  }
+
+  /**
+   * Adds the results to the manifest, replacing earlier results for the same files.
+   */
+  public void write(List<VerifiedFile> results) throws IOException {
+    Map<String, String> linesByPath = new TreeMap<>();
+    if (Files.isRegularFile(manifestFile)) {
+      for (String line : Files.readAllLines(manifestFile)) {
+        if (!line.equals(HEADER) && !line.isBlank()) {
+          linesByPath.put(line.split("\t")[0], line);
+        }
+      }
+    }
+    for (VerifiedFile result : results) {
+      linesByPath.put(result.getPath(), result.toManifestLine());
+    }
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    lines.addAll(linesByPath.values());
+    Files.createDirectories(manifestFile.getParent());
+    Files.write(manifestFile, lines);
+  }
+}
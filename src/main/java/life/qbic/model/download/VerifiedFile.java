@@ -0,0 +1,77 @@
+package life.qbic.model.download;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+
+/**
+ * Result of downloading a single dataset file: the length and CRC32 checksum computed while the
+ * file was written, compared to the values stored in openBIS. openBIS reports a checksum of 0 for
+ * files it has no checksum for, only the length of these files is verified.
+ */
+public class VerifiedFile {
+
+  private final String path;
+  private final long expectedLength;
+  private final int expectedChecksum;
+  private final long length;
+  private final int checksum;
+  private final int attempts;
+
+  public VerifiedFile(DataSetFile file, long length, int checksum, int attempts) {
+    this.path = file.getPath();
+    this.expectedLength = file.getFileLength();
+    this.expectedChecksum = file.getChecksumCRC32();
+    this.length = length;
+    this.checksum = checksum;
+    this.attempts = attempts;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public int getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * @return the number of download attempts, 0 if the file was verified by an earlier download
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * @return false if openBIS has no checksum for the file
+   */
+  public boolean hasExpectedChecksum() {
+    return expectedChecksum != 0;
+  }
+
+  public boolean isValid() {
+    return length == expectedLength && (!hasExpectedChecksum() || checksum == expectedChecksum);
+  }
+
+  /**
+   * @return a tab-separated line of path, expected and actual length and checksum, number of
+   * attempts and the verification status
+   */
+  public String toManifestLine() {
+    return String.join("\t", path, Long.toString(expectedLength), Long.toString(length),
+        formatExpectedChecksum(), String.format("%08x", checksum),
+        Integer.toString(attempts), isValid() ? "OK" : "FAILED");
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: expected %s bytes (CRC32 %s), got %s bytes (CRC32 %08x)", path,
+        expectedLength, formatExpectedChecksum(), length, checksum);
+  }
+
+  private String formatExpectedChecksum() {
+    return hasExpectedChecksum() ? String.format("%08x", expectedChecksum) : "-";
+  }
+}
@@ -0,0 +1,787 @@
+package life.qbic.model.index;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.DataSet;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.person.Person;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.SampleType;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import life.qbic.App;
+import life.qbic.model.SampleTypeConnection;
+import life.qbic.model.SampleTypeConnectionCounts;
+import life.qbic.model.download.OpenbisTypeRegistry;
+
+/**
+ * Local snapshot of the metadata of an openBIS instance: spaces, projects, experiments, samples
+ * with their parent and child samples, datasets and optionally the files of datasets. The index
+ * is stored as compressed JSON and allows commands to answer queries without connecting to
+ * openBIS (--offline).
+ * The location of the index can be set via the config file as 'metadata_index' (default:
+ * metadata_index.json.gz in the working directory).
+ */
+@JsonInclude(Include.NON_NULL)
+public class MetadataIndex {
+
+  private static final String DEFAULT_FILE_NAME = "metadata_index.json.gz";
+
+  @JsonProperty
+  private final String asURL;
+  @JsonProperty
+  private final long builtAt;
+  @JsonProperty
+  private long watermark;
+  @JsonProperty
+  private final boolean withFiles;
+  @JsonProperty
+  private final Set<String> spaces;
+  @JsonProperty
+  private final Set<String> projects;
+  @JsonProperty
+  private final OpenbisTypeRegistry types;
+  @JsonProperty
+  private final Map<String, IndexedExperiment> experiments;
+  @JsonProperty
+  private final Map<String, IndexedSample> samples;
+  @JsonProperty
+  private final Map<String, IndexedDataset> datasets;
+
+  @JsonIgnore
+  private Lookups lookups;
+
+  @JsonCreator
+  public MetadataIndex(@JsonProperty("asURL") String asURL,
+      @JsonProperty("builtAt") long builtAt,
+      @JsonProperty("watermark") long watermark,
+      @JsonProperty("withFiles") boolean withFiles,
+      @JsonProperty("spaces") Collection<String> spaces,
+      @JsonProperty("projects") Collection<String> projects,
+      @JsonProperty("types") OpenbisTypeRegistry types,
+      @JsonProperty("experiments") Map<String, IndexedExperiment> experiments,
+      @JsonProperty("samples") Map<String, IndexedSample> samples,
+      @JsonProperty("datasets") Map<String, IndexedDataset> datasets) {
+    this.asURL = asURL;
+    this.builtAt = builtAt;
+    this.watermark = watermark;
+    this.withFiles = withFiles;
+    this.spaces = new TreeSet<>(spaces);
+    this.projects = new TreeSet<>(projects);
+    this.types = types;
+    this.experiments = new TreeMap<>(experiments);
+    this.samples = new TreeMap<>(samples);
+    this.datasets = new TreeMap<>(datasets);
+  }
+
+  /**
+   * @return the configured location of the index file
+   */
+  public static Path location() {
+    String configured = App.configProperties.get("metadata_index");
+    if (configured != null && !configured.isBlank()) {
+      return Paths.get(configured.trim());
+    }
+    return Paths.get(System.getProperty("user.dir"), DEFAULT_FILE_NAME);
+  }
+
+  /**
+   * Reads the index from its configured location, for commands running in offline mode.
+   */
+  public static MetadataIndex load() {
+    Path location = location();
+    if (!Files.isRegularFile(location)) {
+      throw new RuntimeException("No metadata index found at " + location + ". Create it using "
+          + "the index command.");
+    }
+    try {
+      MetadataIndex index = read(location);
+      System.out.printf("Using metadata index of %s, created %s%n", index.getAsURL(),
+          new Date(index.getBuiltAt()));
+      return index;
+    } catch (IOException e) {
+      throw new RuntimeException("Could not read metadata index " + location, e);
+    }
+  }
+
+  public static MetadataIndex read(Path file) throws IOException {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      return new ObjectMapper().readValue(in, MetadataIndex.class);
+    }
+  }
+
+  /**
+   * Writes the index, replacing a previous index file in one step.
+   */
+  public synchronized void write(Path file) throws IOException {
+    Path folder = file.toAbsolutePath().getParent();
+    Files.createDirectories(folder);
+    Path tmp = Files.createTempFile(folder, file.getFileName().toString(), ".tmp");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+      new ObjectMapper().writeValue(out, this);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public String getAsURL() {
+    return asURL;
+  }
+
+  /**
+   * @return the time the index was created, in milliseconds since the epoch
+   */
+  public long getBuiltAt() {
+    return builtAt;
+  }
+
+  /**
+   * @return the time up to which all changes in openBIS are included in the index, in
+   * milliseconds since the epoch. Incremental refreshes query objects modified since then.
+   */
+  public synchronized long getWatermark() {
+    return watermark;
+  }
+
+  public synchronized void setWatermark(long watermark) {
+    this.watermark = watermark;
+  }
+
+  /**
+   * @return true if the index contains the files of datasets
+   */
+  public boolean isWithFiles() {
+    return withFiles;
+  }
+
+  /**
+   * Adds an experiment or replaces the indexed version of it.
+   */
+  public synchronized void upsertExperiment(IndexedExperiment experiment) {
+    experiments.put(experiment.getPermId(), experiment);
+    projects.add(experiment.getProject());
+    lookups = null;
+  }
+
+  /**
+   * Adds a sample or replaces the indexed version of it. Parent and child lists of indexed
+   * samples that were added to or removed from the hierarchy of the sample are updated as well.
+   */
+  public synchronized void upsertSample(IndexedSample sample) {
+    IndexedSample previous = samples.put(sample.getPermId(), sample);
+    List<String> previousParents = previous == null ? List.of() : previous.getParents();
+    List<String> previousChildren = previous == null ? List.of() : previous.getChildren();
+    String permId = sample.getPermId();
+    for (String parent : previousParents) {
+      if (!sample.getParents().contains(parent)) {
+        samples.computeIfPresent(parent, (k, p) -> p.withoutChild(permId));
+      }
+    }
+    for (String parent : sample.getParents()) {
+      samples.computeIfPresent(parent, (k, p) -> p.withChild(permId));
+    }
+    for (String child : previousChildren) {
+      if (!sample.getChildren().contains(child)) {
+        samples.computeIfPresent(child, (k, c) -> c.withoutParent(permId));
+      }
+    }
+    for (String child : sample.getChildren()) {
+      samples.computeIfPresent(child, (k, c) -> c.withParent(permId));
+    }
+    lookups = null;
+  }
+
+  /**
+   * Adds a dataset or replaces the indexed version of it.
+   */
+  public synchronized void upsertDataset(IndexedDataset dataset) {
+    datasets.put(dataset.getCode(), dataset);
+    lookups = null;
+  }
+
+  public List<String> getSpaces() {
+    return new ArrayList<>(spaces);
+  }
+
+  public Set<String> getProjects() {
+    return Collections.unmodifiableSet(projects);
+  }
+
+  /**
+   * @return the entity types of the instance at the time the index was created
+   */
+  public OpenbisTypeRegistry getTypes() {
+    return types;
+  }
+
+  public int countExperiments() {
+    return experiments.size();
+  }
+
+  public int countSamples() {
+    return samples.size();
+  }
+
+  public int countDatasets() {
+    return datasets.size();
+  }
+
+  /**
+   * @return the number of experiments by space and type
+   */
+  public Map<String, Map<String, Integer>> countExperimentsByTypeAndSpace(
+      Collection<String> spaces) {
+    return countByTypeAndSpace(experiments.values(), IndexedExperiment::getSpace,
+        IndexedExperiment::getType, spaces);
+  }
+
+  /**
+   * @return the number of samples by space and type
+   */
+  public Map<String, Map<String, Integer>> countSamplesByTypeAndSpace(Collection<String> spaces) {
+    return countByTypeAndSpace(samples.values(), IndexedSample::getSpace, IndexedSample::getType,
+        spaces);
+  }
+
+  /**
+   * @return the number of datasets by space and type
+   */
+  public Map<String, Map<String, Integer>> countDatasetsByTypeAndSpace(Collection<String> spaces) {
+    return countByTypeAndSpace(datasets.values(), IndexedDataset::getSpace,
+        IndexedDataset::getType, spaces);
+  }
+
+  private <T> Map<String, Map<String, Integer>> countByTypeAndSpace(Collection<T> entities,
+      Function<T, String> spaceOf, Function<T, String> typeOf, Collection<String> spaces) {
+    Map<String, Map<String, Integer>> result = new HashMap<>();
+    for (T entity : entities) {
+      String space = spaceOf.apply(entity);
+      if (spaces.contains(space)) {
+        result.computeIfAbsent(space, k -> new HashMap<>())
+            .merge(typeOf.apply(entity), 1, Integer::sum);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Counts how often sample types are connected via parent-child relationships, like
+   * OpenbisConnector.queryFullSampleHierarchy. Children outside the indexed spaces are not
+   * counted.
+   * @param spaces the spaces to count samples of, all indexed spaces are used if it is empty
+   */
+  public Map<SampleTypeConnection, Integer> countSampleTypeConnections(Collection<String> spaces) {
+    Collection<String> counted = spaces.isEmpty() ? this.spaces : spaces;
+    Map<String, SampleType> sampleTypes = new HashMap<>();
+    SampleTypeConnectionCounts counts = new SampleTypeConnectionCounts();
+    for (IndexedSample sample : samples.values()) {
+      if (!counted.contains(sample.getSpace())) {
+        continue;
+      }
+      SampleType parentType = sampleTypes.computeIfAbsent(sample.getType(),
+          MetadataIndex::sampleType);
+      List<IndexedSample> children = sample.getChildren().stream().map(samples::get)
+          .filter(child -> child != null).collect(Collectors.toList());
+      if (children.isEmpty()) {
+        counts.incrementLeaf(parentType);
+      }
+      for (IndexedSample child : children) {
+        counts.incrementConnection(parentType,
+            sampleTypes.computeIfAbsent(child.getType(), MetadataIndex::sampleType));
+      }
+    }
+    return counts.toConnectionMap();
+  }
+
+  private static SampleType sampleType(String code) {
+    SampleType type = new SampleType();
+    type.setCode(code);
+    return type;
+  }
+
+  public Map<String, List<IndexedExperiment>> getExperimentsBySpace(Collection<String> spaces) {
+    return experiments.values().stream().filter(e -> spaces.contains(e.getSpace()))
+        .collect(Collectors.groupingBy(IndexedExperiment::getSpace));
+  }
+
+  public Map<String, List<IndexedSample>> getSamplesBySpace(Collection<String> spaces) {
+    return samples.values().stream().filter(s -> spaces.contains(s.getSpace()))
+        .collect(Collectors.groupingBy(IndexedSample::getSpace));
+  }
+
+  /**
+   * Finds the datasets of experiments with the provided code.
+   * @param spaces the spaces to search in, all spaces are searched if it is empty
+   */
+  public List<IndexedDataset> findDatasetsOfExperiment(Collection<String> spaces,
+      String experimentCode) {
+    return filterBySpace(getLookups().datasetsByExperimentCode.getOrDefault(experimentCode,
+        Collections.emptyList()), spaces);
+  }
+
+  /**
+   * Finds the datasets of samples with the provided code.
+   * @param spaces the spaces to search in, all spaces are searched if it is empty
+   */
+  public List<IndexedDataset> findDatasetsOfSample(Collection<String> spaces,
+      String sampleCode) {
+    return filterBySpace(getLookups().datasetsBySampleCode.getOrDefault(sampleCode,
+        Collections.emptyList()), spaces);
+  }
+
+  private List<IndexedDataset> filterBySpace(List<IndexedDataset> found,
+      Collection<String> spaces) {
+    if (spaces.isEmpty()) {
+      return new ArrayList<>(found);
+    }
+    return found.stream().filter(d -> spaces.contains(d.getSpace())).collect(Collectors.toList());
+  }
+
+  /**
+   * Collects the values of a property found in the samples of an experiment and all of their
+   * ancestors, like OpenbisConnector.findPropertiesInSampleHierarchy.
+   */
+  public Set<String> findPropertiesInSampleHierarchy(String propertyName,
+      String experimentIdentifier) {
+    Set<String> found = new HashSet<>();
+    Set<String> visited = new HashSet<>();
+    Deque<String> toVisit = new ArrayDeque<>(getLookups().samplesByExperiment
+        .getOrDefault(experimentIdentifier, Collections.emptyList()));
+    while (!toVisit.isEmpty()) {
+      String permId = toVisit.poll();
+      IndexedSample sample = samples.get(permId);
+      if (sample == null || !visited.add(permId)) {
+        continue;
+      }
+      String value = sample.getProperties().get(propertyName);
+      if (value != null) {
+        found.add(value);
+      }
+      toVisit.addAll(sample.getParents());
+    }
+    return found;
+  }
+
+  /**
+   * Lookup tables are created on first use, they are not stored in the index file.
+   */
+  private synchronized Lookups getLookups() {
+    if (lookups == null) {
+      lookups = new Lookups();
+      for (IndexedDataset dataset : datasets.values()) {
+        if (dataset.getExperiment() != null) {
+          lookups.datasetsByExperimentCode.computeIfAbsent(lastPart(dataset.getExperiment()),
+              k -> new ArrayList<>()).add(dataset);
+        }
+        if (dataset.getSample() != null) {
+          lookups.datasetsBySampleCode.computeIfAbsent(lastPart(dataset.getSample()),
+              k -> new ArrayList<>()).add(dataset);
+        }
+      }
+      for (IndexedSample sample : samples.values()) {
+        if (sample.getExperiment() != null) {
+          lookups.samplesByExperiment.computeIfAbsent(sample.getExperiment(),
+              k -> new ArrayList<>()).add(sample.getPermId());
+        }
+      }
+    }
+    return lookups;
+  }
+
+  private static String lastPart(String identifier) {
+    return identifier.substring(identifier.lastIndexOf('/') + 1);
+  }
+
+  private static class Lookups {
+
+    private final Map<String, List<IndexedDataset>> datasetsByExperimentCode = new HashMap<>();
+    private final Map<String, List<IndexedDataset>> datasetsBySampleCode = new HashMap<>();
+    private final Map<String, List<String>> samplesByExperiment = new HashMap<>();
+  }
+
+  /**
+   * An indexed experiment with its type, space and project.
+   */
+  @JsonInclude(Include.NON_NULL)
+  public static class IndexedExperiment {
+
+    @JsonProperty
+    private final String permId;
+    @JsonProperty
+    private final String identifier;
+    @JsonProperty
+    private final String type;
+    @JsonProperty
+    private final String space;
+    @JsonProperty
+    private final String project;
+    @JsonProperty
+    private final long modified;
+
+    @JsonCreator
+    public IndexedExperiment(@JsonProperty("permId") String permId,
+        @JsonProperty("identifier") String identifier, @JsonProperty("type") String type,
+        @JsonProperty("space") String space, @JsonProperty("project") String project,
+        @JsonProperty("modified") long modified) {
+      this.permId = permId;
+      this.identifier = identifier;
+      this.type = type;
+      this.space = space;
+      this.project = project;
+      this.modified = modified;
+    }
+
+    /**
+     * @param experiment an experiment fetched with type and project (including space)
+     */
+    public static IndexedExperiment of(Experiment experiment) {
+      return new IndexedExperiment(experiment.getPermId().getPermId(),
+          experiment.getIdentifier().getIdentifier(), experiment.getType().getCode(),
+          experiment.getProject().getSpace().getCode(),
+          experiment.getProject().getIdentifier().getIdentifier(),
+          timeOf(experiment.getModificationDate()));
+    }
+
+    public String getPermId() {
+      return permId;
+    }
+
+    public String getIdentifier() {
+      return identifier;
+    }
+
+    @JsonIgnore
+    public String getCode() {
+      return lastPart(identifier);
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public String getSpace() {
+      return space;
+    }
+
+    public String getProject() {
+      return project;
+    }
+
+    public long getModified() {
+      return modified;
+    }
+  }
+
+  /**
+   * An indexed sample with its type, properties and the perm ids of its parents and children.
+   */
+  @JsonInclude(Include.NON_EMPTY)
+  public static class IndexedSample {
+
+    @JsonProperty
+    private final String permId;
+    @JsonProperty
+    private final String identifier;
+    @JsonProperty
+    private final String type;
+    @JsonProperty
+    private final String space;
+    @JsonProperty
+    private final String experiment;
+    @JsonProperty
+    private final List<String> parents;
+    @JsonProperty
+    private final List<String> children;
+    @JsonProperty
+    private final Map<String, String> properties;
+    @JsonProperty
+    private final long modified;
+
+    @JsonCreator
+    public IndexedSample(@JsonProperty("permId") String permId,
+        @JsonProperty("identifier") String identifier, @JsonProperty("type") String type,
+        @JsonProperty("space") String space, @JsonProperty("experiment") String experiment,
+        @JsonProperty("parents") List<String> parents,
+        @JsonProperty("children") List<String> children,
+        @JsonProperty("properties") Map<String, String> properties,
+        @JsonProperty("modified") long modified) {
+      this.permId = permId;
+      this.identifier = identifier;
+      this.type = type;
+      this.space = space;
+      this.experiment = experiment;
+      this.parents = parents == null ? Collections.emptyList() : parents;
+      this.children = children == null ? Collections.emptyList() : children;
+      this.properties = properties == null ? Collections.emptyMap() : properties;
+      this.modified = modified;
+    }
+
+    /**
+     * @param sample a sample fetched with type, space, experiment, parents, children and
+     *               properties
+     */
+    public static IndexedSample of(Sample sample) {
+      return new IndexedSample(sample.getPermId().getPermId(),
+          sample.getIdentifier().getIdentifier(), sample.getType().getCode(),
+          sample.getSpace().getCode(),
+          sample.getExperiment() == null ? null
+              : sample.getExperiment().getIdentifier().getIdentifier(),
+          sample.getParents().stream().map(s -> s.getPermId().getPermId())
+              .collect(Collectors.toList()),
+          sample.getChildren().stream().map(s -> s.getPermId().getPermId())
+              .collect(Collectors.toList()),
+          new HashMap<>(sample.getProperties()),
+          timeOf(sample.getModificationDate()));
+    }
+
+    private IndexedSample withEdges(List<String> parents, List<String> children) {
+      return new IndexedSample(permId, identifier, type, space, experiment, parents, children,
+          properties, modified);
+    }
+
+    IndexedSample withParent(String parent) {
+      if (parents.contains(parent)) {
+        return this;
+      }
+      List<String> newParents = new ArrayList<>(parents);
+      newParents.add(parent);
+      return withEdges(newParents, children);
+    }
+
+    IndexedSample withoutParent(String parent) {
+      List<String> newParents = new ArrayList<>(parents);
+      return newParents.remove(parent) ? withEdges(newParents, children) : this;
+    }
+
+    IndexedSample withChild(String child) {
+      if (children.contains(child)) {
+        return this;
+      }
+      List<String> newChildren = new ArrayList<>(children);
+      newChildren.add(child);
+      return withEdges(parents, newChildren);
+    }
+
+    IndexedSample withoutChild(String child) {
+      List<String> newChildren = new ArrayList<>(children);
+      return newChildren.remove(child) ? withEdges(parents, newChildren) : this;
+    }
+
+    public String getPermId() {
+      return permId;
+    }
+
+    public String getIdentifier() {
+      return identifier;
+    }
+
+    @JsonIgnore
+    public String getCode() {
+      return lastPart(identifier);
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public String getSpace() {
+      return space;
+    }
+
+    public String getExperiment() {
+      return experiment;
+    }
+
+    public List<String> getParents() {
+      return parents;
+    }
+
+    public List<String> getChildren() {
+      return children;
+    }
+
+    public Map<String, String> getProperties() {
+      return properties;
+    }
+
+    public long getModified() {
+      return modified;
+    }
+  }
+
+  /**
+   * An indexed dataset with the experiment and sample it is attached to and optionally its files.
+   */
+  @JsonInclude(Include.NON_EMPTY)
+  public static class IndexedDataset {
+
+    @JsonProperty
+    private final String code;
+    @JsonProperty
+    private final String type;
+    @JsonProperty
+    private final String space;
+    @JsonProperty
+    private final String experiment;
+    @JsonProperty
+    private final String sample;
+    @JsonProperty
+    private final String registrator;
+    @JsonProperty
+    private final long registered;
+    @JsonProperty
+    private final long modified;
+    @JsonProperty
+    private final List<IndexedFile> files;
+
+    @JsonCreator
+    public IndexedDataset(@JsonProperty("code") String code, @JsonProperty("type") String type,
+        @JsonProperty("space") String space, @JsonProperty("experiment") String experiment,
+        @JsonProperty("sample") String sample, @JsonProperty("registrator") String registrator,
+        @JsonProperty("registered") long registered, @JsonProperty("modified") long modified,
+        @JsonProperty("files") List<IndexedFile> files) {
+      this.code = code;
+      this.type = type;
+      this.space = space;
+      this.experiment = experiment;
+      this.sample = sample;
+      this.registrator = registrator;
+      this.registered = registered;
+      this.modified = modified;
+      this.files = files == null ? Collections.emptyList() : files;
+    }
+
+    /**
+     * @param dataSet a dataset fetched with type, registrator, sample (including space) and
+     *                experiment (including project and space)
+     */
+    public static IndexedDataset of(DataSet dataSet) {
+      String space = dataSet.getSample() != null ? dataSet.getSample().getSpace().getCode()
+          : dataSet.getExperiment().getProject().getSpace().getCode();
+      Person person = dataSet.getRegistrator();
+      return new IndexedDataset(dataSet.getCode(), dataSet.getType().getCode(), space,
+          dataSet.getExperiment() == null ? null
+              : dataSet.getExperiment().getIdentifier().getIdentifier(),
+          dataSet.getSample() == null ? null : dataSet.getSample().getIdentifier().getIdentifier(),
+          person == null ? null : person.getFirstName() + " " + person.getLastName(),
+          timeOf(dataSet.getRegistrationDate()), timeOf(dataSet.getModificationDate()),
+          Collections.emptyList());
+    }
+
+    /**
+     * @return a copy of this dataset with the provided files
+     */
+    public IndexedDataset withFiles(List<DataSetFile> dataSetFiles) {
+      return new IndexedDataset(code, type, space, experiment, sample, registrator, registered,
+          modified, dataSetFiles.stream().filter(file -> !file.isDirectory())
+          .map(file -> new IndexedFile(file.getPath(), file.getFileLength(),
+              file.getChecksumCRC32()))
+          .collect(Collectors.toList()));
+    }
+
+    public String getCode() {
+      return code;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public String getSpace() {
+      return space;
+    }
+
+    /**
+     * @return the identifier of the experiment of the dataset, can be null
+     */
+    public String getExperiment() {
+      return experiment;
+    }
+
+    /**
+     * @return the identifier of the sample of the dataset, can be null
+     */
+    public String getSample() {
+      return sample;
+    }
+
+    public String getRegistrator() {
+      return registrator;
+    }
+
+    public long getRegistered() {
+      return registered;
+    }
+
+    public long getModified() {
+      return modified;
+    }
+
+    public List<IndexedFile> getFiles() {
+      return files;
+    }
+  }
+
+  /**
+   * A file of an indexed dataset with its size and CRC32 checksum.
+   */
+  public static class IndexedFile {
+
+    @JsonProperty
+    private final String path;
+    @JsonProperty
+    private final long length;
+    @JsonProperty
+    private final int checksumCRC32;
+
+    @JsonCreator
+    public IndexedFile(@JsonProperty("path") String path, @JsonProperty("length") long length,
+        @JsonProperty("checksumCRC32") int checksumCRC32) {
+      this.path = path;
+      this.length = length;
+      this.checksumCRC32 = checksumCRC32;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public int getChecksumCRC32() {
+      return checksumCRC32;
+    }
+  }
+
+  private static long timeOf(Date date) {
+    return date == null ? 0 : date.getTime();
+  }
+}
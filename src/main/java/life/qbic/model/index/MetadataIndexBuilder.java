@@ -0,0 +1,180 @@
+package life.qbic.model.index;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.common.search.SearchResult;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.index.MetadataIndex.IndexedDataset;
+import life.qbic.model.index.MetadataIndex.IndexedExperiment;
+import life.qbic.model.index.MetadataIndex.IndexedSample;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Creates a metadata index by crawling openBIS. Experiments, samples and datasets of every space
+ * are searched page by page. The first page of every search tells how many pages there are, the
+ * remaining pages are then requested in parallel. File listings are requested for batches of
+ * datasets, also in parallel.
+ * Existing indexes can be refreshed incrementally, using the same searches restricted to objects
+ * modified since the last build or refresh.
+ */
+public class MetadataIndexBuilder {
+
+  private static final Logger LOG = LogManager.getLogger(MetadataIndexBuilder.class);
+  private static final int PAGE_SIZE = 5000;
+  private static final int FILE_BATCH_SIZE = 100;
+  private static final long CLOCK_SKEW_MARGIN = 5 * 60 * 1000;
+
+  private final OpenbisConnector openbis;
+  private final int threads;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  public MetadataIndexBuilder(OpenbisConnector openbis, int threads) {
+    this.openbis = openbis;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Queries one page of a search.
+   */
+  interface PageQuery<T> {
+
+    SearchResult<T> search(int from, int count);
+  }
+
+  /**
+   * Crawls all experiments, samples and datasets of the provided spaces.
+   * @param asURL the application server the index is created for
+   * @param spaces the spaces to index
+   * @param withFiles true if the file listings of datasets should be indexed
+   */
+  public MetadataIndex build(String asURL, List<String> spaces, boolean withFiles) {
+    long start = System.currentTimeMillis();
+    Map<String, IndexedExperiment> experiments = new ConcurrentHashMap<>();
+    Map<String, IndexedSample> samples = new ConcurrentHashMap<>();
+    Map<String, IndexedDataset> datasets = new ConcurrentHashMap<>();
+    crawl(spaces, null, withFiles, experiments::put, samples::put, datasets);
+    System.out.printf("Found %s experiments, %s samples and %s datasets in %s spaces.%n",
+        experiments.size(), samples.size(), datasets.size(), spaces.size());
+    List<String> projects = new ArrayList<>();
+    experiments.values().forEach(e -> projects.add(e.getProject()));
+    MetadataIndex index = new MetadataIndex(asURL, start, start, withFiles, spaces, projects,
+        openbis.getTypeRegistry(), experiments, samples, datasets);
+    LOG.info(String.format("Created metadata index with %s requests in %s ms", requests.get(),
+        System.currentTimeMillis() - start));
+    return index;
+  }
+
+  /**
+   * Updates an index with the experiments, samples and datasets of its spaces that were
+   * registered or modified since its watermark. Changed objects replace their indexed versions,
+   * parent-child edges of samples are updated on both sides. The watermark is moved to the start
+   * of the refresh, so changes made while it runs are found again by the next refresh.
+   * Objects deleted in openBIS are only removed by creating a new index.
+   * @return the number of added or updated objects
+   */
+  public int refresh(MetadataIndex index) {
+    long start = System.currentTimeMillis();
+    // the watermark is based on the local clock, the overlap covers a clock difference to the
+    // application server. Objects found again are simply replaced.
+    Date since = new Date(index.getWatermark() - CLOCK_SKEW_MARGIN);
+    Map<String, IndexedExperiment> experiments = new ConcurrentHashMap<>();
+    Map<String, IndexedSample> samples = new ConcurrentHashMap<>();
+    Map<String, IndexedDataset> datasets = new ConcurrentHashMap<>();
+    crawl(index.getSpaces(), since, index.isWithFiles(), experiments::put, samples::put,
+        datasets);
+    experiments.values().forEach(index::upsertExperiment);
+    samples.values().forEach(index::upsertSample);
+    datasets.values().forEach(index::upsertDataset);
+    index.setWatermark(start);
+    LOG.info(String.format("Refreshed metadata index with %s requests in %s ms", requests.get(),
+        System.currentTimeMillis() - start));
+    return experiments.size() + samples.size() + datasets.size();
+  }
+
+  private void crawl(List<String> spaces, Date since, boolean withFiles,
+      BiConsumer<String, IndexedExperiment> experiments,
+      BiConsumer<String, IndexedSample> samples, Map<String, IndexedDataset> datasets) {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<CompletableFuture<Void>> crawls = new ArrayList<>();
+      for (String space : spaces) {
+        crawls.add(crawlPages(pool, (from, count) ->
+                openbis.searchExperimentsOfSpace(space, since, from, count),
+            page -> page.forEach(e -> experiments.accept(e.getPermId().getPermId(),
+                IndexedExperiment.of(e)))));
+        crawls.add(crawlPages(pool, (from, count) ->
+                openbis.searchSamplesOfSpace(space, since, from, count),
+            page -> page.forEach(s -> samples.accept(s.getPermId().getPermId(),
+                IndexedSample.of(s)))));
+        crawls.add(crawlPages(pool, (from, count) ->
+                openbis.searchDatasetsOfSpace(space, since, from, count),
+            page -> page.forEach(d -> datasets.put(d.getCode(), IndexedDataset.of(d)))));
+      }
+      await(crawls);
+      if (withFiles && !datasets.isEmpty()) {
+        System.out.printf("Listing files of %s datasets...%n", datasets.size());
+        await(listFiles(pool, datasets));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Requests the first page of a search and, once the number of results is known, all remaining
+   * pages at the same time. Every page is passed to the consumer as soon as it is received.
+   */
+  private <T> CompletableFuture<Void> crawlPages(ExecutorService pool, PageQuery<T> query,
+      Consumer<List<T>> pageConsumer) {
+    return CompletableFuture.supplyAsync(() -> search(query, 0), pool).thenCompose(first -> {
+      pageConsumer.accept(first.getObjects());
+      List<CompletableFuture<Void>> pages = new ArrayList<>();
+      for (int from = PAGE_SIZE; from < first.getTotalCount(); from += PAGE_SIZE) {
+        int pageStart = from;
+        pages.add(CompletableFuture.supplyAsync(() -> search(query, pageStart), pool)
+            .thenAccept(page -> pageConsumer.accept(page.getObjects())));
+      }
+      return CompletableFuture.allOf(pages.toArray(new CompletableFuture[0]));
+    });
+  }
+
+  private <T> SearchResult<T> search(PageQuery<T> query, int from) {
+    requests.incrementAndGet();
+    return query.search(from, PAGE_SIZE);
+  }
+
+  private List<CompletableFuture<Void>> listFiles(ExecutorService pool,
+      Map<String, IndexedDataset> datasets) {
+    List<String> codes = new ArrayList<>(datasets.keySet());
+    Collections.sort(codes);
+    List<CompletableFuture<Void>> listings = new ArrayList<>();
+    for (int i = 0; i < codes.size(); i += FILE_BATCH_SIZE) {
+      List<String> batch = codes.subList(i, Math.min(codes.size(), i + FILE_BATCH_SIZE));
+      listings.add(CompletableFuture.runAsync(() -> {
+        requests.incrementAndGet();
+        Map<String, List<DataSetFile>> files = openbis.listFilesOfDatasets(batch);
+        for (String code : batch) {
+          datasets.computeIfPresent(code, (k, dataset) ->
+              dataset.withFiles(files.getOrDefault(code, Collections.emptyList())));
+        }
+      }, pool));
+    }
+    return listings;
+  }
+
+  private void await(List<CompletableFuture<Void>> tasks) {
+    OpenbisConnector.await(CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])));
+  }
+}
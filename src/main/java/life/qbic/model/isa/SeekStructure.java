@@ -1,33 +1,34 @@
 package life.qbic.model.isa;
 
-import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import life.qbic.model.projection.DatasetFileProjection;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
 /**
  * Stores newly created ISA objects for SEEK, as well as their respective openBIS reference. It is
  * assumed that these references are Sample and Experiment Identifiers. PermIds of datasets are taken
- * from stored DataSetFiles
+ * from stored file projections.
+ * Samples and assets can be added from several threads.
  */
 public class SeekStructure {
 
   private final Pair<ISAAssay, String> assayAndOpenBISReference;
   private final Map<ISASample, String> samplesWithOpenBISReference;
-  private final Map<GenericSeekAsset, DataSetFile> isaToOpenBISFile;
+  private final Map<GenericSeekAsset, DatasetFileProjection> isaToOpenBISFile;
 
   public SeekStructure(ISAAssay assay, String openBISReference) {
     this.assayAndOpenBISReference = new ImmutablePair<>(assay, openBISReference);
-    this.samplesWithOpenBISReference = new HashMap<>();
-    this.isaToOpenBISFile = new HashMap<>();
+    this.samplesWithOpenBISReference = new ConcurrentHashMap<>();
+    this.isaToOpenBISFile = new ConcurrentHashMap<>();
   }
 
   public void addSample(ISASample sample, String openBISReference) {
     samplesWithOpenBISReference.put(sample, openBISReference);
   }
 
-  public void addAsset(GenericSeekAsset asset, DataSetFile file) {
+  public void addAsset(GenericSeekAsset asset, DatasetFileProjection file) {
     isaToOpenBISFile.put(asset, file);
   }
 
@@ -39,7 +40,7 @@ public class SeekStructure {
     return samplesWithOpenBISReference;
   }
 
-  public Map<GenericSeekAsset, DataSetFile> getISAFileToDatasetFiles() {
+  public Map<GenericSeekAsset, DatasetFileProjection> getISAFileToDatasetFiles() {
     return isaToOpenBISFile;
   }
 
@@ -0,0 +1,39 @@
+package life.qbic.model.isa;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import life.qbic.model.projection.DatasetFileProjection;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Like SeekStructure, but samples and assets are translated while they are iterated, instead of
+ * being stored. Every pair contains the ISA object and its openBIS reference: the sample
+ * identifier for samples, the DatasetFileProjection for assets.
+ */
+public class SeekStructureStream {
+
+  private final Pair<ISAAssay, String> assayAndOpenBISReference;
+  private final Supplier<Iterator<Pair<ISASample, String>>> samplesWithOpenBISReference;
+  private final Supplier<Iterator<Pair<GenericSeekAsset, DatasetFileProjection>>> isaToOpenBISFile;
+
+  public SeekStructureStream(ISAAssay assay, String openBISReference,
+      Supplier<Iterator<Pair<ISASample, String>>> samplesWithOpenBISReference,
+      Supplier<Iterator<Pair<GenericSeekAsset, DatasetFileProjection>>> isaToOpenBISFile) {
+    this.assayAndOpenBISReference = new ImmutablePair<>(assay, openBISReference);
+    this.samplesWithOpenBISReference = samplesWithOpenBISReference;
+    this.isaToOpenBISFile = isaToOpenBISFile;
+  }
+
+  public Pair<ISAAssay, String> getAssayWithOpenBISReference() {
+    return assayAndOpenBISReference;
+  }
+
+  public Iterator<Pair<ISASample, String>> getSamplesWithOpenBISReference() {
+    return samplesWithOpenBISReference.get();
+  }
+
+  public Iterator<Pair<GenericSeekAsset, DatasetFileProjection>> getISAFileToDatasetFiles() {
+    return isaToOpenBISFile.get();
+  }
+}
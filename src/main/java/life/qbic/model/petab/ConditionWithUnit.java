@@ -16,6 +16,14 @@ public class ConditionWithUnit {
     this.unit = unit;
   }
 
+  public String getName() {
+    return name;
+  }
+
+  public String getUnit() {
+    return unit;
+  }
+
   @Override
   public String toString() {
     return "ConditionWithUnit{" +
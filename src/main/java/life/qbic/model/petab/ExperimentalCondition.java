@@ -25,6 +25,14 @@ public class ExperimentalCondition {
     this.conditionId = id;
   }
 
+  public IdWithPattern getConditionId() {
+    return conditionId;
+  }
+
+  public List<ConditionWithUnit> getConditions() {
+    return conditions;
+  }
+
   @Override
   public String toString() {
     return "ExperimentalCondition{" +
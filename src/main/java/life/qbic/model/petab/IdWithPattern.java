@@ -13,6 +13,10 @@ public class IdWithPattern {
     this.pattern = pattern;
   }
 
+  public String getPattern() {
+    return pattern;
+  }
+
   @Override
   public String toString() {
     return "IdWithPattern{" +
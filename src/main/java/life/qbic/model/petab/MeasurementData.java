@@ -10,6 +10,10 @@ public class MeasurementData {
   @JsonProperty
   private IdWithPattern replicateId;
 
+  public IdWithPattern getReplicateId() {
+    return replicateId;
+  }
+
   @Override
   public String toString() {
     return "MeasurementData{" +
@@ -32,7 +32,15 @@ public class MetaInformation {
     return units;
   }
 
-  public class ExperimentInformation {
+  public MeasurementData getMeasurementData() {
+    return measurementData;
+  }
+
+  public ExperimentalCondition getExperimentalCondition() {
+    return experimentalCondition;
+  }
+
+  public static class ExperimentInformation {
 
     @Override
     public String toString() {
@@ -40,7 +48,7 @@ public class MetaInformation {
     }
   }
 
-  public class Units {
+  public static class Units {
     @JsonProperty
     private String measurement;
     @JsonProperty
@@ -0,0 +1,55 @@
+package life.qbic.model.projection;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+
+/**
+ * The fields of a file or folder of an openBIS dataset needed to translate and download it.
+ * Projections of files of the same dataset share the dataset code.
+ */
+public final class DatasetFileProjection {
+
+  private final String datasetCode;
+  private final String path;
+  private final boolean directory;
+  private final long fileLength;
+  private final int checksumCRC32;
+
+  public DatasetFileProjection(String datasetCode, String path, boolean directory,
+      long fileLength, int checksumCRC32) {
+    this.datasetCode = datasetCode;
+    this.path = path;
+    this.directory = directory;
+    this.fileLength = fileLength;
+    this.checksumCRC32 = checksumCRC32;
+  }
+
+  /**
+   * @param file a file listed by the DSS
+   * @param datasetCode the code of the dataset of the file. Passing the same instance for all files
+   *                    of a dataset avoids storing one copy per file.
+   */
+  public static DatasetFileProjection of(DataSetFile file, String datasetCode) {
+    return new DatasetFileProjection(datasetCode, file.getPath(), file.isDirectory(),
+        file.getFileLength(), file.getChecksumCRC32());
+  }
+
+  public String getDatasetCode() {
+    return datasetCode;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  public long getFileLength() {
+    return fileLength;
+  }
+
+  public int getChecksumCRC32() {
+    return checksumCRC32;
+  }
+}
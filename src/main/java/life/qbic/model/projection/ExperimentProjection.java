@@ -0,0 +1,49 @@
+package life.qbic.model.projection;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.Experiment;
+
+/**
+ * The fields of an openBIS experiment needed to translate it, without the fetched object graph.
+ */
+public final class ExperimentProjection {
+
+  private final String code;
+  private final String permId;
+  private final String identifier;
+  private final String typeCode;
+
+  public ExperimentProjection(String code, String permId, String identifier, String typeCode) {
+    this.code = code;
+    this.permId = permId;
+    this.identifier = identifier;
+    this.typeCode = Interner.intern(typeCode);
+  }
+
+  /**
+   * @param experiment an experiment fetched with its type, or null
+   * @return the projection, or null if the experiment is null
+   */
+  public static ExperimentProjection of(Experiment experiment) {
+    if (experiment == null) {
+      return null;
+    }
+    return new ExperimentProjection(experiment.getCode(), experiment.getPermId().getPermId(),
+        experiment.getIdentifier().getIdentifier(), experiment.getType().getCode());
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  public String getPermId() {
+    return permId;
+  }
+
+  public String getIdentifier() {
+    return identifier;
+  }
+
+  public String getTypeCode() {
+    return typeCode;
+  }
+}
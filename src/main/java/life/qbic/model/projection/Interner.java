@@ -0,0 +1,24 @@
+package life.qbic.model.projection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one String instance for equal values. Only meant for small vocabularies that are repeated
+ * in many objects, like type codes and property codes, as interned values are never released.
+ */
+public final class Interner {
+
+  private static final Map<String, String> POOL = new ConcurrentHashMap<>();
+
+  private Interner() {
+  }
+
+  public static String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+    String existing = POOL.putIfAbsent(value, value);
+    return existing == null ? value : existing;
+  }
+}
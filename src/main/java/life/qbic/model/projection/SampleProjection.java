@@ -0,0 +1,88 @@
+package life.qbic.model.projection;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+
+/**
+ * The fields of an openBIS sample needed to translate it, without the fetched object graph.
+ * Property codes are interned and properties are stored in two arrays instead of a map, the type
+ * is shared with the other samples of the same type.
+ */
+public final class SampleProjection {
+
+  private final String code;
+  private final String identifier;
+  private final SampleTypeProjection type;
+  private final long registrationDate;
+  private final String[] propertyCodes;
+  private final String[] propertyValues;
+
+  private SampleProjection(String code, String identifier, SampleTypeProjection type,
+      long registrationDate, String[] propertyCodes, String[] propertyValues) {
+    this.code = code;
+    this.identifier = identifier;
+    this.type = type;
+    this.registrationDate = registrationDate;
+    this.propertyCodes = propertyCodes;
+    this.propertyValues = propertyValues;
+  }
+
+  /**
+   * @param sample a sample fetched with properties and its type, including property assignments
+   * @param types projections of sample types already created during the current load, the type
+   *              of this sample is added if it is missing
+   */
+  public static SampleProjection of(Sample sample, Map<String, SampleTypeProjection> types) {
+    SampleTypeProjection type = types.computeIfAbsent(sample.getType().getCode(),
+        code -> SampleTypeProjection.of(sample.getType()));
+    Map<String, String> properties = sample.getProperties();
+    String[] codes = new String[properties.size()];
+    String[] values = new String[properties.size()];
+    int i = 0;
+    for (Entry<String, String> property : properties.entrySet()) {
+      codes[i] = Interner.intern(property.getKey());
+      values[i] = property.getValue();
+      i++;
+    }
+    long registrationDate = sample.getRegistrationDate() == null ? 0
+        : sample.getRegistrationDate().getTime();
+    return new SampleProjection(sample.getCode(), sample.getIdentifier().getIdentifier(), type,
+        registrationDate, codes, values);
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  public String getIdentifier() {
+    return identifier;
+  }
+
+  public SampleTypeProjection getType() {
+    return type;
+  }
+
+  /**
+   * @return the registration date in milliseconds since the epoch
+   */
+  public long getRegistrationDate() {
+    return registrationDate;
+  }
+
+  public String getProperty(String propertyCode) {
+    for (int i = 0; i < propertyCodes.length; i++) {
+      if (propertyCodes[i].equals(propertyCode)) {
+        return propertyValues[i];
+      }
+    }
+    return null;
+  }
+
+  public void forEachProperty(BiConsumer<String, String> consumer) {
+    for (int i = 0; i < propertyCodes.length; i++) {
+      consumer.accept(propertyCodes[i], propertyValues[i]);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package life.qbic.model.projection;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.DataType;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.PropertyAssignment;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.SampleType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The property labels of an openBIS sample type and the properties linking to other samples.
+ * One projection is shared by all samples of the type.
+ */
+public final class SampleTypeProjection {
+
+  private final String code;
+  private final Map<String, String> labelsByPropertyCode;
+  private final Set<String> propertiesLinkingSamples;
+
+  private SampleTypeProjection(String code, Map<String, String> labelsByPropertyCode,
+      Set<String> propertiesLinkingSamples) {
+    this.code = code;
+    this.labelsByPropertyCode = Collections.unmodifiableMap(labelsByPropertyCode);
+    this.propertiesLinkingSamples = Collections.unmodifiableSet(propertiesLinkingSamples);
+  }
+
+  /**
+   * @param sampleType a sample type fetched with property assignments and their property types
+   */
+  public static SampleTypeProjection of(SampleType sampleType) {
+    Map<String, String> labels = new HashMap<>();
+    Set<String> linking = new HashSet<>();
+    for (PropertyAssignment assignment : sampleType.getPropertyAssignments()) {
+      String code = Interner.intern(assignment.getPropertyType().getCode());
+      labels.put(code, Interner.intern(assignment.getPropertyType().getLabel()));
+      if (DataType.SAMPLE.equals(assignment.getPropertyType().getDataType())) {
+        linking.add(code);
+      }
+    }
+    return new SampleTypeProjection(Interner.intern(sampleType.getCode()), labels, linking);
+  }
+
+  public String getCode() {
+    return code;
+  }
+
+  public String getLabel(String propertyCode) {
+    return labelsByPropertyCode.get(propertyCode);
+  }
+
+  public boolean isLinkingSamples(String propertyCode) {
+    return propertiesLinkingSamples.contains(propertyCode);
+  }
+}
@@ -0,0 +1,105 @@
+package life.qbic.model.rocrate;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import life.qbic.model.DatasetWithProperties;
+import life.qbic.model.isa.GenericSeekAsset;
+import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.projection.DatasetFileProjection;
+
+/**
+ * The paths of all folders, json files and data files of a crate, relative to its root: one folder
+ * with a json file for the assay, one subfolder with a json file per sample and one folder per
+ * dataset, either below the assay or below the sample the dataset is attached to.
+ */
+class CrateLayout {
+
+  private final String experimentID;
+  private final Path assayFolder;
+  private final Map<String, Path> datasetFolders = new HashMap<>();
+  private final Set<String> datasetsWithAssets = new LinkedHashSet<>();
+  private final Set<Path> folders = new LinkedHashSet<>();
+
+  CrateLayout(SeekStructure structure, List<DatasetWithProperties> datasets) {
+    experimentID = structure.getAssayWithOpenBISReference().getRight();
+    assayFolder = Path.of(openbisIDToFileName(experimentID));
+    folders.add(assayFolder);
+    for (String sampleID : structure.getSamplesWithOpenBISReference().values()) {
+      folders.add(assayFolder.resolve(openbisIDToFileName(sampleID)));
+    }
+    for (DatasetWithProperties dataset : datasets) {
+      String sourceID = dataset.getClosestSourceID();
+      if (sourceID.equals(experimentID)) {
+        datasetFolders.put(dataset.getCode(), assayFolder.resolve(dataset.getCode()));
+      } else {
+        datasetFolders.put(dataset.getCode(), assayFolder.resolve(openbisIDToFileName(sourceID))
+            .resolve(dataset.getCode()));
+      }
+    }
+    for (Entry<GenericSeekAsset, DatasetFileProjection> asset :
+        structure.getISAFileToDatasetFiles().entrySet()) {
+      datasetsWithAssets.add(asset.getValue().getDatasetCode());
+      folders.add(assetFile(asset.getKey(), asset.getValue()).getParent());
+    }
+  }
+
+  String experimentID() {
+    return experimentID;
+  }
+
+  Set<Path> folders() {
+    return folders;
+  }
+
+  Set<String> datasetsWithAssets() {
+    return datasetsWithAssets;
+  }
+
+  Path assayFile() {
+    return assayFolder.resolve(assayFolder.getFileName() + ".json");
+  }
+
+  Path sampleFile(String sampleID) {
+    String sampleFileName = openbisIDToFileName(sampleID);
+    return assayFolder.resolve(sampleFileName).resolve(sampleFileName + ".json");
+  }
+
+  Path datasetFolder(String datasetCode) {
+    return datasetFolders.get(datasetCode);
+  }
+
+  /**
+   * The downloaded file, without the 'original' folder every dataset starts with.
+   */
+  Path dataFile(DatasetFileProjection file) {
+    return Path.of(datasetFolder(file.getDatasetCode()).toString(),
+        file.getPath().replace("original", ""));
+  }
+
+  Path assetFile(GenericSeekAsset asset, DatasetFileProjection file) {
+    String assetWithoutOriginFolder = asset.getFileName().replace("original", "");
+    return Path.of(datasetFolder(file.getDatasetCode()).toString(),
+        assetWithoutOriginFolder + ".json");
+  }
+
+  /**
+   * The name of a path in a zip archive or in the RO-Crate metadata, which always uses '/'.
+   */
+  static String entryName(Path path) {
+    return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+  }
+
+  static String openbisIDToFileName(String id) {
+    id = id.replace("/", "_");
+    if (id.startsWith("_")) {
+      return id.substring(1);
+    } else {
+      return id;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package life.qbic.model.rocrate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tab-separated file at the root of a crate, listing every json file and data file of the crate
+ * with its size and CRC32 checksum. For json files, the checksum is computed from the generated
+ * content, for data files it is the checksum openBIS stores for the file. Comparing a newly
+ * generated crate to the manifest of an earlier one shows which files changed.
+ */
+class CrateManifest {
+
+  static final String FILE_NAME = "ro-crate-manifest.tsv";
+  private static final String HEADER = String.join("\t", "path", "type", "size", "crc32");
+
+  enum Type {METADATA, DATA}
+
+  private final Path root;
+  private final Map<String, String> linesByPath = new ConcurrentHashMap<>();
+
+  private CrateManifest(Path root) {
+    this.root = root;
+  }
+
+  /**
+   * @param root the root folder of the crate
+   * @return a manifest without files
+   */
+  static CrateManifest empty(Path root) {
+    return new CrateManifest(root);
+  }
+
+  /**
+   * @param root the root folder of the crate
+   * @return the manifest stored in the crate, an empty manifest if there is none
+   */
+  static CrateManifest load(Path root) throws IOException {
+    CrateManifest manifest = new CrateManifest(root);
+    Path file = root.resolve(FILE_NAME);
+    if (Files.isRegularFile(file)) {
+      for (String line : Files.readAllLines(file)) {
+        String[] columns = line.split("\t");
+        if (!line.equals(HEADER) && columns.length == 4) {
+          manifest.linesByPath.put(columns[0], line);
+        }
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * @param path the path of the file in the crate, separated by '/'
+   */
+  void put(String path, Type type, long size, int crc32) {
+    linesByPath.put(path, toLine(path, type, size, crc32));
+  }
+
+  Set<String> paths() {
+    return linesByPath.keySet();
+  }
+
+  /**
+   * @return true if the manifest lists at least one file of the type
+   */
+  boolean contains(Type type) {
+    String column = "\t" + type.name().toLowerCase(Locale.ROOT) + "\t";
+    return linesByPath.values().stream().anyMatch(line -> line.contains(column));
+  }
+
+  /**
+   * A file is unchanged, if the manifest lists it with the same size and checksum and the file in
+   * the crate still has this size.
+   */
+  boolean isUnchanged(String path, Type type, long size, int crc32) {
+    String line = linesByPath.get(path);
+    if (line == null || !line.equals(toLine(path, type, size, crc32))) {
+      return false;
+    }
+    Path file = root.resolve(path);
+    try {
+      return Files.isRegularFile(file) && Files.size(file) == size;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Replaces the manifest stored in the crate. The file is only replaced once it was written
+   * completely.
+   */
+  void write() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    lines.addAll(new TreeMap<>(linesByPath).values());
+    Path file = root.resolve(FILE_NAME);
+    Path part = file.resolveSibling(FILE_NAME + ".part");
+    Files.write(part, lines);
+    Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private String toLine(String path, Type type, long size, int crc32) {
+    return String.join("\t", path, type.name().toLowerCase(Locale.ROOT), Long.toString(size),
+        Integer.toString(crc32));
+  }
+}
@@ -0,0 +1,252 @@
+package life.qbic.model.rocrate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import life.qbic.model.DatasetWithProperties;
+import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.isa.GenericSeekAsset;
+import life.qbic.model.isa.ISASample;
+import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.projection.DatasetFileProjection;
+import life.qbic.model.rocrate.CrateManifest.Type;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes a translated openBIS experiment as an RO-Crate folder structure: one folder with a
+ * json file for the assay, one subfolder with a json file per sample and one folder per dataset
+ * containing a json file per asset and, optionally, the data itself. The crate is described by an
+ * ro-crate-metadata.json at its root.
+ * The folder layout is computed first. Json files are then serialized and written by a pool of
+ * worker threads, while datasets are downloaded at the same time: the files of every dataset are
+ * listed once and at most a fixed number of datasets is downloaded at once.
+ * Every generated and downloaded file is recorded in a manifest (see CrateManifest). If a crate is
+ * updated incrementally, only json files whose content changed are written, only new or changed
+ * data files are downloaded and files that are no longer part of the crate are removed.
+ */
+public class ROCrateBuilder {
+
+  private static final Logger LOG = LogManager.getLogger(ROCrateBuilder.class);
+
+  private final OpenbisConnector openbis;
+  private final int writerThreads;
+  private final int parallelDownloads;
+  private final boolean resume;
+  private final boolean incremental;
+
+  /**
+   * @param openbis used to download datasets
+   * @param writerThreads number of threads serializing and writing json files
+   * @param parallelDownloads number of datasets downloaded at the same time. Every download uses
+   *                          several streams itself, see 'download_threads'.
+   * @param resume if true, files verified by an earlier, interrupted download are not downloaded
+   *               again
+   * @param incremental if true, an existing crate in the output folder is updated using its
+   *                    manifest, instead of writing and downloading all files again
+   */
+  public ROCrateBuilder(OpenbisConnector openbis, int writerThreads, int parallelDownloads,
+      boolean resume, boolean incremental) {
+    this.openbis = openbis;
+    this.writerThreads = Math.max(1, writerThreads);
+    this.parallelDownloads = Math.max(1, parallelDownloads);
+    this.resume = resume;
+    this.incremental = incremental;
+  }
+
+  /**
+   * @param roPath the output folder
+   * @param structure the translated experiment
+   * @param datasets the datasets of the experiment, used to find the folder of each dataset
+   * @param withData true if the data of the assets should be downloaded into the crate. An
+   *                 incremental build without data is refused for a crate that contains data, as
+   *                 it would remove the downloaded files.
+   */
+  public void build(Path roPath, SeekStructure structure, List<DatasetWithProperties> datasets,
+      boolean withData) throws IOException {
+    CrateManifest previous = incremental ? CrateManifest.load(roPath)
+        : CrateManifest.empty(roPath);
+    if (!withData && previous.contains(Type.DATA)) {
+      throw new RuntimeException("The crate in " + roPath + " contains data files, which would be "
+          + "removed by an update without data. Use -d to update it including its data, or write "
+          + "the crate without data to another folder.");
+    }
+    CrateLayout layout = new CrateLayout(structure, datasets);
+    for (Path folder : layout.folders()) {
+      Files.createDirectories(roPath.resolve(folder));
+    }
+    CrateManifest current = CrateManifest.empty(roPath);
+
+    ExecutorService writers = Executors.newFixedThreadPool(writerThreads);
+    ExecutorService downloaders = Executors.newFixedThreadPool(parallelDownloads);
+    try {
+      List<CompletableFuture<Void>> tasks = new ArrayList<>();
+      tasks.add(CompletableFuture.runAsync(() -> {
+        Path metadataFile = roPath.resolve(ROCrateMetadataWriter.FILE_NAME);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(metadataFile))) {
+          new ROCrateMetadataWriter(layout, structure, withData).write(out);
+        } catch (IOException e) {
+          throw new UncheckedIOException("Could not write " + metadataFile, e);
+        }
+      }, writers));
+      System.out.printf("Writing assay json for %s.%n", layout.experimentID());
+      JsonFileWriter jsonWriter = new JsonFileWriter(roPath, previous, current);
+      tasks.add(jsonWriter.submit(writers, layout.assayFile(),
+          () -> structure.getAssayWithOpenBISReference().getLeft().toJson()));
+      for (Entry<ISASample, String> sample :
+          structure.getSamplesWithOpenBISReference().entrySet()) {
+        tasks.add(jsonWriter.submit(writers, layout.sampleFile(sample.getValue()),
+            () -> sample.getKey().toJson()));
+      }
+      for (Entry<GenericSeekAsset, DatasetFileProjection> asset :
+          structure.getISAFileToDatasetFiles().entrySet()) {
+        tasks.add(jsonWriter.submit(writers, layout.assetFile(asset.getKey(), asset.getValue()),
+            () -> asset.getKey().toJson()));
+      }
+      System.out.printf("Writing %s sample and asset json files using %s threads...%n",
+          tasks.size() - 2, writerThreads);
+
+      if (withData) {
+        Map<String, Set<String>> changedFilesByDataset = new LinkedHashMap<>();
+        int unchangedFiles = 0;
+        for (DatasetFileProjection file : structure.getISAFileToDatasetFiles().values()) {
+          String path = CrateLayout.entryName(layout.dataFile(file));
+          current.put(path, Type.DATA, file.getFileLength(), file.getChecksumCRC32());
+          if (previous.isUnchanged(path, Type.DATA, file.getFileLength(),
+              file.getChecksumCRC32())) {
+            unchangedFiles++;
+          } else {
+            changedFilesByDataset.computeIfAbsent(file.getDatasetCode(), code -> new HashSet<>())
+                .add(file.getPath());
+          }
+        }
+        if (unchangedFiles > 0) {
+          System.out.printf("%s data files are unchanged and will not be downloaded again.%n",
+              unchangedFiles);
+        }
+        System.out.printf("Downloading files of %s datasets, %s at a time...%n",
+            changedFilesByDataset.size(), parallelDownloads);
+        Path recordFolder = downloadRecordFolder(roPath);
+        for (Entry<String, Set<String>> dataset : changedFilesByDataset.entrySet()) {
+          String folder = roPath.resolve(layout.datasetFolder(dataset.getKey())).toAbsolutePath()
+              .toString();
+          tasks.add(CompletableFuture.runAsync(() -> openbis.downloadDatasetFiles(folder,
+              recordFolder, dataset.getKey(), dataset.getValue(), resume), downloaders));
+        }
+      }
+      OpenbisConnector.await(CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])));
+      if (jsonWriter.unchanged.get() > 0) {
+        System.out.printf("%s json files are unchanged.%n", jsonWriter.unchanged.get());
+      }
+      LOG.info("Wrote " + jsonWriter.written.get() + " json files to " + roPath);
+    } finally {
+      writers.shutdownNow();
+      downloaders.shutdownNow();
+    }
+    if (incremental) {
+      removeStaleFiles(roPath, previous, current);
+    }
+    current.write();
+  }
+
+  /**
+   * The folder beside the crate that holds the download state and verification manifests of the
+   * datasets, so no files that are not part of the crate are written into it.
+   */
+  static Path downloadRecordFolder(Path roPath) {
+    Path crate = roPath.toAbsolutePath().normalize();
+    return crate.resolveSibling(crate.getFileName() + "_downloads");
+  }
+
+  /**
+   * Removes files listed in the previous manifest that are no longer part of the crate, as well
+   * as folders that become empty.
+   */
+  private void removeStaleFiles(Path roPath, CrateManifest previous, CrateManifest current)
+      throws IOException {
+    int removed = 0;
+    for (String path : previous.paths()) {
+      if (current.paths().contains(path)) {
+        continue;
+      }
+      Path file = roPath.resolve(path);
+      if (Files.deleteIfExists(file)) {
+        removed++;
+      }
+      Path folder = file.getParent();
+      while (folder != null && !folder.equals(roPath) && Files.isDirectory(folder)) {
+        try (Stream<Path> entries = Files.list(folder)) {
+          if (entries.findAny().isPresent()) {
+            break;
+          }
+        }
+        Files.delete(folder);
+        folder = folder.getParent();
+      }
+    }
+    if (removed > 0) {
+      System.out.printf("Removed %s files that are no longer part of the crate.%n", removed);
+    }
+  }
+
+  /**
+   * Serializes json files on a pool of threads and writes those whose content is not listed in
+   * the previous manifest.
+   */
+  private static class JsonFileWriter {
+
+    private final Path roPath;
+    private final CrateManifest previous;
+    private final CrateManifest current;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+
+    JsonFileWriter(Path roPath, CrateManifest previous, CrateManifest current) {
+      this.roPath = roPath;
+      this.previous = previous;
+      this.current = current;
+    }
+
+    CompletableFuture<Void> submit(ExecutorService pool, Path path, Callable<String> json) {
+      return CompletableFuture.runAsync(() -> {
+        Path file = roPath.resolve(path);
+        try {
+          byte[] content = json.call().getBytes(StandardCharsets.UTF_8);
+          CRC32 crc = new CRC32();
+          crc.update(content);
+          String entryName = CrateLayout.entryName(path);
+          int checksum = (int) crc.getValue();
+          current.put(entryName, Type.METADATA, content.length, checksum);
+          if (previous.isUnchanged(entryName, Type.METADATA, content.length, checksum)) {
+            unchanged.incrementAndGet();
+          } else {
+            Files.write(file, content);
+            written.incrementAndGet();
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException("Could not write " + file, e);
+        } catch (Exception e) {
+          throw new RuntimeException("Could not create json for " + file, e);
+        }
+      }, pool);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package life.qbic.model.rocrate;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map.Entry;
+import life.qbic.model.isa.GenericSeekAsset;
+import life.qbic.model.isa.ISASample;
+import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.projection.DatasetFileProjection;
+
+/**
+ * Writes the ro-crate-metadata.json of a crate (RO-Crate 1.1) with a streaming JSON generator.
+ * Entities are created from the crate layout while they are written, so no model of the whole
+ * graph is kept in memory, independent of the number of samples and files.
+ */
+class ROCrateMetadataWriter {
+
+  static final String FILE_NAME = "ro-crate-metadata.json";
+  private static final String SPECIFICATION = "https://w3id.org/ro/crate/1.1";
+  private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+      .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+      .build();
+
+  private final CrateLayout layout;
+  private final SeekStructure structure;
+  private final boolean withData;
+
+  /**
+   * @param withData true if the data files are part of the crate and should be described, too
+   */
+  ROCrateMetadataWriter(CrateLayout layout, SeekStructure structure, boolean withData) {
+    this.layout = layout;
+    this.structure = structure;
+    this.withData = withData;
+  }
+
+  /**
+   * Writes the metadata to the stream. The stream is flushed, but not closed.
+   */
+  void write(OutputStream out) throws IOException {
+    try (JsonGenerator json = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+      json.useDefaultPrettyPrinter();
+      json.writeStartObject();
+      json.writeStringField("@context", SPECIFICATION + "/context");
+      json.writeArrayFieldStart("@graph");
+
+      json.writeStartObject();
+      json.writeStringField("@id", FILE_NAME);
+      json.writeStringField("@type", "CreativeWork");
+      writeReference(json, "conformsTo", SPECIFICATION);
+      writeReference(json, "about", "./");
+      json.writeEndObject();
+
+      json.writeStartObject();
+      json.writeStringField("@id", "./");
+      json.writeStringField("@type", "Dataset");
+      json.writeStringField("name", layout.experimentID());
+      json.writeStringField("description", "Metadata and data of openBIS experiment "
+          + layout.experimentID());
+      json.writeStringField("datePublished", LocalDate.now().toString());
+      json.writeArrayFieldStart("hasPart");
+      writeEntities(json, true);
+      json.writeEndArray();
+      json.writeEndObject();
+
+      writeEntities(json, false);
+      json.writeEndArray();
+      json.writeEndObject();
+    }
+  }
+
+  /**
+   * Writes all folders and files of the crate in the same order, either as references for the
+   * 'hasPart' list of the root dataset or as entities of the graph.
+   */
+  private void writeEntities(JsonGenerator json, boolean referencesOnly) throws IOException {
+    for (Path folder : layout.folders()) {
+      String id = CrateLayout.entryName(folder) + "/";
+      if (referencesOnly) {
+        writeReference(json, id);
+      } else {
+        writeEntity(json, id, "Dataset", folder.getFileName().toString(), null, null, null);
+      }
+    }
+    writeJsonFile(json, referencesOnly, layout.assayFile(),
+        "ISA assay metadata of " + layout.experimentID());
+    for (Entry<ISASample, String> sample : structure.getSamplesWithOpenBISReference().entrySet()) {
+      writeJsonFile(json, referencesOnly, layout.sampleFile(sample.getValue()),
+          "ISA sample metadata of " + sample.getValue());
+    }
+    for (Entry<GenericSeekAsset, DatasetFileProjection> asset :
+        structure.getISAFileToDatasetFiles().entrySet()) {
+      DatasetFileProjection file = asset.getValue();
+      writeJsonFile(json, referencesOnly, layout.assetFile(asset.getKey(), file),
+          "SEEK asset metadata of " + file.getPath() + " in dataset " + file.getDatasetCode());
+      if (withData) {
+        Path dataFile = layout.dataFile(file);
+        if (referencesOnly) {
+          writeReference(json, CrateLayout.entryName(dataFile));
+        } else {
+          writeEntity(json, CrateLayout.entryName(dataFile), "File",
+              dataFile.getFileName().toString(), "File of openBIS dataset "
+                  + file.getDatasetCode(), null, file.getFileLength());
+        }
+      }
+    }
+  }
+
+  private void writeJsonFile(JsonGenerator json, boolean referenceOnly, Path path,
+      String description) throws IOException {
+    if (referenceOnly) {
+      writeReference(json, CrateLayout.entryName(path));
+    } else {
+      writeEntity(json, CrateLayout.entryName(path), "File", path.getFileName().toString(),
+          description, "application/json", null);
+    }
+  }
+
+  private void writeEntity(JsonGenerator json, String id, String type, String name,
+      String description, String encodingFormat, Long contentSize) throws IOException {
+    json.writeStartObject();
+    json.writeStringField("@id", id);
+    json.writeStringField("@type", type);
+    json.writeStringField("name", name);
+    if (description != null) {
+      json.writeStringField("description", description);
+    }
+    if (encodingFormat != null) {
+      json.writeStringField("encodingFormat", encodingFormat);
+    }
+    if (contentSize != null) {
+      json.writeStringField("contentSize", Long.toString(contentSize));
+    }
+    json.writeEndObject();
+  }
+
+  private void writeReference(JsonGenerator json, String id) throws IOException {
+    json.writeStartObject();
+    json.writeStringField("@id", id);
+    json.writeEndObject();
+  }
+
+  private void writeReference(JsonGenerator json, String field, String id) throws IOException {
+    json.writeFieldName(field);
+    writeReference(json, id);
+  }
+}
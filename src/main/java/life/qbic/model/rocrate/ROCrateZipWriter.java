@@ -0,0 +1,132 @@
+package life.qbic.model.rocrate;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import life.qbic.model.DatasetWithProperties;
+import life.qbic.model.download.OpenbisConnector;
+import life.qbic.model.isa.GenericSeekAsset;
+import life.qbic.model.isa.ISASample;
+import life.qbic.model.isa.SeekStructure;
+import life.qbic.model.projection.DatasetFileProjection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes a translated openBIS experiment as a single zip archive, using the same layout as
+ * ROCrateBuilder plus an ro-crate-metadata.json at its root. Json files are serialized directly
+ * into the archive and data is copied from the data store server into it while it is downloaded,
+ * so no files but the archive itself are written to disk. Files in already compressed formats are
+ * stored without compression, using the size and checksum known to openBIS.
+ */
+public class ROCrateZipWriter {
+
+  private static final Logger LOG = LogManager.getLogger(ROCrateZipWriter.class);
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final Set<String> COMPRESSED_EXTENSIONS = Set.of("gz", "tgz", "bz2", "xz", "zst",
+      "zip", "7z", "rar", "jar", "bam", "cram", "bcf", "png", "jpg", "jpeg", "gif", "webp", "tif",
+      "tiff", "mp3", "mp4", "mkv", "avi", "docx", "xlsx", "pptx", "parquet");
+
+  private final OpenbisConnector openbis;
+
+  /**
+   * @param openbis used to download datasets
+   */
+  public ROCrateZipWriter(OpenbisConnector openbis) {
+    this.openbis = openbis;
+  }
+
+  /**
+   * @param zipFile the archive to create. An existing file is replaced, an incomplete archive is
+   *                removed if writing fails.
+   * @param structure the translated experiment
+   * @param datasets the datasets of the experiment, used to find the folder of each dataset
+   * @param withData true if the data of the assets should be copied into the archive
+   */
+  public void write(Path zipFile, SeekStructure structure, List<DatasetWithProperties> datasets,
+      boolean withData) throws IOException {
+    CrateLayout layout = new CrateLayout(structure, datasets);
+    if (zipFile.getParent() != null) {
+      Files.createDirectories(zipFile.getParent());
+    }
+    try (ZipOutputStream zip = new ZipOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(zipFile), BUFFER_SIZE))) {
+      zip.putNextEntry(new ZipEntry(ROCrateMetadataWriter.FILE_NAME));
+      new ROCrateMetadataWriter(layout, structure, withData).write(zip);
+      zip.closeEntry();
+
+      System.out.printf("Writing assay json for %s.%n", layout.experimentID());
+      writeJson(zip, layout.assayFile(), structure.getAssayWithOpenBISReference().getLeft()
+          .toJson());
+      for (Entry<ISASample, String> sample :
+          structure.getSamplesWithOpenBISReference().entrySet()) {
+        writeJson(zip, layout.sampleFile(sample.getValue()), sample.getKey().toJson());
+      }
+      for (Entry<GenericSeekAsset, DatasetFileProjection> asset :
+          structure.getISAFileToDatasetFiles().entrySet()) {
+        writeJson(zip, layout.assetFile(asset.getKey(), asset.getValue()),
+            asset.getKey().toJson());
+      }
+      System.out.printf("Wrote %s sample and asset json files.%n",
+          structure.getSamplesWithOpenBISReference().size()
+              + structure.getISAFileToDatasetFiles().size());
+
+      if (withData) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (String datasetCode : layout.datasetsWithAssets()) {
+          System.out.printf("Copying dataset %s into the archive...%n", datasetCode);
+          int files = openbis.readDataset(datasetCode, (file, content) ->
+              writeDataFile(zip, layout.dataFile(DatasetFileProjection.of(file, datasetCode)),
+                  file, content, buffer));
+          LOG.info("Copied " + files + " files of dataset " + datasetCode + " to " + zipFile);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(zipFile);
+      throw e;
+    }
+    System.out.printf("Wrote crate to %s (%s bytes).%n", zipFile, Files.size(zipFile));
+  }
+
+  private void writeJson(ZipOutputStream zip, Path path, String json) throws IOException {
+    zip.putNextEntry(new ZipEntry(CrateLayout.entryName(path)));
+    zip.write(json.getBytes(StandardCharsets.UTF_8));
+    zip.closeEntry();
+  }
+
+  private void writeDataFile(ZipOutputStream zip, Path path, DataSetFile file,
+      InputStream content, byte[] buffer) throws IOException {
+    ZipEntry entry = new ZipEntry(CrateLayout.entryName(path));
+    if (isCompressed(path) && file.getChecksumCRC32() != 0) {
+      // stored entries need size and checksum up front, the content is verified against both.
+      // Files without a checksum in openBIS are deflated instead.
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(file.getFileLength());
+      entry.setCompressedSize(file.getFileLength());
+      entry.setCrc(Integer.toUnsignedLong(file.getChecksumCRC32()));
+    }
+    zip.putNextEntry(entry);
+    int read;
+    while ((read = content.read(buffer)) != -1) {
+      zip.write(buffer, 0, read);
+    }
+    zip.closeEntry();
+  }
+
+  private boolean isCompressed(Path path) {
+    String name = path.getFileName().toString();
+    int extensionStart = name.lastIndexOf('.');
+    return extensionStart >= 0 && COMPRESSED_EXTENSIONS.contains(
+        name.substring(extensionStart + 1).toLowerCase(Locale.ROOT));
+  }
+}
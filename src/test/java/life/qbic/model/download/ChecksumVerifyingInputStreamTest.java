@@ -0,0 +1,76 @@
+package life.qbic.model.download;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+
+class ChecksumVerifyingInputStreamTest {
+
+  private static final byte[] CONTENT = "observableId\tmeasurement\n".getBytes(
+      StandardCharsets.UTF_8);
+
+  @Test
+  void matchingChecksumIsAccepted() throws IOException {
+    DataSetFile file = file(CONTENT.length, crc(CONTENT));
+    assertArrayEquals(CONTENT, readAll(new ChecksumVerifyingInputStream(
+        new ByteArrayInputStream(CONTENT), file)));
+  }
+
+  @Test
+  void differingChecksumFails() {
+    DataSetFile file = file(CONTENT.length, crc(CONTENT) + 1);
+    assertThrows(IOException.class, () -> readAll(new ChecksumVerifyingInputStream(
+        new ByteArrayInputStream(CONTENT), file)));
+  }
+
+  @Test
+  void missingChecksumIsNotVerified() throws IOException {
+    DataSetFile file = file(CONTENT.length, 0);
+    assertArrayEquals(CONTENT, readAll(new ChecksumVerifyingInputStream(
+        new ByteArrayInputStream(CONTENT), file)));
+  }
+
+  @Test
+  void lengthIsVerifiedWithoutChecksum() {
+    DataSetFile file = file(CONTENT.length + 1, 0);
+    assertThrows(IOException.class, () -> readAll(new ChecksumVerifyingInputStream(
+        new ByteArrayInputStream(CONTENT), file)));
+  }
+
+  @Test
+  void verifiedFileWithoutChecksumIsValid() {
+    VerifiedFile result = new VerifiedFile(file(CONTENT.length, 0), CONTENT.length, crc(CONTENT),
+        1);
+    assertFalse(result.hasExpectedChecksum());
+    assertTrue(result.isValid());
+  }
+
+  private static DataSetFile file(long length, int checksum) {
+    DataSetFile file = new DataSetFile();
+    file.setPath("original/measurements.tsv");
+    file.setFileLength(length);
+    file.setChecksumCRC32(checksum);
+    return file;
+  }
+
+  private static int crc(byte[] content) {
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    return (int) crc.getValue();
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    try (in) {
+      return in.readAllBytes();
+    }
+  }
+}
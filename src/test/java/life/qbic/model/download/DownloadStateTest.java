@@ -0,0 +1,87 @@
+package life.qbic.model.download;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DownloadStateTest {
+
+  private static final String CODE = "20241021125328024-689105";
+
+  @TempDir
+  Path folder;
+
+  @Test
+  void forgettingFilesKeepsTheOthers() throws IOException {
+    Path target = Files.createDirectories(folder.resolve("tmp"));
+    DataSetFile first = write(target, "original/first.txt", "first", 0x1234);
+    DataSetFile second = write(target, "original/second.txt", "second", 0x5678);
+    DownloadState state = new DownloadState(target.toString(), CODE);
+    state.markComplete(new VerifiedFile(first, 5, 0x1234, 1));
+    state.markComplete(new VerifiedFile(second, 6, 0x5678, 1));
+
+    state.forget(List.of(first.getPath()));
+
+    DownloadState loaded = new DownloadState(target.toString(), CODE);
+    loaded.load();
+    assertFalse(loaded.isComplete(first, target.resolve("first.txt")));
+    assertTrue(loaded.isComplete(second, target.resolve("second.txt")));
+  }
+
+  @Test
+  void forgettingAllFilesRemovesTheStateFile() throws IOException {
+    Path target = Files.createDirectories(folder.resolve("tmp"));
+    DataSetFile file = write(target, "original/first.txt", "first", 0x1234);
+    DownloadState state = new DownloadState(target.toString(), CODE);
+    state.markComplete(new VerifiedFile(file, 5, 0x1234, 1));
+
+    new DownloadState(target.toString(), CODE).forget(List.of(file.getPath()));
+
+    assertFalse(Files.exists(state.getPath()));
+  }
+
+  @Test
+  void stateFileIsStoredInRecordFolder() throws IOException {
+    Path target = Files.createDirectories(folder.resolve("crate").resolve("assay"));
+    Path records = folder.resolve("crate_downloads");
+    DataSetFile file = write(target, "original/first.txt", "first", 0x1234);
+    DownloadState state = new DownloadState(target.toString(), CODE, records);
+    state.markComplete(new VerifiedFile(file, 5, 0x1234, 1));
+
+    assertTrue(Files.isRegularFile(records.resolve("assay_" + CODE + "_download.state")));
+    try (Stream<Path> files = Files.list(target.getParent())) {
+      assertEquals(List.of(target), files.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  void fileWithoutChecksumIsCompleteWithMatchingLength() throws IOException {
+    Path target = Files.createDirectories(folder.resolve("tmp"));
+    DataSetFile file = write(target, "original/first.txt", "first", 0);
+    DownloadState state = new DownloadState(target.toString(), CODE);
+    state.markComplete(new VerifiedFile(file, 5, 0x1234, 1));
+
+    state.load();
+    assertTrue(state.isComplete(file, target.resolve("first.txt")));
+  }
+
+  private static DataSetFile write(Path target, String path, String content, int checksum)
+      throws IOException {
+    Files.writeString(target.resolve(path.replace("original/", "")), content);
+    DataSetFile file = new DataSetFile();
+    file.setPath(path);
+    file.setFileLength(content.length());
+    file.setChecksumCRC32(checksum);
+    return file;
+  }
+}
@@ -0,0 +1,52 @@
+package life.qbic.model.download;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.experiment.id.ExperimentIdentifier;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.create.SampleCreation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import life.qbic.model.download.SEEKConnector.SeekStructurePostRegistrationInformation;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.junit.jupiter.api.Test;
+
+class OpenbisConnectorTest {
+
+  private static final String EXPERIMENT = "/SPACE/PROJECT/E1";
+
+  @Test
+  void linkSamplesOfLaterWindowsAreAttachedToTheExperiment() {
+    OpenbisConnector openbis = new OpenbisConnector(null);
+
+    SeekStructurePostRegistrationInformation assayWindow =
+        new SeekStructurePostRegistrationInformation(new ArrayList<>(), new HashMap<>(),
+            new HashMap<>());
+    assayWindow.setExperimentIDWithEndpoint(new ImmutablePair<>(EXPERIMENT,
+        "https://seek.local/assays/7"));
+    List<SampleCreation> experimentLinks = openbis.collectLinkSamples(assayWindow,
+        new HashSet<>());
+    assertEquals(1, experimentLinks.size());
+
+    for (int window = 0; window < 2; window++) {
+      Map<String, String> samples = new HashMap<>();
+      samples.put("/SPACE/S" + (2 * window + 1), "https://seek.local/samples/" + (2 * window + 1));
+      samples.put("/SPACE/S" + (2 * window + 2), "https://seek.local/samples/" + (2 * window + 2));
+      SeekStructurePostRegistrationInformation sampleWindow =
+          new SeekStructurePostRegistrationInformation(new ArrayList<>(), samples,
+              new HashMap<>());
+      sampleWindow.setExperimentID(EXPERIMENT);
+
+      List<SampleCreation> sampleLinks = openbis.collectLinkSamples(sampleWindow,
+          new HashSet<>());
+
+      // only the samples are linked, the experiment was linked with the assay
+      assertEquals(2, sampleLinks.size());
+      for (SampleCreation link : sampleLinks) {
+        assertEquals(new ExperimentIdentifier(EXPERIMENT), link.getExperimentId());
+      }
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package life.qbic.model.download;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import life.qbic.model.download.SEEKConnector.SeekStructurePostRegistrationInformation;
+import life.qbic.model.isa.ISASample;
+import life.qbic.model.isa.SeekStructureStream;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+class SEEKConnectorTest {
+
+  private static final String EXPERIMENT = "/SPACE/PROJECT/E1";
+
+  @Test
+  void everySampleWindowContainsTheExperiment() throws Exception {
+    List<Pair<ISASample, String>> samples = new ArrayList<>();
+    for (int i = 1; i <= 5; i++) {
+      samples.add(new ImmutablePair<>(new ISASample("sample " + i, new HashMap<>(), "1",
+          List.of("1")), "/SPACE/S" + i));
+    }
+    SeekStructureStream structure = new SeekStructureStream(null, EXPERIMENT, samples::iterator,
+        Collections::emptyIterator);
+    List<SeekStructurePostRegistrationInformation> windows = new ArrayList<>();
+
+    fakeSeek().transferIncrementally(structure, "7", new HashMap<>(), new HashSet<>(), 2,
+        windows::add);
+
+    // the assay, followed by windows of 2, 2 and 1 samples
+    assertEquals(4, windows.size());
+    assertEquals(Optional.of(EXPERIMENT), windows.get(0).getExperimentID());
+    assertTrue(windows.get(0).getExperimentIDWithEndpoint().isPresent());
+    for (SeekStructurePostRegistrationInformation window : windows.subList(1, windows.size())) {
+      assertFalse(window.getSampleIDsWithEndpoints().isEmpty());
+      assertEquals(Optional.of(EXPERIMENT), window.getExperimentID());
+      assertFalse(window.getExperimentIDWithEndpoint().isPresent());
+    }
+  }
+
+  /**
+   * @return a connector that creates samples without contacting a SEEK instance
+   */
+  private static SEEKConnector fakeSeek() {
+    return new SEEKConnector("https://seek.local", new byte[0], null, "1") {
+      private int createdSamples = 0;
+
+      @Override
+      public String createSample(ISASample isaSample) {
+        createdSamples++;
+        return "https://seek.local/samples/" + createdSamples;
+      }
+    };
+  }
+}
@@ -0,0 +1,150 @@
+package life.qbic.util;
+
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.dataset.id.DataSetPermId;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.DataType;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.PropertyAssignment;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.property.PropertyType;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.Sample;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.SampleType;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.fetchoptions.SampleFetchOptions;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.id.SampleIdentifier;
+import ch.ethz.sis.openbis.generic.asapi.v3.dto.sample.id.SamplePermId;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.DataSetFile;
+import ch.ethz.sis.openbis.generic.dssapi.v3.dto.datasetfile.id.DataSetFilePermId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import life.qbic.model.projection.DatasetFileProjection;
+import life.qbic.model.projection.SampleProjection;
+import life.qbic.model.projection.SampleTypeProjection;
+
+/**
+ * Compares the heap retained by openBIS samples and dataset files with the heap retained by their
+ * projections. Synthetic objects are created like they are received from openBIS: every object
+ * has its own copies of property codes and paths, the sample type is shared.
+ * It is not run by the build; start it from the test classpath with the number of samples and
+ * files as arguments, e.g. [100000] [1000000].
+ * Results are approximate, as they are based on the used heap after garbage collection. A fixed
+ * heap size, e.g. -Xms4g -Xmx4g, gives more stable numbers.
+ */
+public class ProjectionMemoryBenchmark {
+
+  private static final int PROPERTIES_PER_SAMPLE = 12;
+  private static final int FILES_PER_DATASET = 1000;
+
+  public static void main(String[] args) {
+    int sampleCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int fileCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+    long baseline = usedHeap();
+    List<Sample> samples = createSamples(sampleCount);
+    long sampleBytes = usedHeap() - baseline;
+    Map<String, SampleTypeProjection> types = new HashMap<>();
+    List<SampleProjection> sampleProjections = new ArrayList<>(sampleCount);
+    for (Sample sample : samples) {
+      sampleProjections.add(SampleProjection.of(sample, types));
+    }
+    samples = null;
+    long sampleProjectionBytes = usedHeap() - baseline;
+    print("samples", sampleCount, sampleBytes, sampleProjectionBytes);
+    sampleProjections = null;
+
+    baseline = usedHeap();
+    List<DataSetFile> files = createFiles(fileCount);
+    long fileBytes = usedHeap() - baseline;
+    List<DatasetFileProjection> fileProjections = new ArrayList<>(fileCount);
+    String datasetCode = null;
+    for (DataSetFile file : files) {
+      String code = file.getDataSetPermId().getPermId();
+      // files are projected per dataset, so all files of a dataset share the code
+      if (!code.equals(datasetCode)) {
+        datasetCode = code;
+      }
+      fileProjections.add(DatasetFileProjection.of(file, datasetCode));
+    }
+    files = null;
+    long fileProjectionBytes = usedHeap() - baseline;
+    print("dataset files", fileCount, fileBytes, fileProjectionBytes);
+    fileProjections = null;
+  }
+
+  private static List<Sample> createSamples(int count) {
+    SampleFetchOptions fetchOptions = new SampleFetchOptions();
+    fetchOptions.withProperties();
+    fetchOptions.withType().withPropertyAssignments().withPropertyType();
+
+    SampleType type = new SampleType();
+    type.setCode("Q_TEST_SAMPLE");
+    type.setFetchOptions(fetchOptions.withType());
+    List<PropertyAssignment> assignments = new ArrayList<>();
+    for (int p = 0; p < PROPERTIES_PER_SAMPLE; p++) {
+      PropertyType propertyType = new PropertyType();
+      propertyType.setCode("Q_PROPERTY_" + p);
+      propertyType.setLabel("Property " + p);
+      propertyType.setDataType(DataType.VARCHAR);
+      PropertyAssignment assignment = new PropertyAssignment();
+      assignment.setFetchOptions(fetchOptions.withType().withPropertyAssignments());
+      assignment.setPropertyType(propertyType);
+      assignments.add(assignment);
+    }
+    type.setPropertyAssignments(assignments);
+
+    List<Sample> samples = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Sample sample = new Sample();
+      sample.setFetchOptions(fetchOptions);
+      String code = String.format("QTEST%06d", i);
+      sample.setCode(code);
+      sample.setPermId(new SamplePermId(String.format("20240101000000000-%d", i)));
+      sample.setIdentifier(new SampleIdentifier("/TEST_SPACE/TEST_PROJECT/" + code));
+      sample.setType(type);
+      sample.setRegistrationDate(new Date());
+      Map<String, String> properties = new HashMap<>();
+      for (int p = 0; p < PROPERTIES_PER_SAMPLE; p++) {
+        properties.put(new String("Q_PROPERTY_" + p), "value " + p + " of sample " + i);
+      }
+      sample.setProperties(properties);
+      samples.add(sample);
+    }
+    return samples;
+  }
+
+  private static List<DataSetFile> createFiles(int count) {
+    List<DataSetFile> files = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      DataSetPermId datasetId = new DataSetPermId(
+          String.format("20240101000000000-%d", i / FILES_PER_DATASET));
+      String path = String.format("original/run_%d/sample_%d.fastq.gz", i / 100, i);
+      DataSetFile file = new DataSetFile();
+      file.setPermId(new DataSetFilePermId(datasetId, new String(path)));
+      file.setDataSetPermId(datasetId);
+      file.setPath(path);
+      file.setDirectory(false);
+      file.setFileLength(1024L * i);
+      file.setChecksumCRC32(i);
+      files.add(file);
+    }
+    return files;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void print(String label, int count, long dtoBytes, long projectionBytes) {
+    System.out.printf("%s %s: openBIS objects %s bytes each, projections %s bytes each (%.1fx)%n",
+        count, label, dtoBytes / Math.max(1, count), projectionBytes / Math.max(1, count),
+        (double) dtoBytes / Math.max(1, projectionBytes));
+  }
+}